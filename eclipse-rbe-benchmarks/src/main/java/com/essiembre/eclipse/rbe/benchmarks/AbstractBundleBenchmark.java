@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Base class of benchmarks run on synthetic bundles.  Bundle settings are
+ * benchmark parameters, which can be changed from the command line
+ * (e.g. <code>-p keyCount=50000 -p script=CJK</code>).
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractBundleBenchmark {
+
+    /** Number of keys. */
+    @Param({ "1000", "10000" })
+    public int keyCount;
+    /** Number of words in keys. */
+    @Param({ "3" })
+    public int depth;
+    /** Number of bundles, including the default one. */
+    @Param({ "4" })
+    public int localeCount;
+    /** Approximate number of characters in values. */
+    @Param({ "40" })
+    public int valueLength;
+    /** Script of translated values. */
+    @Param({ "MIXED" })
+    public SyntheticBundles.Script script;
+    /** Random seed. */
+    @Param({ "42" })
+    public long seed;
+
+    /**
+     * Creates the synthetic bundles, then lets subclasses prepare.
+     */
+    @Setup(Level.Trial)
+    public final void setUpBundles() {
+        setUp(new SyntheticBundles(
+                keyCount, depth, localeCount, valueLength, script, seed));
+    }
+
+    /**
+     * Prepares the benchmark.
+     * @param bundles synthetic bundles
+     */
+    protected abstract void setUp(SyntheticBundles bundles);
+}
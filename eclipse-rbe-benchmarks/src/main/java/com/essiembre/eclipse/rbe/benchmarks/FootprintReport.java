@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroupSnapshot;
+import com.essiembre.eclipse.rbe.model.bundle.CompactBundleGroup;
+
+/**
+ * Reports the heap retained by the same synthetic bundles held in a
+ * {@link BundleGroup}, before and after {@link BundleGroup#compact()}, and
+ * in a {@link CompactBundleGroup}.  Heap use is not
+ * something JMH measures, so this is a plain program:
+ * <pre>
+ * java -cp target/benchmarks.jar \
+ *     com.essiembre.eclipse.rbe.benchmarks.FootprintReport \
+ *     [keyCount] [depth] [localeCount] [valueLength] [script] [seed]
+ * </pre>
+ */
+public final class FootprintReport {
+
+    /**
+     * Constructor.
+     */
+    private FootprintReport() {
+        super();
+    }
+
+    /**
+     * Prints the footprint of each representation.
+     * @param args bundle settings, all optional
+     */
+    public static void main(String[] args) {
+        int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int localeCount = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int valueLength = args.length > 3 ? Integer.parseInt(args[3]) : 40;
+        SyntheticBundles.Script script = args.length > 4
+                ? SyntheticBundles.Script.valueOf(args[4])
+                : SyntheticBundles.Script.MIXED;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42L;
+
+        SyntheticBundles bundles = new SyntheticBundles(
+                keyCount, depth, localeCount, valueLength, script, seed);
+        BundleGroup bundleGroup = bundles.createBundleGroup();
+        BundleGroupSnapshot snapshot = bundleGroup.snapshot();
+        CompactBundleGroup compact = CompactBundleGroup.of(snapshot);
+        long textSize = 0;
+        for (int i = 0; i < bundles.getLocales().size(); i++) {
+            textSize += GraphLayout.parseInstance(
+                    bundles.createProperties(i)).totalSize();
+        }
+
+        System.out.printf("%d keys, depth %d, %d locales, "
+                + "values of %d chars, %s script, seed %d%n",
+                keyCount, depth, localeCount, valueLength, script, seed);
+        print("Properties files (as strings)", textSize, keyCount);
+        print("BundleGroup", GraphLayout.parseInstance(bundleGroup)
+                .totalSize(), keyCount);
+        print("BundleGroup and snapshot", GraphLayout.parseInstance(
+                bundleGroup, snapshot).totalSize(), keyCount);
+        print("CompactBundleGroup", GraphLayout.parseInstance(compact)
+                .totalSize(), keyCount);
+        bundleGroup.compact();
+        print("BundleGroup, compacted", GraphLayout.parseInstance(
+                bundleGroup).totalSize(), keyCount);
+    }
+
+    private static void print(String name, long bytes, int keyCount) {
+        System.out.printf("%-32s %,14d bytes %,10d bytes/key%n",
+                name, bytes, bytes / Math.max(1, keyCount));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.FormatOptions;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+
+/**
+ * Generation of the properties files of a bundle group.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark extends AbstractBundleBenchmark {
+
+    /** Options wrapping long values and breaking lines on new lines. */
+    private static final FormatOptions WRAPPING = new FormatOptions.Builder()
+            .setWrapLines(true)
+            .setWrapCharLimit(80)
+            .setNewLineNice(true)
+            .build();
+
+    private Bundle[] bundles;
+
+    @Override
+    protected void setUp(SyntheticBundles synthetic) {
+        bundles = new Bundle[synthetic.getLocales().size()];
+        for (int i = 0; i < bundles.length; i++) {
+            bundles[i] = synthetic.createBundle(i);
+        }
+    }
+
+    /**
+     * Generates all files with default options.
+     * @param blackhole consumes files
+     */
+    @Benchmark
+    public void generate(Blackhole blackhole) {
+        for (Bundle bundle : bundles) {
+            blackhole.consume(
+                    PropertiesGenerator.generate(bundle, FormatOptions.DEFAULT));
+        }
+    }
+
+    /**
+     * Generates all files, wrapping long values.
+     * @param blackhole consumes files
+     */
+    @Benchmark
+    public void generateWrapped(Blackhole blackhole) {
+        for (Bundle bundle : bundles) {
+            blackhole.consume(PropertiesGenerator.generate(bundle, WRAPPING));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.ParseOptions;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesIndex;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
+
+/**
+ * Maintenance of key indexes as keys and text change: the index of entry
+ * offsets kept by source editors, and the bundle group key counts and key
+ * tree updated when a key is added and removed.  Each benchmark makes a
+ * change and reverts it, so the state is the same for each invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexBenchmark extends AbstractBundleBenchmark {
+
+    /** Entry inserted in the text. */
+    private static final String NEW_ENTRY = "benchmark.added.key = value\n";
+    /** Key added to the bundle group. */
+    private static final String NEW_KEY = "benchmark.added.key";
+
+    private StringBuilder text;
+    private PropertiesIndex index;
+    /** Offset within the value of an entry in the middle of the text. */
+    private int valueOffset;
+    /** Offset of an entry in the middle of the text. */
+    private int entryOffset;
+    private BundleGroup bundleGroup;
+    private KeyTree keyTree;
+
+    @Override
+    protected void setUp(SyntheticBundles bundles) {
+        text = new StringBuilder(bundles.createProperties(0));
+        index = PropertiesParser.parseIndex(text, ParseOptions.DEFAULT);
+        String key = bundles.getKeys().get(bundles.getKeys().size() / 2);
+        entryOffset = index.getOffset(key);
+        if (entryOffset == -1) {
+            throw new IllegalStateException("Key not indexed: " + key);
+        }
+        valueOffset = text.indexOf("=", entryOffset) + 2;
+        bundleGroup = bundles.createBundleGroup();
+        keyTree = new KeyTree(bundleGroup, new GroupedKeyTreeUpdater("."));
+    }
+
+    /**
+     * Types and deletes a character in a value, updating the index.
+     * @return index
+     */
+    @Benchmark
+    public PropertiesIndex editValue() {
+        text.insert(valueOffset, 'x');
+        index.update(text, valueOffset, 0, 1);
+        text.deleteCharAt(valueOffset);
+        index.update(text, valueOffset, 1, 0);
+        return index;
+    }
+
+    /**
+     * Inserts and deletes an entry, updating the index.
+     * @return index
+     */
+    @Benchmark
+    public PropertiesIndex editEntry() {
+        text.insert(entryOffset, NEW_ENTRY);
+        index.update(text, entryOffset, 0, NEW_ENTRY.length());
+        text.delete(entryOffset, entryOffset + NEW_ENTRY.length());
+        index.update(text, entryOffset, NEW_ENTRY.length(), 0);
+        return index;
+    }
+
+    /**
+     * Indexes the whole text again, for comparison with updates.
+     * @return index
+     */
+    @Benchmark
+    public PropertiesIndex reindex() {
+        return PropertiesParser.parseIndex(text, ParseOptions.DEFAULT);
+    }
+
+    /**
+     * Adds and removes a key in all bundles, updating the key tree.
+     * @return key tree
+     */
+    @Benchmark
+    public KeyTree addRemoveKey() {
+        bundleGroup.addKey(NEW_KEY);
+        bundleGroup.removeKey(NEW_KEY);
+        return keyTree;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.tree.KeyFilterIndex;
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
+import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
+
+/**
+ * Building of key trees, and filtering of their keys as a filter is typed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyTreeBenchmark extends AbstractBundleBenchmark {
+
+    private BundleGroup bundleGroup;
+    private KeyTree keyTree;
+    /** Filter being typed, one more character at a time. */
+    private String[] typedFilters;
+
+    @Override
+    protected void setUp(SyntheticBundles bundles) {
+        bundleGroup = bundles.createBundleGroup();
+        keyTree = new KeyTree(bundleGroup, new GroupedKeyTreeUpdater("."));
+        // last word of a key in the middle, as a user would look for it
+        String key = bundles.getKeys().get(bundles.getKeys().size() / 2);
+        String filter = key.substring(key.lastIndexOf('.') + 1);
+        typedFilters = new String[filter.length()];
+        for (int i = 0; i < typedFilters.length; i++) {
+            typedFilters[i] = filter.substring(0, i + 1);
+        }
+    }
+
+    /**
+     * Builds a tree grouping keys by their dot-separated parts.
+     * @return key tree
+     */
+    @Benchmark
+    public KeyTree buildGrouped() {
+        KeyTree tree =
+                new KeyTree(bundleGroup, new GroupedKeyTreeUpdater("."));
+        tree.dispose();
+        return tree;
+    }
+
+    /**
+     * Builds a flat list of keys.
+     * @return key tree
+     */
+    @Benchmark
+    public KeyTree buildFlat() {
+        KeyTree tree = new KeyTree(bundleGroup, new FlatKeyTreeUpdater());
+        tree.dispose();
+        return tree;
+    }
+
+    /**
+     * Filters tree items as a filter is typed, then clears the filter.
+     * @return key tree
+     */
+    @Benchmark
+    public KeyTree filterItems() {
+        for (String filter : typedFilters) {
+            keyTree.filterKeyItems(filter);
+        }
+        keyTree.resetFilter();
+        return keyTree;
+    }
+
+    /**
+     * Matches keys as a filter is typed, without updating tree items.
+     * @param blackhole consumes matching keys
+     */
+    @Benchmark
+    public void matchKeys(Blackhole blackhole) {
+        KeyFilterIndex filterIndex = keyTree.getFilterIndex();
+        for (String filter : typedFilters) {
+            blackhole.consume(filterIndex.match(filter));
+        }
+    }
+}
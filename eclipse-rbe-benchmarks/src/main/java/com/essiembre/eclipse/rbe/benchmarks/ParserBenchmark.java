@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.essiembre.eclipse.rbe.model.bundle.ParseOptions;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+
+/**
+ * Parsing of the properties files of a bundle group, into bundles and into
+ * indexes of entry offsets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark extends AbstractBundleBenchmark {
+
+    private String[] files;
+
+    @Override
+    protected void setUp(SyntheticBundles bundles) {
+        files = new String[bundles.getLocales().size()];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = bundles.createProperties(i);
+        }
+    }
+
+    /**
+     * Parses all files into bundles.
+     * @param blackhole consumes bundles
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String file : files) {
+            blackhole.consume(
+                    PropertiesParser.parse(file, ParseOptions.DEFAULT));
+        }
+    }
+
+    /**
+     * Parses all files into bundles, leaving encoded characters as is.
+     * @param blackhole consumes bundles
+     */
+    @Benchmark
+    public void parseEncoded(Blackhole blackhole) {
+        ParseOptions options = new ParseOptions(false);
+        for (String file : files) {
+            blackhole.consume(PropertiesParser.parse(file, options));
+        }
+    }
+
+    /**
+     * Indexes the entry offsets of all files.
+     * @param blackhole consumes indexes
+     */
+    @Benchmark
+    public void parseIndex(Blackhole blackhole) {
+        for (String file : files) {
+            blackhole.consume(
+                    PropertiesParser.parseIndex(file, ParseOptions.DEFAULT));
+        }
+    }
+}
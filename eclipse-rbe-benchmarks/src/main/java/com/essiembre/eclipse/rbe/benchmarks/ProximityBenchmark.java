@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.visitors.DuplicateValuesVisitor;
+import com.essiembre.eclipse.rbe.model.bundle.visitors.SimilarValuesVisitor;
+import com.essiembre.eclipse.rbe.model.utils.LevenshteinDistanceAnalyzer;
+import com.essiembre.eclipse.rbe.model.utils.WordCountAnalyzer;
+
+/**
+ * Detection of duplicate and similar values, as done for each entry shown
+ * in the editor.  Each benchmark checks a sample of entries of a
+ * translated bundle against all other entries of that bundle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProximityBenchmark extends AbstractBundleBenchmark {
+
+    /** Similarity precision, as set in preferences by default. */
+    private static final double PRECISION = 0.75d;
+
+    /** Number of entries checked. */
+    @Param({ "16" })
+    public int sampleSize;
+
+    private Bundle bundle;
+    private BundleEntry[] sample;
+
+    @Override
+    protected void setUp(SyntheticBundles bundles) {
+        // a translated bundle, in the script being benchmarked
+        int localeIndex = bundles.getLocales().size() > 1 ? 1 : 0;
+        bundle = bundles.createBundle(localeIndex);
+        int count = Math.min(sampleSize, bundles.getKeys().size());
+        sample = new BundleEntry[count];
+        for (int i = 0; i < count; i++) {
+            sample[i] = bundle.getEntry(bundles.getKeys().get(
+                    i * bundles.getKeys().size() / count));
+        }
+    }
+
+    /**
+     * Finds entries having the same value.
+     * @param blackhole consumes duplicates
+     */
+    @Benchmark
+    public void duplicates(Blackhole blackhole) {
+        DuplicateValuesVisitor visitor = new DuplicateValuesVisitor();
+        for (BundleEntry entry : sample) {
+            visitor.clear();
+            bundle.accept(visitor, entry);
+            blackhole.consume(visitor.getDuplicates().size());
+        }
+    }
+
+    /**
+     * Finds entries having similar values, by word count.
+     * @param blackhole consumes similar entries
+     */
+    @Benchmark
+    public void similarWordCount(Blackhole blackhole) {
+        SimilarValuesVisitor visitor = new SimilarValuesVisitor(PRECISION);
+        visitor.setProximityAnalyzer(WordCountAnalyzer.getInstance());
+        for (BundleEntry entry : sample) {
+            visitor.clear();
+            bundle.accept(visitor, entry);
+            blackhole.consume(visitor.getSimilars().size());
+        }
+    }
+
+    /**
+     * Finds entries having similar values, by Levenshtein distance.
+     * @param blackhole consumes similar entries
+     */
+    @Benchmark
+    public void similarLevenshtein(Blackhole blackhole) {
+        SimilarValuesVisitor visitor = new SimilarValuesVisitor(PRECISION);
+        visitor.setProximityAnalyzer(LevenshteinDistanceAnalyzer.getInstance());
+        for (BundleEntry entry : sample) {
+            visitor.clear();
+            bundle.accept(visitor, entry);
+            blackhole.consume(visitor.getSimilars().size());
+        }
+    }
+}
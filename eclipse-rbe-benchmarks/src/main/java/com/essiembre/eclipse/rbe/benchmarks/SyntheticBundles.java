@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.FormatOptions;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+
+/**
+ * Deterministic generator of resource bundles, so benchmark results can be
+ * reproduced.  The same settings always give the same keys, values and
+ * properties files.
+ * <p>
+ * Keys are made of <code>depth</code> dot-separated words, drawn with a
+ * skewed distribution so key groups have uneven sizes, as in real bundles.
+ * The first bundle is the default one (no locale), always in latin script.
+ * Other bundles use the given script, or each a script matching its
+ * language when the script is {@link Script#MIXED}.  Some values are
+ * duplicated or differ from another value by one word only, some entries
+ * have a comment and a few are commented out.
+ */
+public final class SyntheticBundles {
+
+    /** Scripts used for values. */
+    public enum Script {
+        /** Latin letters. */
+        LATIN,
+        /** Cyrillic letters. */
+        CYRILLIC,
+        /** CJK ideographs, without spaces between words. */
+        CJK,
+        /** Each locale in the script of its language. */
+        MIXED
+    }
+
+    /** Words keys are made of. */
+    private static final String[] KEY_WORDS = {
+        "action", "button", "cancel", "close", "config", "connection",
+        "copy", "delete", "description", "dialog", "edit", "editor",
+        "error", "export", "field", "file", "filter", "general", "help",
+        "import", "info", "label", "list", "load", "menu", "message",
+        "name", "new", "open", "page", "paste", "preferences", "print",
+        "project", "properties", "refresh", "rename", "report", "resource",
+        "save", "search", "select", "server", "settings", "status",
+        "table", "text", "title", "tooltip", "tree", "user", "validation",
+        "view", "warning", "window", "wizard",
+    };
+
+    /** Locales of the translated bundles, in order of use. */
+    private static final Locale[] LOCALES = {
+        Locale.FRENCH, Locale.GERMAN, new Locale("ru"), Locale.JAPANESE,
+        new Locale("es"), Locale.CHINESE, Locale.ITALIAN, new Locale("uk"),
+        Locale.KOREAN, new Locale("pt"),
+    };
+
+    private final int keyCount;
+    private final int depth;
+    private final int valueLength;
+    private final Script script;
+    private final long seed;
+    private final List<Locale> locales;
+    private final List<String> keys;
+
+    /**
+     * Constructor.
+     * @param keyCount number of keys
+     * @param depth number of words in keys
+     * @param localeCount number of bundles, including the default one
+     * @param valueLength approximate number of characters in values
+     * @param script script of translated values
+     * @param seed random seed
+     */
+    public SyntheticBundles(int keyCount, int depth, int localeCount,
+            int valueLength, Script script, long seed) {
+        super();
+        if (localeCount < 1 || localeCount > LOCALES.length + 1) {
+            throw new IllegalArgumentException(
+                    "Locale count must be between 1 and "
+                  + (LOCALES.length + 1) + ": " + localeCount);
+        }
+        this.keyCount = keyCount;
+        this.depth = Math.max(1, depth);
+        this.valueLength = Math.max(1, valueLength);
+        this.script = script;
+        this.seed = seed;
+        List<Locale> localeList = new ArrayList<>();
+        localeList.add(null);
+        localeList.addAll(Arrays.asList(LOCALES).subList(0, localeCount - 1));
+        this.locales = Collections.unmodifiableList(localeList);
+        this.keys = Collections.unmodifiableList(createKeys());
+    }
+
+    /**
+     * Gets the bundle locales.  The first one is <code>null</code>, for
+     * the default bundle.
+     * @return locales
+     */
+    public List<Locale> getLocales() {
+        return locales;
+    }
+
+    /**
+     * Gets the keys, in the order they were generated.
+     * @return keys
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Creates a new bundle.  Bundles can only be filled through a bundle
+     * group, so the bundle belongs to a bundle group of its own.
+     * @param localeIndex index of the bundle locale
+     * @return bundle
+     */
+    public Bundle createBundle(int localeIndex) {
+        Random random = new Random(seed * 31 + localeIndex + 1);
+        Script valueScript = getScript(localeIndex);
+        Locale locale = locales.get(localeIndex);
+        BundleGroup bundleGroup = new BundleGroup();
+        Bundle bundle = new Bundle();
+        bundle.setComment("# Synthetic bundle, seed " + seed + "\n");
+        bundleGroup.addBundle(locale, bundle);
+        List<String> values = new ArrayList<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            String value;
+            int kind = random.nextInt(100);
+            if (kind < 5 && !values.isEmpty()) {
+                // duplicate of another value
+                value = values.get(random.nextInt(values.size()));
+            } else if (kind < 10 && !values.isEmpty()) {
+                // another value with one word changed
+                value = changeWord(values.get(random.nextInt(values.size())),
+                        valueScript, random);
+            } else {
+                value = createValue(valueScript, random);
+            }
+            values.add(value);
+            String comment = random.nextInt(20) == 0
+                    ? "# Comment on " + keys.get(i) + "\n" : "";
+            boolean commented = random.nextInt(100) == 0;
+            bundleGroup.addBundleEntry(locale,
+                    new BundleEntry(keys.get(i), value, comment, commented));
+        }
+        return bundle;
+    }
+
+    /**
+     * Creates a new bundle group holding all bundles.
+     * @return bundle group
+     */
+    public BundleGroup createBundleGroup() {
+        BundleGroup bundleGroup = new BundleGroup();
+        for (int i = 0; i < locales.size(); i++) {
+            bundleGroup.addBundle(locales.get(i), createBundle(i));
+        }
+        return bundleGroup;
+    }
+
+    /**
+     * Creates the content of a properties file, as written with default
+     * formatting options.
+     * @param localeIndex index of the bundle locale
+     * @return properties file content
+     */
+    public String createProperties(int localeIndex) {
+        return PropertiesGenerator.generate(
+                createBundle(localeIndex), FormatOptions.DEFAULT);
+    }
+
+    /**
+     * Creates unique keys.
+     * @return keys
+     */
+    private List<String> createKeys() {
+        Random random = new Random(seed);
+        Set<String> unique = new HashSet<>();
+        List<String> keyList = new ArrayList<>(keyCount);
+        StringBuilder key = new StringBuilder();
+        while (keyList.size() < keyCount) {
+            key.setLength(0);
+            for (int i = 0; i < depth; i++) {
+                if (i > 0) {
+                    key.append('.');
+                }
+                key.append(KEY_WORDS[skewed(random, KEY_WORDS.length)]);
+            }
+            if (!unique.add(key.toString())) {
+                key.append(keyList.size());
+                unique.add(key.toString());
+            }
+            keyList.add(key.toString());
+        }
+        return keyList;
+    }
+
+    /**
+     * Gets the script of a bundle's values.
+     * @param localeIndex index of the bundle locale
+     * @return script, other than <code>MIXED</code>
+     */
+    private Script getScript(int localeIndex) {
+        Locale locale = locales.get(localeIndex);
+        if (locale == null) {
+            return Script.LATIN;
+        }
+        if (script != Script.MIXED) {
+            return script;
+        }
+        String language = locale.getLanguage();
+        if ("ru".equals(language) || "uk".equals(language)) {
+            return Script.CYRILLIC;
+        }
+        if ("ja".equals(language) || "zh".equals(language)
+                || "ko".equals(language)) {
+            return Script.CJK;
+        }
+        return Script.LATIN;
+    }
+
+    /**
+     * Creates a value of about <code>valueLength</code> characters.
+     * @param valueScript value script
+     * @param random random numbers
+     * @return value
+     */
+    private String createValue(Script valueScript, Random random) {
+        StringBuilder value = new StringBuilder(valueLength + 8);
+        while (value.length() < valueLength) {
+            if (value.length() > 0 && valueScript != Script.CJK) {
+                value.append(' ');
+            }
+            appendWord(value, valueScript, random);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Replaces one word of a value.
+     * @param value value
+     * @param valueScript value script
+     * @param random random numbers
+     * @return changed value
+     */
+    private static String changeWord(
+            String value, Script valueScript, Random random) {
+        StringBuilder word = new StringBuilder();
+        appendWord(word, valueScript, random);
+        if (valueScript == Script.CJK) {
+            int start = random.nextInt(value.length());
+            int end = Math.min(value.length(), start + word.length());
+            return value.substring(0, start) + word + value.substring(end);
+        }
+        String[] words = value.split(" ");
+        words[random.nextInt(words.length)] = word.toString();
+        StringBuilder changed = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < words.length; i++) {
+            if (i > 0) {
+                changed.append(' ');
+            }
+            changed.append(words[i]);
+        }
+        return changed.toString();
+    }
+
+    /**
+     * Appends a word of 2 to 8 letters, or 1 to 3 ideographs.
+     * @param text text to append to
+     * @param valueScript script of the word
+     * @param random random numbers
+     */
+    private static void appendWord(
+            StringBuilder text, Script valueScript, Random random) {
+        switch (valueScript) {
+        case CYRILLIC:
+            appendLetters(text, 'а', 32, 2 + random.nextInt(7), random);
+            break;
+        case CJK:
+            appendLetters(text, '一', 2048, 1 + random.nextInt(3), random);
+            break;
+        default:
+            appendLetters(text, 'a', 26, 2 + random.nextInt(7), random);
+        }
+    }
+
+    private static void appendLetters(StringBuilder text, char first,
+            int letterCount, int length, Random random) {
+        for (int i = 0; i < length; i++) {
+            text.append((char) (first + skewed(random, letterCount)));
+        }
+    }
+
+    /**
+     * Gets a random number, low numbers being more frequent.
+     * @param random random numbers
+     * @param bound upper bound (exclusive)
+     * @return number
+     */
+    private static int skewed(Random random, int bound) {
+        double x = random.nextDouble();
+        return (int) (x * x * bound);
+    }
+}
@@ -26,6 +26,8 @@ import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
+import com.essiembre.eclipse.rbe.model.search.BundleGroupSearcher;
+
 /**
  * The main resource bundle editor plugin class to be used in the desktop.
  * @author Pascal Essiembre
@@ -62,6 +64,7 @@ public class RBEPlugin extends AbstractUIPlugin {
      */
     @Override
     public void stop(BundleContext context) throws Exception {
+        BundleGroupSearcher.shutdown();
         plugin = null;
         super.stop(context);
     }
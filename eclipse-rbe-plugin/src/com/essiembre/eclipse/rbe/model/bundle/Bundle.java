@@ -15,16 +15,20 @@
  */
 package com.essiembre.eclipse.rbe.model.bundle;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 
 import com.essiembre.eclipse.rbe.model.Model;
+import com.essiembre.eclipse.rbe.model.utils.PersistentMap;
 
 
 /**
@@ -37,8 +41,12 @@ public class Bundle extends Model implements IBundleVisitable {
     private String comment;
     /** Bundle locale. */
     private Locale locale;
-    /** Bundle entries (key=key value=BundleEntry). */
-    private final Map<String, BundleEntry> entries = new HashMap<>();
+    /** Bundle entries (key=key value=BundleEntry), replaced on changes. */
+    private volatile PersistentMap<String, BundleEntry> entries =
+            PersistentMap.empty();
+    /** Entries read from compact storage, with changes on top, or
+     *  <code>null</code> when entries are held in <code>entries</code>. */
+    private volatile OverlayEntries compactEntries;
     /** Bundle group (parent). */
     private BundleGroup bundleGroup;
     
@@ -54,7 +62,7 @@ public class Bundle extends Model implements IBundleVisitable {
      */
     public void accept(IBundleVisitor visitor, Object passAlongArgument) {
         for (Iterator<BundleEntry> iter = 
-                entries.values().iterator(); iter.hasNext();) {
+                getEntries().values().iterator(); iter.hasNext();) {
             visitor.visitBundleEntry(iter.next(), passAlongArgument);
         }
         visitor.visitBundle(this, passAlongArgument);
@@ -97,7 +105,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @return the matching bundle entry, or <code>null</code>
      */
     public BundleEntry getEntry(String key) {
-        return (BundleEntry) entries.get(key);    
+        return (BundleEntry) getEntries().get(key);    
     }
     
     /**
@@ -105,18 +113,14 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param entry the bundle entry to add
      */
     protected void addEntry(BundleEntry entry) {
-        BundleEntry oldEntry = (BundleEntry) entries.get(entry.getKey());
+        BundleEntry oldEntry = (BundleEntry) getEntries().get(entry.getKey());
         if (oldEntry != null) {
             if (!oldEntry.equals(entry)) {
-                entries.put(entry.getKey(), entry);
-                entry.setBundle(this);
-                entry.setLocale(locale);
+                replaceEntry(oldEntry, entry);
                 fireModify(oldEntry);
             }
         } else if (entry.getKey().trim().length() > 0) {
-            entries.put(entry.getKey(), entry);
-            entry.setBundle(this);
-            entry.setLocale(locale);
+            replaceEntry(null, entry);
             fireAdd(entry);
         }
     }
@@ -126,10 +130,74 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param entry the bundle entry to remove
      */
     protected void removeEntry(BundleEntry entry) {
-        BundleEntry removedEntry = (BundleEntry) entries.get(entry.getKey());
-        entries.remove(entry.getKey());
+        BundleEntry removedEntry =
+                (BundleEntry) getEntries().get(entry.getKey());
+        if (removedEntry != null) {
+            replaceEntry(removedEntry, null);
+        }
         fireRemove(removedEntry);
     }
+
+    /**
+     * Adds, replaces or removes an entry, then updates the bundle group.
+     * Entries are bound to this bundle before being added, as they can be
+     * read by other threads from then on.
+     * @param oldEntry entry to replace or remove, or <code>null</code>
+     * @param newEntry entry to add, or <code>null</code>
+     */
+    private void replaceEntry(BundleEntry oldEntry, BundleEntry newEntry) {
+        OverlayEntries compact = compactEntries;
+        if (newEntry != null) {
+            newEntry.setBundle(this);
+            newEntry.setLocale(locale);
+            if (compact != null) {
+                compactEntries = compact.plus(newEntry);
+            } else {
+                entries = entries.plus(newEntry.getKey(), newEntry);
+            }
+        } else if (compact != null) {
+            compactEntries = compact.minus(oldEntry.getKey());
+        } else {
+            entries = entries.minus(oldEntry.getKey());
+        }
+        if (bundleGroup != null) {
+            bundleGroup.updateKeyCounts(oldEntry, newEntry);
+            bundleGroup.updateSnapshot(this);
+        }
+    }
+
+    /**
+     * Gets the current bundle entries, which never change once returned.
+     * @return entries (key=key value=BundleEntry)
+     */
+    /*default*/ Map<String, BundleEntry> getEntries() {
+        Map<String, BundleEntry> compact = compactEntries;
+        return compact != null ? compact : entries;
+    }
+
+    /**
+     * Replaces the entries of this bundle with the same entries read from
+     * compact storage.  Later changes are kept on top of them, so the
+     * compact storage is never copied.
+     * @param compactEntries entries, bound to this bundle
+     * @see CompactBundleGroup
+     */
+    /*default*/ void setCompactEntries(
+            Map<String, BundleEntry> compactEntries) {
+        this.compactEntries = new OverlayEntries(compactEntries,
+                PersistentMap.<String, BundleEntry>empty(),
+                compactEntries.size());
+        entries = PersistentMap.empty();
+    }
+
+    /**
+     * Gets whether entries are read from compact storage.
+     * @return <code>true</code> if compact
+     */
+    /*default*/ boolean isCompact() {
+        return compactEntries != null;
+    }
+
     
     /**
      * Renames a bundle entry key.
@@ -137,7 +205,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param newKey the new name for the bundle entry
      */
     protected void renameKey(String oldKey, String newKey) {
-        BundleEntry oldEntry = (BundleEntry) entries.get(oldKey);
+        BundleEntry oldEntry = (BundleEntry) getEntries().get(oldKey);
         if (oldEntry != null) {
             BundleEntry newEntry = new BundleEntry(
                     newKey, oldEntry.getValue(), oldEntry.getComment());
@@ -151,7 +219,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param key key of bundle entry to be commented
      */
     protected void commentKey(String key) {
-        BundleEntry entry = (BundleEntry) entries.get(key);
+        BundleEntry entry = (BundleEntry) getEntries().get(key);
         if (entry != null) {
             BundleEntry newEntry = new BundleEntry(
                     key, entry.getValue(), entry.getComment(), true);
@@ -163,7 +231,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param key key of bundle entry to be uncommented
      */
     protected void uncommentKey(String key) {
-        BundleEntry entry = (BundleEntry) entries.get(key);
+        BundleEntry entry = (BundleEntry) getEntries().get(key);
         if (entry != null) {
             BundleEntry newEntry = new BundleEntry(
                     key, entry.getValue(), entry.getComment(), false);
@@ -177,7 +245,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param newKey key for the copied bundle entry
      */
     protected void copyKey(String origKey, String newKey) {
-        BundleEntry origEntry = (BundleEntry) entries.get(origKey);
+        BundleEntry origEntry = (BundleEntry) getEntries().get(origKey);
         if (origEntry != null) {
             BundleEntry newEntry = new BundleEntry(
                     newKey, origEntry.getValue(), origEntry.getComment());
@@ -190,7 +258,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @return an iterator
      */
     public Iterator<BundleEntry> iterator() {
-        return entries.values().iterator();
+        return getEntries().values().iterator();
     }
 
     /**
@@ -214,37 +282,222 @@ public class Bundle extends Model implements IBundleVisitable {
      */
     public Set<String> getKeys() {
         Set<String> keys = new TreeSet<String>();
-        keys.addAll(entries.keySet());
+        keys.addAll(getEntries().keySet());
         return keys;
         //        return Collections.unmodifiableSet(keys);
     }
 
     /**
-     * Copies values from given bundle into this bundle.
+     * Copies values from given bundle into this bundle.  The sorted keys of
+     * both bundles are compared and only the entries which differ are
+     * added, removed or replaced, leaving the others untouched.  The
+     * changes are notified as a single "modify" event, whose receiver is
+     * the returned change set, unless nothing changed.
      * @param bundle bundle to copy to this bundle.
-     */    
-    protected void copyFrom(Bundle bundle) {
-        setComment(bundle.getComment());
-        // Remove deleted entries
-        synchronized (entries) {
-            List<BundleEntry> entriesToRemove = new ArrayList<>();
-            for (Iterator<BundleEntry> iter = iterator(); iter.hasNext();) {
-                BundleEntry localEntry = iter.next();
-                if (bundle.getEntry(localEntry.getKey()) == null) {
-                    entriesToRemove.add(localEntry);
+     * @return changes made to this bundle
+     */
+    protected BundleChange copyFrom(Bundle bundle) {
+        BundleChange change = new BundleChange(this);
+        String newComment = bundle.getComment();
+        change.setCommentChanged(comment == null
+                ? newComment != null : !comment.equals(newComment));
+        setComment(newComment);
+        Map<String, BundleEntry> localEntries = getEntries();
+        String[] localKeys = sortedKeys(localEntries.keySet());
+        Map<String, BundleEntry> newEntries = bundle.getEntries();
+        String[] newKeys = sortedKeys(newEntries.keySet());
+        int i = 0;
+        int j = 0;
+        while (i < localKeys.length || j < newKeys.length) {
+            int diff;
+            if (i == localKeys.length) {
+                diff = 1;
+            } else if (j == newKeys.length) {
+                diff = -1;
+            } else {
+                diff = localKeys[i].compareTo(newKeys[j]);
+            }
+            BundleEntry oldEntry =
+                    diff <= 0 ? localEntries.get(localKeys[i++]) : null;
+            BundleEntry newEntry =
+                    diff >= 0 ? newEntries.get(newKeys[j++]) : null;
+            if (newEntry == null) {
+                change.entryRemoved(oldEntry);
+            } else if (oldEntry == null) {
+                if (newEntry.getKey().trim().length() == 0) {
+                    continue;
+                }
+                change.entryAdded(newEntry);
+            } else if (!oldEntry.equals(newEntry)) {
+                change.entryModified(newEntry);
+            } else {
+                continue;
+            }
+            replaceEntry(oldEntry, newEntry);
+        }
+        if (!change.isEmpty()) {
+            fireModify(change);
+        }
+        return change;
+    }
+
+    /**
+     * Sorts keys.
+     * @param keys keys to sort
+     * @return sorted keys
+     */
+    private static String[] sortedKeys(Set<String> keys) {
+        String[] sorted = keys.toArray(new String[keys.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Immutable entries made of read-only base entries, such as compact
+     * storage, and of the entries changed since, on top.  Each change
+     * gives new entries sharing the base and most of the changes.
+     */
+    private static final class OverlayEntries
+            extends AbstractMap<String, BundleEntry> {
+        /** Entries the changes apply to. */
+        private final Map<String, BundleEntry> base;
+        /** Entries added or replaced, and keys removed (with a
+         *  <code>null</code> entry). */
+        private final PersistentMap<String, BundleEntry> changes;
+        private final int size;
+
+        private OverlayEntries(Map<String, BundleEntry> base,
+                PersistentMap<String, BundleEntry> changes, int size) {
+            this.base = base;
+            this.changes = changes;
+            this.size = size;
+        }
+
+        /**
+         * Gets these entries with an entry added or replaced.
+         * @param entry entry
+         * @return new entries
+         */
+        private OverlayEntries plus(BundleEntry entry) {
+            String key = entry.getKey();
+            return new OverlayEntries(base, changes.plus(key, entry),
+                    containsKey(key) ? size : size + 1);
+        }
+
+        /**
+         * Gets these entries with an entry removed.
+         * @param key key of entry to remove
+         * @return new entries
+         */
+        private OverlayEntries minus(String key) {
+            if (!containsKey(key)) {
+                return this;
+            }
+            return new OverlayEntries(base, base.containsKey(key)
+                    ? changes.plus(key, null) : changes.minus(key), size - 1);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+        @Override
+        public boolean containsKey(Object key) {
+            if (changes.containsKey(key)) {
+                return changes.get(key) != null;
+            }
+            return base.containsKey(key);
+        }
+        @Override
+        public BundleEntry get(Object key) {
+            if (changes.containsKey(key)) {
+                return changes.get(key);
+            }
+            return base.get(key);
+        }
+        @Override
+        public Collection<BundleEntry> values() {
+            return new AbstractCollection<BundleEntry>() {
+                @Override
+                public Iterator<BundleEntry> iterator() {
+                    return new OverlayIterator();
+                }
+                @Override
+                public int size() {
+                    return size;
                 }
-            }    
-            for (Iterator<BundleEntry> iter = 
-                    entriesToRemove.iterator(); iter.hasNext();) {
-                BundleEntry entry = iter.next();
-                removeEntry(entry);
-            }        
+            };
         }
-        
-        // Add existing/new entries
-        for (Iterator<BundleEntry> iter = bundle.iterator(); iter.hasNext();) {
-            BundleEntry entry = iter.next();
-            addEntry(entry);
+        @Override
+        public Set<Map.Entry<String, BundleEntry>> entrySet() {
+            return new AbstractSet<Map.Entry<String, BundleEntry>>() {
+                @Override
+                public Iterator<Map.Entry<String, BundleEntry>> iterator() {
+                    final Iterator<BundleEntry> iter = new OverlayIterator();
+                    return new Iterator<Map.Entry<String, BundleEntry>>() {
+                        public boolean hasNext() {
+                            return iter.hasNext();
+                        }
+                        public Map.Entry<String, BundleEntry> next() {
+                            BundleEntry entry = iter.next();
+                            return new SimpleImmutableEntry<
+                                    String, BundleEntry>(
+                                            entry.getKey(), entry);
+                        }
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        /**
+         * Iterates through base entries, replaced by their changes, then
+         * through entries added on top.
+         */
+        private final class OverlayIterator implements Iterator<BundleEntry> {
+            private final Iterator<String> baseKeys =
+                    base.keySet().iterator();
+            private final Iterator<Map.Entry<String, BundleEntry>> changed =
+                    changes.entrySet().iterator();
+            private BundleEntry next = findNext();
+            public boolean hasNext() {
+                return next != null;
+            }
+            public BundleEntry next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                BundleEntry entry = next;
+                next = findNext();
+                return entry;
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+            private BundleEntry findNext() {
+                while (baseKeys.hasNext()) {
+                    String key = baseKeys.next();
+                    BundleEntry entry = changes.containsKey(key)
+                            ? changes.get(key) : base.get(key);
+                    if (entry != null) {
+                        return entry;
+                    }
+                }
+                while (changed.hasNext()) {
+                    Map.Entry<String, BundleEntry> change = changed.next();
+                    if (change.getValue() != null
+                            && !base.containsKey(change.getKey())) {
+                        return change.getValue();
+                    }
+                }
+                return null;
+            }
         }
     }
-}
\ No newline at end of file
+}
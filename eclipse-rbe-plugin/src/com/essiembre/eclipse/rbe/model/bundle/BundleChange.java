@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changes made to a bundle when copying another bundle into it.  Bundles
+ * notify such a change set as a single "modify" event, instead of one
+ * event per changed entry.  Entries are listed in key order.
+ */
+public class BundleChange {
+
+    /** Bundle changed. */
+    private final Bundle bundle;
+    /** Entries added. */
+    private final List<BundleEntry> addedEntries = new ArrayList<>();
+    /** Entries removed. */
+    private final List<BundleEntry> removedEntries = new ArrayList<>();
+    /** Entries replacing an entry of the same key. */
+    private final List<BundleEntry> modifiedEntries = new ArrayList<>();
+    /** Keys added, removed or modified. */
+    private final List<String> keys = new ArrayList<>();
+    /** Whether the bundle head comment changed. */
+    private boolean commentChanged;
+
+    /**
+     * Constructor.
+     * @param bundle bundle changed
+     */
+    /*default*/ BundleChange(Bundle bundle) {
+        super();
+        this.bundle = bundle;
+    }
+
+    /**
+     * Gets the bundle changed.
+     * @return bundle
+     */
+    public Bundle getBundle() {
+        return bundle;
+    }
+
+    /**
+     * Gets the entries added to the bundle.
+     * @return added entries
+     */
+    public List<BundleEntry> getAddedEntries() {
+        return Collections.unmodifiableList(addedEntries);
+    }
+
+    /**
+     * Gets the entries removed from the bundle.
+     * @return removed entries
+     */
+    public List<BundleEntry> getRemovedEntries() {
+        return Collections.unmodifiableList(removedEntries);
+    }
+
+    /**
+     * Gets the entries which replaced a different entry of the same key.
+     * @return modified entries
+     */
+    public List<BundleEntry> getModifiedEntries() {
+        return Collections.unmodifiableList(modifiedEntries);
+    }
+
+    /**
+     * Gets the keys of all added, removed and modified entries, sorted.
+     * @return changed keys
+     */
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Gets whether the bundle head comment changed.
+     * @return <code>true</code> if the comment changed
+     */
+    public boolean isCommentChanged() {
+        return commentChanged;
+    }
+
+    /**
+     * Gets whether nothing changed in the bundle.
+     * @return <code>true</code> if there are no changes
+     */
+    public boolean isEmpty() {
+        return keys.isEmpty() && !commentChanged;
+    }
+
+    /*default*/ void entryAdded(BundleEntry entry) {
+        addedEntries.add(entry);
+        keys.add(entry.getKey());
+    }
+
+    /*default*/ void entryRemoved(BundleEntry entry) {
+        removedEntries.add(entry);
+        keys.add(entry.getKey());
+    }
+
+    /*default*/ void entryModified(BundleEntry entry) {
+        modifiedEntries.add(entry);
+        keys.add(entry.getKey());
+    }
+
+    /*default*/ void setCommentChanged(boolean commentChanged) {
+        this.commentChanged = commentChanged;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Writes bundles in a compact binary form, and reads them back without
+ * parsing properties text.  Strings are written as their length in chars
+ * (-1 for <code>null</code>) followed by their UTF-16 chars, so any string,
+ * even one holding unpaired surrogates, is read back unchanged.  They are
+ * read from a byte buffer, such as the content of a cache file.
+ */
+public final class BundleCodec {
+
+    /**
+     * Constructor.
+     */
+    private BundleCodec() {
+        super();
+    }
+
+    /**
+     * Writes a bundle.
+     * @param bundle bundle to write
+     * @param out output
+     * @throws IOException problem writing bundle
+     */
+    public static void write(Bundle bundle, DataOutput out)
+            throws IOException {
+        writeString(bundle.getComment(), out);
+        // entries as of now, even if the bundle changes meanwhile
+        Map<String, BundleEntry> entries = bundle.getEntries();
+        out.writeInt(entries.size());
+        for (BundleEntry entry : entries.values()) {
+            writeString(entry.getKey(), out);
+            writeString(entry.getValue(), out);
+            writeString(entry.getComment(), out);
+            out.writeBoolean(entry.isCommented());
+        }
+    }
+
+    /**
+     * Reads a bundle written by {@link #write(Bundle, DataOutput)}.
+     * @param buffer input, positioned at the start of the bundle
+     * @return bundle
+     * @throws IOException bundle cannot be read
+     */
+    public static Bundle read(ByteBuffer buffer) throws IOException {
+        Bundle bundle = new Bundle();
+        bundle.setComment(readString(buffer));
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IOException("Invalid entry count: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            String key = readString(buffer);
+            String value = readString(buffer);
+            String comment = readString(buffer);
+            boolean commented = buffer.get() != 0;
+            bundle.addEntry(new BundleEntry(key, value, comment, commented));
+        }
+        return bundle;
+    }
+
+    /**
+     * Writes a length-prefixed string.
+     * @param string string to write, or <code>null</code>
+     * @param out output
+     * @throws IOException problem writing string
+     */
+    public static void writeString(String string, DataOutput out)
+            throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(string.length());
+            out.writeChars(string);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed string.
+     * @param buffer input
+     * @return string, or <code>null</code>
+     * @throws IOException string cannot be read
+     */
+    public static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining() / 2) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        char[] chars = new char[length];
+        buffer.asCharBuffer().get(chars);
+        buffer.position(buffer.position() + length * 2);
+        return new String(chars);
+    }
+}
@@ -19,6 +19,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +28,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import com.essiembre.eclipse.rbe.model.Model;
+import com.essiembre.eclipse.rbe.model.utils.PersistentMap;
 
 
 /**
@@ -35,10 +38,25 @@ import com.essiembre.eclipse.rbe.model.Model;
  */
 public class BundleGroup extends Model implements IBundleVisitable {
 
+    /** Number of keys from which {@link #compact()} stores entries in
+     *  columns. */
+    public static final int COMPACT_THRESHOLD = 10000;
+
     /** Bundles forming the group (key=Locale; value=Bundle). */
     private final Map<Locale, Bundle> bundles = new HashMap<>();
     
-    private final SortedSet<String> keys = new TreeSet<String>();
+    private final TreeSet<String> keys = new TreeSet<String>();
+    /** Number of entries and of non-empty values of each key
+     *  (key=key; value={entries, values}). */
+    private final Map<String, int[]> keyCounts = new HashMap<>();
+    /** Depth of nested batches. */
+    private int batchDepth;
+    /** Bundles modified during the current batch. */
+    private final Set<Bundle> batchModified = new LinkedHashSet<>();
+    /** Entries of each bundle, and number of changes made to them, as
+     *  last published to snapshot readers. */
+    private volatile BundleGroupSnapshot snapshot = new BundleGroupSnapshot(
+            PersistentMap.<Locale, Map<String, BundleEntry>>empty(), 0);
     
     /**
      * Constructor.
@@ -79,15 +97,55 @@ public class BundleGroup extends Model implements IBundleVisitable {
         bundle.setBundleGroup(this);
         if (localBundle == null) {
             bundles.put(locale, bundle);
-            refreshKeys();
+            for (Iterator<BundleEntry> iter = bundle.iterator();
+                    iter.hasNext();) {
+                updateKeyCounts(null, iter.next());
+            }
+            updateSnapshot(bundle);
             fireAdd(bundle);
-        } else { // TODO if (!localBundle.equals(bundle)) {
-            localBundle.copyFrom(bundle);
-            refreshKeys();
+        } else if (!localBundle.copyFrom(bundle).isEmpty()) {
             fireModify(bundle);
         }
     }
 
+    /**
+     * Starts a batch of modifications.  Until the matching
+     * {@link #endBatch()}, modified bundles are only notified once the
+     * batch ends, once per bundle, so listeners (e.g. regenerating the
+     * source of a bundle) run once for many changes.  Batches can be nested.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch of modifications started with {@link #beginBatch()},
+     * notifying the modified bundles when the outermost batch ends.
+     */
+    public void endBatch() {
+        if (batchDepth == 0 || --batchDepth > 0) {
+            return;
+        }
+        Bundle[] modified = batchModified.toArray(
+                new Bundle[batchModified.size()]);
+        batchModified.clear();
+        for (int i = 0; i < modified.length; i++) {
+            super.fireModify(modified[i]);
+        }
+    }
+
+    /**
+     * @see Model#fireModify(Object)
+     */
+    @Override
+    protected void fireModify(Object modified) {
+        if (batchDepth > 0 && modified instanceof Bundle) {
+            batchModified.add((Bundle) modified);
+        } else {
+            super.fireModify(modified);
+        }
+    }
+
     /**
      * Gets the bundle matching given locale.
      * @param locale locale of bundle to retreive
@@ -112,7 +170,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
                 bundleEntry.setBundle(bundle);
                 bundleEntry.setLocale(locale);
                 bundle.addEntry(bundleEntry);
-                refreshKeys();
                 fireModify(bundle);
             }
         }
@@ -149,7 +206,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
             BundleEntry entry = getBundleEntry(locale, oldKey);
             if (entry != null) {
                 bundle.renameKey(oldKey, newKey);
-                refreshKeys();
                 fireModify(bundle);
             }
             
@@ -208,7 +264,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
             BundleEntry origEntry = getBundleEntry(locale, origKey);
             if (origEntry != null) {
                 bundle.copyKey(origKey, newKey);
-                refreshKeys();
                 fireModify(bundle);
             }
             
@@ -227,7 +282,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
             BundleEntry entry = getBundleEntry(locale, key);
             if (entry != null) {
                 bundle.removeEntry(entry);
-                refreshKeys();
                 fireModify(bundle);
             }
         }
@@ -311,16 +365,122 @@ public class BundleGroup extends Model implements IBundleVisitable {
     }
 
     /**
-     * Gets all resource bundle keys.
-     * @return <code>List</code> of resource bundle keys.
+     * Stores the entries of all bundles in a {@link CompactBundleGroup}
+     * when this group has at least <code>COMPACT_THRESHOLD</code> keys, to
+     * reduce memory use.  Entries are then created as they are read, and
+     * changed entries are kept on top of the compact storage.  Does
+     * nothing if all bundles are compact already.
      */
-    private Set<String> refreshKeys() {
-        //Set keys = new TreeSet();
-        keys.clear();
-        for (Iterator<Bundle> iter = iterator(); iter.hasNext();) {
-            keys.addAll((iter.next()).getKeys());
+    public void compact() {
+        if (keys.size() < COMPACT_THRESHOLD) {
+            return;
+        }
+        boolean compact = true;
+        for (Bundle bundle : bundles.values()) {
+            compact &= bundle.isCompact();
+        }
+        if (compact) {
+            return;
+        }
+        List<Bundle> bundleList = new ArrayList<>(bundles.values());
+        CompactBundleGroup.Builder builder = new CompactBundleGroup.Builder();
+        for (Bundle bundle : bundleList) {
+            builder.addBundle(bundle.getLocale(), bundle);
+        }
+        CompactBundleGroup compactGroup = builder.build();
+        for (int i = 0; i < bundleList.size(); i++) {
+            Bundle bundle = bundleList.get(i);
+            bundle.setCompactEntries(compactGroup.getBundleEntries(i, bundle));
+            // same entries: the version does not change
+            snapshot = snapshot.plus(bundle.getLocale(), bundle.getEntries(),
+                    snapshot.getVersion());
+        }
+    }
+
+    /**
+     * Takes an immutable snapshot of the entries of this group, which can
+     * be read from other threads while this group keeps changing.  The
+     * snapshot shares its content with this group, so taking it does not
+     * copy anything.
+     * @return snapshot
+     */
+    public BundleGroupSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Records the current entries of a bundle of this group for snapshots.
+     * Invoked by bundles each time their entries change.
+     * @param bundle changed bundle
+     */
+    /*default*/ void updateSnapshot(Bundle bundle) {
+        // published at once, so entries and version always go together
+        snapshot = snapshot.plus(bundle.getLocale(), bundle.getEntries(),
+                snapshot.getVersion() + 1);
+    }
+
+    /**
+     * Updates the keys and key counters after an entry of a bundle in this
+     * group was added, replaced or removed.  Invoked by bundles before
+     * they notify their listeners.
+     * @param oldEntry entry before the change, or <code>null</code>
+     * @param newEntry entry after the change, or <code>null</code>
+     */
+    /*default*/ void updateKeyCounts(
+            BundleEntry oldEntry, BundleEntry newEntry) {
+        if (oldEntry != null) {
+            String key = oldEntry.getKey();
+            int[] counts = keyCounts.get(key);
+            if (counts != null) {
+                counts[0]--;
+                if (hasValue(oldEntry)) {
+                    counts[1]--;
+                }
+                if (counts[0] <= 0) {
+                    keyCounts.remove(key);
+                    keys.remove(key);
+                }
+            }
+        }
+        if (newEntry != null) {
+            String key = newEntry.getKey();
+            int[] counts = keyCounts.get(key);
+            if (counts == null) {
+                counts = new int[2];
+                keyCounts.put(key, counts);
+                keys.add(key);
+            }
+            counts[0]++;
+            if (hasValue(newEntry)) {
+                counts[1]++;
+            }
         }
-        return keys;
+    }
+
+    private static boolean hasValue(BundleEntry entry) {
+        return entry.getValue() != null && entry.getValue().length() > 0;
+    }
+
+    /**
+     * Checks whether all bundles in this group have a non-empty value for
+     * the given key.
+     * @param key key to check
+     * @return <code>true</code> if no value is missing
+     */
+    public boolean isKeyComplete(String key) {
+        int[] counts = keyCounts.get(key);
+        return counts != null && counts[1] >= bundles.size();
+    }
+
+    /**
+     * Gets the number of bundles in this group having a non-empty value
+     * for the given key.
+     * @param key key to count values of
+     * @return number of values
+     */
+    public int getValueCount(String key) {
+        int[] counts = keyCounts.get(key);
+        return counts == null ? 0 : counts[1];
     }
 
     /**
@@ -333,27 +493,17 @@ public class BundleGroup extends Model implements IBundleVisitable {
     }
     
     public String getNextKey(String currentKey) {
-        boolean returnNextKey = false;
-        for (String key : keys) {
-            if (returnNextKey) {
-                return key;
-            }
-            if (key.equals(currentKey)) {
-                returnNextKey = true;
-            }
+        if (currentKey == null || !keys.contains(currentKey)) {
+            return null;
         }
-        return null;
+        return keys.higher(currentKey);
     }
     
     public String getPreviousKey(String currentKey) {
-        String previousKey = null;
-        for (String key : keys) {
-            if (key.equals(currentKey)) {
-                return previousKey;
-            }
-            previousKey = key;
+        if (currentKey == null || !keys.contains(currentKey)) {
+            return null;
         }
-        return null;
+        return keys.lower(currentKey);
     }
 
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import com.essiembre.eclipse.rbe.model.utils.PersistentMap;
+
+/**
+ * Immutable view of the entries of a bundle group, as they were when the
+ * snapshot was taken.  Snapshots share their content with the bundle group
+ * and with each other, so taking one is cheap, and they can be read from
+ * any thread without locking while the bundle group keeps changing.
+ * Bundle entries must only be read, not modified, through a snapshot.
+ */
+public final class BundleGroupSnapshot {
+
+    /** Entries of each bundle (key=Locale; value=entries by key). */
+    private final PersistentMap<Locale, Map<String, BundleEntry>> bundles;
+    private final long version;
+    /** Keys of all bundles, computed when first needed. */
+    private volatile SortedSet<String> keys;
+
+    /**
+     * Constructor.
+     * @param bundles entries of each bundle
+     * @param version bundle group version
+     */
+    /*default*/ BundleGroupSnapshot(
+            PersistentMap<Locale, Map<String, BundleEntry>> bundles,
+            long version) {
+        super();
+        this.bundles = bundles;
+        this.version = version;
+    }
+
+    /**
+     * Gets the version of the bundle group this snapshot was taken from.
+     * Versions increase with each change made to the bundle group, so
+     * snapshots of the same version hold the same entries.
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets a snapshot with the entries of a bundle added or replaced.
+     * @param locale bundle locale
+     * @param entries bundle entries
+     * @param newVersion version of the new snapshot
+     * @return new snapshot
+     */
+    /*default*/ BundleGroupSnapshot plus(Locale locale,
+            Map<String, BundleEntry> entries, long newVersion) {
+        return new BundleGroupSnapshot(
+                bundles.plus(locale, entries), newVersion);
+    }
+
+    /**
+     * Gets the locales of the bundles.
+     * @return locales
+     */
+    public Set<Locale> getLocales() {
+        return Collections.unmodifiableSet(bundles.keySet());
+    }
+
+    /**
+     * Gets the entries of a bundle.
+     * @param locale bundle locale
+     * @return entries (key=key; value=BundleEntry), empty if there is
+     *         no such bundle
+     */
+    public Map<String, BundleEntry> getBundleEntries(Locale locale) {
+        Map<String, BundleEntry> entries = bundles.get(locale);
+        return entries == null
+                ? PersistentMap.<String, BundleEntry>empty() : entries;
+    }
+
+    /**
+     * Gets a bundle entry.
+     * @param locale bundle locale
+     * @param key entry key
+     * @return bundle entry, or <code>null</code>
+     */
+    public BundleEntry getBundleEntry(Locale locale, String key) {
+        return getBundleEntries(locale).get(key);
+    }
+
+    /**
+     * Gets the entries of all bundles for a key.
+     * @param key entry key
+     * @return bundle entries
+     */
+    public Collection<BundleEntry> getBundleEntries(String key) {
+        Collection<BundleEntry> entries = new ArrayList<>();
+        for (Map<String, BundleEntry> bundle : bundles.values()) {
+            BundleEntry entry = bundle.get(key);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the keys of all bundles.
+     * @return sorted keys
+     */
+    public SortedSet<String> getKeys() {
+        SortedSet<String> sortedKeys = keys;
+        if (sortedKeys == null) {
+            sortedKeys = new TreeSet<>();
+            for (Map<String, BundleEntry> bundle : bundles.values()) {
+                sortedKeys.addAll(bundle.keySet());
+            }
+            sortedKeys = Collections.unmodifiableSortedSet(sortedKeys);
+            keys = sortedKeys;
+        }
+        return sortedKeys;
+    }
+}
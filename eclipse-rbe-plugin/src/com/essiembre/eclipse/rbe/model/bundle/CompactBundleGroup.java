@@ -0,0 +1,511 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only bundle group stored in columns, for very large bundle groups.
+ * {@link BundleGroup#compact()} uses it to store the entries of its
+ * bundles as loaded, changes being kept on top by each bundle.
+ * Keys are stored once, sorted, and identified by their index.  Each
+ * locale has a column of values, indexed by key, and bit sets telling
+ * which keys are present and commented out.  Comments are only stored for
+ * bundles having some, and missing comments are read back as empty
+ * strings, as parsed.  Bundle entries are only created when asked for,
+ * and are not kept.
+ * <p>
+ * Use a {@link Builder} to load bundles one at a time, so parsed bundles
+ * do not need to be kept until all of them are loaded.
+ */
+public final class CompactBundleGroup {
+
+    private final String[] keys;
+    private final Locale[] locales;
+    private final Column[] columns;
+
+    /**
+     * Constructor.
+     * @param keys sorted keys
+     * @param locales locales
+     * @param columns column of each locale
+     */
+    private CompactBundleGroup(
+            String[] keys, Locale[] locales, Column[] columns) {
+        super();
+        this.keys = keys;
+        this.locales = locales;
+        this.columns = columns;
+    }
+
+    /**
+     * Creates a compact copy of a bundle group snapshot.
+     * @param snapshot bundle group snapshot
+     * @return compact bundle group
+     */
+    public static CompactBundleGroup of(BundleGroupSnapshot snapshot) {
+        Builder builder = new Builder();
+        for (Locale locale : snapshot.getLocales()) {
+            builder.addBundle(
+                    locale, snapshot.getBundleEntries(locale).values());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the locales of the bundles.
+     * @return locales
+     */
+    public List<Locale> getLocales() {
+        return Collections.unmodifiableList(Arrays.asList(locales));
+    }
+
+    /**
+     * Gets all keys.
+     * @return sorted keys, indexed by key id
+     */
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    /**
+     * Gets the number of keys.
+     * @return number of keys
+     */
+    public int getKeyCount() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the id of a key.
+     * @param key key
+     * @return key id, or -1 if there is no such key
+     */
+    public int getKeyId(String key) {
+        int id = Arrays.binarySearch(keys, key);
+        return id < 0 ? -1 : id;
+    }
+
+    /**
+     * Gets the value of a key for a locale.
+     * @param localeIndex locale index
+     * @param keyId key id
+     * @return value, or <code>null</code> if the bundle has no such key
+     */
+    public String getValue(int localeIndex, int keyId) {
+        Column column = columns[localeIndex];
+        return column.present.get(keyId) ? column.values[keyId] : null;
+    }
+
+    /**
+     * Gets whether a key is commented out for a locale.
+     * @param localeIndex locale index
+     * @param keyId key id
+     * @return <code>true</code> if commented out
+     */
+    public boolean isCommented(int localeIndex, int keyId) {
+        return columns[localeIndex].commented.get(keyId);
+    }
+
+    /**
+     * Gets the number of locales having a non-empty value for a key.
+     * @param keyId key id
+     * @return number of values
+     */
+    public int getValueCount(int keyId) {
+        int count = 0;
+        for (int i = 0; i < columns.length; i++) {
+            String value = getValue(i, keyId);
+            if (value != null && value.length() > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets a bundle entry.  A new entry is created on each call, which
+     * does not belong to any bundle.
+     * @param locale bundle locale
+     * @param key entry key
+     * @return bundle entry, or <code>null</code>
+     */
+    public BundleEntry getBundleEntry(Locale locale, String key) {
+        int localeIndex = Arrays.asList(locales).indexOf(locale);
+        int keyId = getKeyId(key);
+        if (localeIndex == -1 || keyId == -1) {
+            return null;
+        }
+        return getBundleEntry(localeIndex, keyId);
+    }
+
+    /**
+     * Gets a bundle entry.  A new entry is created on each call, which
+     * does not belong to any bundle.
+     * @param localeIndex locale index
+     * @param keyId key id
+     * @return bundle entry, or <code>null</code>
+     */
+    public BundleEntry getBundleEntry(int localeIndex, int keyId) {
+        Column column = columns[localeIndex];
+        if (!column.present.get(keyId)) {
+            return null;
+        }
+        BundleEntry entry = new BundleEntry(keys[keyId],
+                column.values[keyId], column.getComment(keyId),
+                column.commented.get(keyId));
+        entry.setLocale(locales[localeIndex]);
+        return entry;
+    }
+
+    /**
+     * Creates an editable bundle with the entries of a locale, to be
+     * added to a {@link BundleGroup}.
+     * @param localeIndex locale index
+     * @return bundle
+     */
+    public Bundle toBundle(int localeIndex) {
+        Bundle bundle = new Bundle();
+        bundle.setLocale(locales[localeIndex]);
+        BitSet present = columns[localeIndex].present;
+        for (int id = present.nextSetBit(0); id >= 0;
+                id = present.nextSetBit(id + 1)) {
+            bundle.addEntry(getBundleEntry(localeIndex, id));
+        }
+        return bundle;
+    }
+
+    /**
+     * Gets a read-only view of the entries of a locale.  Entries are
+     * created as they are read, bound to the given bundle.  Since this
+     * group never changes, the view can be read from any thread.
+     * @param localeIndex locale index
+     * @param bundle bundle to bind entries to
+     * @return entries (key=key; value=BundleEntry)
+     */
+    /*default*/ Map<String, BundleEntry> getBundleEntries(
+            int localeIndex, Bundle bundle) {
+        return new ColumnMap(localeIndex, bundle);
+    }
+
+    /**
+     * Read-only map view of the entries of a locale.
+     */
+    private final class ColumnMap extends AbstractMap<String, BundleEntry> {
+        private final int localeIndex;
+        private final Bundle bundle;
+        private final BitSet present;
+        private final int size;
+        private ColumnMap(int localeIndex, Bundle bundle) {
+            this.localeIndex = localeIndex;
+            this.bundle = bundle;
+            this.present = columns[localeIndex].present;
+            this.size = present.cardinality();
+        }
+        @Override
+        public int size() {
+            return size;
+        }
+        @Override
+        public boolean containsKey(Object key) {
+            int keyId = key instanceof String ? getKeyId((String) key) : -1;
+            return keyId != -1 && present.get(keyId);
+        }
+        @Override
+        public BundleEntry get(Object key) {
+            int keyId = key instanceof String ? getKeyId((String) key) : -1;
+            return keyId == -1 ? null : getEntry(keyId);
+        }
+        @Override
+        public Set<String> keySet() {
+            return new AbstractSet<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return new ColumnIterator<String>() {
+                        @Override
+                        protected String get(int keyId) {
+                            return keys[keyId];
+                        }
+                    };
+                }
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        @Override
+        public Collection<BundleEntry> values() {
+            return new AbstractCollection<BundleEntry>() {
+                @Override
+                public Iterator<BundleEntry> iterator() {
+                    return new ColumnIterator<BundleEntry>() {
+                        @Override
+                        protected BundleEntry get(int keyId) {
+                            return getEntry(keyId);
+                        }
+                    };
+                }
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        @Override
+        public Set<Map.Entry<String, BundleEntry>> entrySet() {
+            return new AbstractSet<Map.Entry<String, BundleEntry>>() {
+                @Override
+                public Iterator<Map.Entry<String, BundleEntry>> iterator() {
+                    return new ColumnIterator<
+                            Map.Entry<String, BundleEntry>>() {
+                        @Override
+                        protected Map.Entry<String, BundleEntry> get(
+                                int keyId) {
+                            return new SimpleImmutableEntry<
+                                    String, BundleEntry>(
+                                            keys[keyId], getEntry(keyId));
+                        }
+                    };
+                }
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        private BundleEntry getEntry(int keyId) {
+            BundleEntry entry = getBundleEntry(localeIndex, keyId);
+            if (entry != null) {
+                entry.setBundle(bundle);
+            }
+            return entry;
+        }
+
+        /**
+         * Iterates through the keys present, in key order.
+         * @param <T> type of elements
+         */
+        private abstract class ColumnIterator<T> implements Iterator<T> {
+            private int nextId = present.nextSetBit(0);
+            public boolean hasNext() {
+                return nextId >= 0;
+            }
+            public T next() {
+                if (nextId < 0) {
+                    throw new NoSuchElementException();
+                }
+                int keyId = nextId;
+                nextId = present.nextSetBit(keyId + 1);
+                return get(keyId);
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+            protected abstract T get(int keyId);
+        }
+    }
+
+    /**
+     * Values of a locale, indexed by key id.
+     */
+    private static final class Column {
+        private final String[] values;
+        /** Comments, or <code>null</code> if there are none (empty comments
+         *  are not stored). */
+        private final String[] comments;
+        /** Keys present, or <code>null</code> while building. */
+        private final BitSet present;
+        private final BitSet commented;
+        private Column(String[] values, String[] comments,
+                BitSet present, BitSet commented) {
+            this.values = values;
+            this.comments = comments;
+            this.present = present;
+            this.commented = commented;
+        }
+        private String getComment(int keyId) {
+            String comment = comments == null ? null : comments[keyId];
+            return comment == null ? "" : comment;
+        }
+    }
+
+    /**
+     * Builds a compact bundle group, one bundle at a time.  Each bundle
+     * is kept as sorted arrays until all keys are known, with keys and
+     * values equal across bundles stored once.
+     */
+    public static final class Builder {
+
+        private final List<Locale> locales = new ArrayList<>();
+        /** Sorted keys of each bundle. */
+        private final List<String[]> bundleKeys = new ArrayList<>();
+        /** Values of each bundle, indexed as its sorted keys. */
+        private final List<Column> bundleColumns = new ArrayList<>();
+        /** Canonical instance of each key and value. */
+        private final Map<String, String> strings = new HashMap<>();
+
+        /**
+         * Adds a bundle.  Once added, the bundle is no longer needed.
+         * @param locale bundle locale
+         * @param bundle bundle
+         * @return this builder
+         */
+        public Builder addBundle(Locale locale, Bundle bundle) {
+            List<BundleEntry> entries = new ArrayList<>();
+            for (Iterator<BundleEntry> iter = bundle.iterator();
+                    iter.hasNext();) {
+                entries.add(iter.next());
+            }
+            return addBundle(locale, entries);
+        }
+
+        /**
+         * Adds the entries of a bundle.  Once added, the entries are no
+         * longer needed.
+         * @param locale bundle locale
+         * @param entries bundle entries, with unique keys
+         * @return this builder
+         */
+        public Builder addBundle(
+                Locale locale, Collection<BundleEntry> entries) {
+            BundleEntry[] sorted =
+                    entries.toArray(new BundleEntry[entries.size()]);
+            Arrays.sort(sorted, new Comparator<BundleEntry>() {
+                public int compare(BundleEntry entry1, BundleEntry entry2) {
+                    return entry1.getKey().compareTo(entry2.getKey());
+                }
+            });
+            String[] keys = new String[sorted.length];
+            String[] values = new String[sorted.length];
+            String[] comments = null;
+            BitSet commented = new BitSet(sorted.length);
+            for (int i = 0; i < sorted.length; i++) {
+                BundleEntry entry = sorted[i];
+                keys[i] = canonical(entry.getKey());
+                values[i] = canonical(entry.getValue());
+                if (entry.isCommented()) {
+                    commented.set(i);
+                }
+                String comment = entry.getComment();
+                if (comment != null && comment.length() > 0) {
+                    if (comments == null) {
+                        comments = new String[sorted.length];
+                    }
+                    comments[i] = comment;
+                }
+            }
+            locales.add(locale);
+            bundleKeys.add(keys);
+            bundleColumns.add(new Column(values, comments, null, commented));
+            return this;
+        }
+
+        /**
+         * Builds the compact bundle group.
+         * @return compact bundle group
+         */
+        public CompactBundleGroup build() {
+            String[] keys = mergeKeys();
+            Column[] columns = new Column[bundleColumns.size()];
+            for (int i = 0; i < columns.length; i++) {
+                String[] localKeys = bundleKeys.get(i);
+                Column local = bundleColumns.get(i);
+                String[] values = new String[keys.length];
+                String[] comments = local.comments == null
+                        ? null : new String[keys.length];
+                BitSet present = new BitSet(keys.length);
+                BitSet commented = new BitSet(keys.length);
+                int id = 0;
+                for (int j = 0; j < localKeys.length; j++) {
+                    while (!keys[id].equals(localKeys[j])) {
+                        id++;
+                    }
+                    values[id] = local.values[j];
+                    present.set(id);
+                    commented.set(id, local.commented.get(j));
+                    if (comments != null) {
+                        comments[id] = local.comments[j];
+                    }
+                }
+                columns[i] = new Column(values, comments, present, commented);
+            }
+            bundleKeys.clear();
+            bundleColumns.clear();
+            strings.clear();
+            return new CompactBundleGroup(keys,
+                    locales.toArray(new Locale[locales.size()]), columns);
+        }
+
+        /**
+         * Merges the sorted keys of all bundles.
+         * @return sorted keys, without duplicates
+         */
+        private String[] mergeKeys() {
+            List<String> merged = new ArrayList<>();
+            for (String[] keys : bundleKeys) {
+                List<String> next = new ArrayList<>(
+                        merged.size() + keys.length);
+                int i = 0;
+                int j = 0;
+                while (i < merged.size() || j < keys.length) {
+                    int diff;
+                    if (i == merged.size()) {
+                        diff = 1;
+                    } else if (j == keys.length) {
+                        diff = -1;
+                    } else {
+                        diff = merged.get(i).compareTo(keys[j]);
+                    }
+                    if (diff <= 0) {
+                        next.add(merged.get(i++));
+                        if (diff == 0) {
+                            j++;
+                        }
+                    } else {
+                        next.add(keys[j++]);
+                    }
+                }
+                merged = next;
+            }
+            return merged.toArray(new String[merged.size()]);
+        }
+
+        private String canonical(String string) {
+            String canonical = strings.get(string);
+            if (canonical == null) {
+                strings.put(string, string);
+                canonical = string;
+            }
+            return canonical;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+/**
+ * Immutable options used by {@link PropertiesGenerator} to write properties
+ * files.  Options are created with a {@link Builder}, which starts from the
+ * defaults of a new workspace.  Within the workbench, options are taken
+ * from preferences with
+ * {@link com.essiembre.eclipse.rbe.model.workbench.RBEPreferences
+ * #getFormatOptions()}.
+ */
+public final class FormatOptions {
+
+    /** New line type: UNIX. */
+    public static final int NEW_LINE_UNIX = 0;
+    /** New line type: Windows. */
+    public static final int NEW_LINE_WIN = 1;
+    /** New line type: Mac. */
+    public static final int NEW_LINE_MAC = 2;
+
+    /** Default options, as in a new workspace. */
+    public static final FormatOptions DEFAULT = new Builder().build();
+
+    private final String lineSeparator;
+    private final boolean showGenerator;
+    private final boolean keepEmptyFields;
+    private final boolean convertUnicodeToEncoded;
+    private final boolean convertUnicodeToEncodedUpper;
+    private final boolean alignEqualSigns;
+    private final boolean spacesAroundEqualSigns;
+    private final boolean groupKeys;
+    private final String keyGroupSeparator;
+    private final int groupLevelDepth;
+    private final int groupLineBreaks;
+    private final boolean groupAlignEqualSigns;
+    private final boolean wrapLines;
+    private final int wrapCharLimit;
+    private final boolean wrapAlignEqualSigns;
+    private final int wrapIndentSpaces;
+    private final boolean forceNewLineType;
+    private final int newLineType;
+    private final boolean newLineNice;
+
+    /**
+     * Constructor.
+     * @param builder builder holding the options
+     */
+    private FormatOptions(Builder builder) {
+        super();
+        this.lineSeparator = builder.lineSeparator;
+        this.showGenerator = builder.showGenerator;
+        this.keepEmptyFields = builder.keepEmptyFields;
+        this.convertUnicodeToEncoded = builder.convertUnicodeToEncoded;
+        this.convertUnicodeToEncodedUpper =
+                builder.convertUnicodeToEncodedUpper;
+        this.alignEqualSigns = builder.alignEqualSigns;
+        this.spacesAroundEqualSigns = builder.spacesAroundEqualSigns;
+        this.groupKeys = builder.groupKeys;
+        this.keyGroupSeparator = builder.keyGroupSeparator;
+        this.groupLevelDepth = builder.groupLevelDepth;
+        this.groupLineBreaks = builder.groupLineBreaks;
+        this.groupAlignEqualSigns = builder.groupAlignEqualSigns;
+        this.wrapLines = builder.wrapLines;
+        this.wrapCharLimit = builder.wrapCharLimit;
+        this.wrapAlignEqualSigns = builder.wrapAlignEqualSigns;
+        this.wrapIndentSpaces = builder.wrapIndentSpaces;
+        this.forceNewLineType = builder.forceNewLineType;
+        this.newLineType = builder.newLineType;
+        this.newLineNice = builder.newLineNice;
+    }
+
+    /**
+     * Gets the line separator written between lines.
+     * @return line separator
+     */
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+    /**
+     * Gets whether to add a "generated by" comment to files having a
+     * header comment.
+     * @return <code>true</code> if adding
+     */
+    public boolean isShowGenerator() {
+        return showGenerator;
+    }
+    /**
+     * Gets whether to write entries having an empty value.
+     * @return <code>true</code> if writing them
+     */
+    public boolean isKeepEmptyFields() {
+        return keepEmptyFields;
+    }
+    /**
+     * Gets whether to convert unicode characters to encoded &#92;uxxxx.
+     * @return <code>true</code> if converting
+     */
+    public boolean isConvertUnicodeToEncoded() {
+        return convertUnicodeToEncoded;
+    }
+    /**
+     * Gets whether encoded &#92;uxxxx use upper case hexadecimal digits.
+     * @return <code>true</code> if upper case
+     */
+    public boolean isConvertUnicodeToEncodedUpper() {
+        return convertUnicodeToEncodedUpper;
+    }
+    /**
+     * Gets whether to align equal signs.
+     * @return <code>true</code> if aligning
+     */
+    public boolean isAlignEqualSigns() {
+        return alignEqualSigns;
+    }
+    /**
+     * Gets whether to put spaces around equal signs.
+     * @return <code>true</code> if putting spaces
+     */
+    public boolean isSpacesAroundEqualSigns() {
+        return spacesAroundEqualSigns;
+    }
+    /**
+     * Gets whether to group keys.
+     * @return <code>true</code> if grouping
+     */
+    public boolean isGroupKeys() {
+        return groupKeys;
+    }
+    /**
+     * Gets the key group separator.
+     * @return key group separator
+     */
+    public String getKeyGroupSeparator() {
+        return keyGroupSeparator;
+    }
+    /**
+     * Gets how many key group levels deep keys are grouped.
+     * @return group level depth
+     */
+    public int getGroupLevelDepth() {
+        return groupLevelDepth;
+    }
+    /**
+     * Gets the number of line breaks between key groups.
+     * @return number of line breaks
+     */
+    public int getGroupLineBreaks() {
+        return groupLineBreaks;
+    }
+    /**
+     * Gets whether to align equal signs within key groups.
+     * @return <code>true</code> if aligning
+     */
+    public boolean isGroupAlignEqualSigns() {
+        return groupAlignEqualSigns;
+    }
+    /**
+     * Gets whether to wrap long values.
+     * @return <code>true</code> if wrapping
+     */
+    public boolean isWrapLines() {
+        return wrapLines;
+    }
+    /**
+     * Gets the number of characters after which values are wrapped.
+     * @return character limit
+     */
+    public int getWrapCharLimit() {
+        return wrapCharLimit;
+    }
+    /**
+     * Gets whether wrapped lines are aligned with equal signs.
+     * @return <code>true</code> if aligning
+     */
+    public boolean isWrapAlignEqualSigns() {
+        return wrapAlignEqualSigns;
+    }
+    /**
+     * Gets the indentation of wrapped lines not aligned with equal signs.
+     * @return number of spaces
+     */
+    public int getWrapIndentSpaces() {
+        return wrapIndentSpaces;
+    }
+    /**
+     * Gets whether to write all escaped new lines of a given type.
+     * @return <code>true</code> if forcing new line type
+     */
+    public boolean isForceNewLineType() {
+        return forceNewLineType;
+    }
+    /**
+     * Gets the type of escaped new lines to write when forcing it.
+     * @return one of <code>NEW_LINE_UNIX</code>, <code>NEW_LINE_WIN</code>
+     *         or <code>NEW_LINE_MAC</code>
+     */
+    public int getNewLineType() {
+        return newLineType;
+    }
+    /**
+     * Gets whether to break lines after escaped new lines.
+     * @return <code>true</code> if breaking lines
+     */
+    public boolean isNewLineNice() {
+        return newLineNice;
+    }
+
+    /**
+     * Builds format options, starting from the defaults of a new workspace.
+     */
+    public static final class Builder {
+        private String lineSeparator = System.getProperty("line.separator");
+        private boolean showGenerator = true;
+        private boolean keepEmptyFields = false;
+        private boolean convertUnicodeToEncoded = true;
+        private boolean convertUnicodeToEncodedUpper = true;
+        private boolean alignEqualSigns = true;
+        private boolean spacesAroundEqualSigns = true;
+        private boolean groupKeys = true;
+        private String keyGroupSeparator = ".";
+        private int groupLevelDepth = 1;
+        private int groupLineBreaks = 1;
+        private boolean groupAlignEqualSigns = true;
+        private boolean wrapLines = false;
+        private int wrapCharLimit = 80;
+        private boolean wrapAlignEqualSigns = false;
+        private int wrapIndentSpaces = 8;
+        private boolean forceNewLineType = false;
+        private int newLineType = NEW_LINE_UNIX;
+        private boolean newLineNice = false;
+
+        /**
+         * Sets the line separator.
+         * @param lineSeparator line separator
+         * @return this builder
+         */
+        public Builder setLineSeparator(String lineSeparator) {
+            this.lineSeparator = lineSeparator;
+            return this;
+        }
+        /**
+         * Sets whether to add a "generated by" comment.
+         * @param showGenerator <code>true</code> if adding
+         * @return this builder
+         */
+        public Builder setShowGenerator(boolean showGenerator) {
+            this.showGenerator = showGenerator;
+            return this;
+        }
+        /**
+         * Sets whether to write entries having an empty value.
+         * @param keepEmptyFields <code>true</code> if writing them
+         * @return this builder
+         */
+        public Builder setKeepEmptyFields(boolean keepEmptyFields) {
+            this.keepEmptyFields = keepEmptyFields;
+            return this;
+        }
+        /**
+         * Sets whether to convert unicode characters to encoded &#92;uxxxx.
+         * @param convertUnicodeToEncoded <code>true</code> if converting
+         * @return this builder
+         */
+        public Builder setConvertUnicodeToEncoded(
+                boolean convertUnicodeToEncoded) {
+            this.convertUnicodeToEncoded = convertUnicodeToEncoded;
+            return this;
+        }
+        /**
+         * Sets whether encoded &#92;uxxxx use upper case digits.
+         * @param convertUnicodeToEncodedUpper <code>true</code> if upper case
+         * @return this builder
+         */
+        public Builder setConvertUnicodeToEncodedUpper(
+                boolean convertUnicodeToEncodedUpper) {
+            this.convertUnicodeToEncodedUpper = convertUnicodeToEncodedUpper;
+            return this;
+        }
+        /**
+         * Sets whether to align equal signs.
+         * @param alignEqualSigns <code>true</code> if aligning
+         * @return this builder
+         */
+        public Builder setAlignEqualSigns(boolean alignEqualSigns) {
+            this.alignEqualSigns = alignEqualSigns;
+            return this;
+        }
+        /**
+         * Sets whether to put spaces around equal signs.
+         * @param spacesAroundEqualSigns <code>true</code> if putting spaces
+         * @return this builder
+         */
+        public Builder setSpacesAroundEqualSigns(
+                boolean spacesAroundEqualSigns) {
+            this.spacesAroundEqualSigns = spacesAroundEqualSigns;
+            return this;
+        }
+        /**
+         * Sets whether to group keys.
+         * @param groupKeys <code>true</code> if grouping
+         * @return this builder
+         */
+        public Builder setGroupKeys(boolean groupKeys) {
+            this.groupKeys = groupKeys;
+            return this;
+        }
+        /**
+         * Sets the key group separator.
+         * @param keyGroupSeparator key group separator
+         * @return this builder
+         */
+        public Builder setKeyGroupSeparator(String keyGroupSeparator) {
+            this.keyGroupSeparator = keyGroupSeparator;
+            return this;
+        }
+        /**
+         * Sets how many key group levels deep keys are grouped.
+         * @param groupLevelDepth group level depth
+         * @return this builder
+         */
+        public Builder setGroupLevelDepth(int groupLevelDepth) {
+            this.groupLevelDepth = groupLevelDepth;
+            return this;
+        }
+        /**
+         * Sets the number of line breaks between key groups.
+         * @param groupLineBreaks number of line breaks
+         * @return this builder
+         */
+        public Builder setGroupLineBreaks(int groupLineBreaks) {
+            this.groupLineBreaks = groupLineBreaks;
+            return this;
+        }
+        /**
+         * Sets whether to align equal signs within key groups.
+         * @param groupAlignEqualSigns <code>true</code> if aligning
+         * @return this builder
+         */
+        public Builder setGroupAlignEqualSigns(boolean groupAlignEqualSigns) {
+            this.groupAlignEqualSigns = groupAlignEqualSigns;
+            return this;
+        }
+        /**
+         * Sets whether to wrap long values.
+         * @param wrapLines <code>true</code> if wrapping
+         * @return this builder
+         */
+        public Builder setWrapLines(boolean wrapLines) {
+            this.wrapLines = wrapLines;
+            return this;
+        }
+        /**
+         * Sets the number of characters after which values are wrapped.
+         * @param wrapCharLimit character limit
+         * @return this builder
+         */
+        public Builder setWrapCharLimit(int wrapCharLimit) {
+            this.wrapCharLimit = wrapCharLimit;
+            return this;
+        }
+        /**
+         * Sets whether wrapped lines are aligned with equal signs.
+         * @param wrapAlignEqualSigns <code>true</code> if aligning
+         * @return this builder
+         */
+        public Builder setWrapAlignEqualSigns(boolean wrapAlignEqualSigns) {
+            this.wrapAlignEqualSigns = wrapAlignEqualSigns;
+            return this;
+        }
+        /**
+         * Sets the indentation of wrapped lines.
+         * @param wrapIndentSpaces number of spaces
+         * @return this builder
+         */
+        public Builder setWrapIndentSpaces(int wrapIndentSpaces) {
+            this.wrapIndentSpaces = wrapIndentSpaces;
+            return this;
+        }
+        /**
+         * Sets whether to write all escaped new lines of a given type.
+         * @param forceNewLineType <code>true</code> if forcing
+         * @return this builder
+         */
+        public Builder setForceNewLineType(boolean forceNewLineType) {
+            this.forceNewLineType = forceNewLineType;
+            return this;
+        }
+        /**
+         * Sets the type of escaped new lines to write when forcing it.
+         * @param newLineType one of <code>NEW_LINE_UNIX</code>,
+         *        <code>NEW_LINE_WIN</code> or <code>NEW_LINE_MAC</code>
+         * @return this builder
+         */
+        public Builder setNewLineType(int newLineType) {
+            if (newLineType < NEW_LINE_UNIX || newLineType > NEW_LINE_MAC) {
+                throw new IllegalArgumentException(
+                        "Invalid new line type: " + newLineType);
+            }
+            this.newLineType = newLineType;
+            return this;
+        }
+        /**
+         * Sets whether to break lines after escaped new lines.
+         * @param newLineNice <code>true</code> if breaking lines
+         * @return this builder
+         */
+        public Builder setNewLineNice(boolean newLineNice) {
+            this.newLineNice = newLineNice;
+            return this;
+        }
+
+        /**
+         * Builds the format options.
+         * @return format options
+         */
+        public FormatOptions build() {
+            return new FormatOptions(this);
+        }
+    }
+}
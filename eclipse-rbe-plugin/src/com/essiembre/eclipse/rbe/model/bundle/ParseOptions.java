@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+/**
+ * Immutable options used by {@link PropertiesParser} to read properties
+ * files.  Within the workbench, options are taken from preferences with
+ * {@link com.essiembre.eclipse.rbe.model.workbench.RBEPreferences
+ * #getParseOptions()}, which also report parsing problems to the
+ * plugin log.
+ */
+public final class ParseOptions {
+
+    /** Default options, as in a new workspace, not reporting problems. */
+    public static final ParseOptions DEFAULT = new ParseOptions(true);
+
+    private final boolean convertEncodedToUnicode;
+    /** Handler of parsing problems, or <code>null</code>. */
+    private final ProblemHandler problemHandler;
+
+    /**
+     * Handles problems found while parsing.  Problems do not stop
+     * parsing.
+     */
+    public interface ProblemHandler {
+        /**
+         * Invoked when a malformed &#92;uxxxx encoding is found.
+         * @param str string holding the malformed encoding
+         */
+        void badEncoding(String str);
+    }
+
+    /**
+     * Constructor.
+     * @param convertEncodedToUnicode whether to convert encoded &#92;uxxxx
+     *        to unicode characters
+     */
+    public ParseOptions(boolean convertEncodedToUnicode) {
+        this(convertEncodedToUnicode, null);
+    }
+
+    /**
+     * Constructor.
+     * @param convertEncodedToUnicode whether to convert encoded &#92;uxxxx
+     *        to unicode characters
+     * @param problemHandler handler of parsing problems, or
+     *        <code>null</code> to ignore them
+     */
+    public ParseOptions(boolean convertEncodedToUnicode,
+            ProblemHandler problemHandler) {
+        super();
+        this.convertEncodedToUnicode = convertEncodedToUnicode;
+        this.problemHandler = problemHandler;
+    }
+
+    /**
+     * Gets whether to convert encoded &#92;uxxxx to unicode characters.
+     * @return <code>true</code> if converting
+     */
+    public boolean isConvertEncodedToUnicode() {
+        return convertEncodedToUnicode;
+    }
+
+    /**
+     * Gets the handler of parsing problems.
+     * @return problem handler, or <code>null</code>
+     */
+    public ProblemHandler getProblemHandler() {
+        return problemHandler;
+    }
+
+    /**
+     * Options are equal when they parse files the same way, whatever
+     * their problem handler.
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ParseOptions)) {
+            return false;
+        }
+        return convertEncodedToUnicode
+                == ((ParseOptions) obj).convertEncodedToUnicode;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode() {
+        return convertEncodedToUnicode ? 1 : 0;
+    }
+}
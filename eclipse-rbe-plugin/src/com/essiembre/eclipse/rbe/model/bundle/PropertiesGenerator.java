@@ -17,10 +17,6 @@ package com.essiembre.eclipse.rbe.model.bundle;
 
 import java.util.Iterator;
 
-import org.eclipse.core.runtime.Platform;
-
-import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
-
 /**
  * Bundle-related utility methods. 
  * @author Pascal Essiembre
@@ -41,18 +37,13 @@ public final class PropertiesGenerator {
     private static final String SPECIAL_VALUE_SAVE_CHARS = "\t\f";
     /** Special resource bundle characters when persisting keys. */
     private static final String SPECIAL_KEY_SAVE_CHARS = "=\t\f#!: ";
-    
-    /** System line separator. */
-	private static final String SYSTEM_LINE_SEP = Platform
-			.getPreferencesService().getString("org.eclipse.core.runtime",
-					"line.separator", System.getProperty("line.separator"),
-					null);
+
     /** Forced line separators. */
     private static final String[] FORCED_LINE_SEP = new String[3];
     static {
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_UNIX] = "\\\\n";
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_WIN] = "\\\\r\\\\n";
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_MAC] = "\\\\r";
+        FORCED_LINE_SEP[FormatOptions.NEW_LINE_UNIX] = "\\\\n";
+        FORCED_LINE_SEP[FormatOptions.NEW_LINE_WIN] = "\\\\r\\\\n";
+        FORCED_LINE_SEP[FormatOptions.NEW_LINE_MAC] = "\\\\r";
     }
 
     /**
@@ -66,20 +57,21 @@ public final class PropertiesGenerator {
      * Generates a formatted string from a given <code>Bundle</code>.  The
      * returned string will conform to documented properties file structure.
      * @param bundle the bundle used to generate the string
+     * @param options formatting options
      * @return the generated string
      */
-    public static String generate(Bundle bundle) {
-        String lineBreak = SYSTEM_LINE_SEP;
-        int numOfLineBreaks = RBEPreferences.getGroupLineBreaks();
+    public static String generate(Bundle bundle, FormatOptions options) {
+        String lineBreak = options.getLineSeparator();
+        int numOfLineBreaks = options.getGroupLineBreaks();
         StringBuffer text = new StringBuffer();
 
         // Header comment
         String headComment = bundle.getComment();
         if (headComment != null && headComment.length() > 0) {
-            if (RBEPreferences.getShowGenerator() 
+            if (options.isShowGenerator() 
                     && !headComment.startsWith(GENERATED_BY)) {
                 text.append(GENERATED_BY);
-                text.append(SYSTEM_LINE_SEP);
+                text.append(lineBreak);
             }
             text.append(headComment);
         }
@@ -96,15 +88,15 @@ public final class PropertiesGenerator {
             
             if (value != null){
                 // escape backslashes
-                if (RBEPreferences.getConvertUnicodeToEncoded()) {
+                if (options.isConvertUnicodeToEncoded()) {
                     value = value.replaceAll("\\\\", "\\\\\\\\");
                 }
                 
                 // handle new lines in value
-                if (RBEPreferences.getForceNewLineType()) {
+                if (options.isForceNewLineType()) {
                     value = value.replaceAll(
                             "\r\n|\r|\n", FORCED_LINE_SEP[
-                                    RBEPreferences.getNewLineType()]);
+                                    options.getNewLineType()]);
                 } else {
                     value = value.replaceAll("\r", "\\\\r");
                     value = value.replaceAll("\n", "\\\\n");
@@ -113,31 +105,37 @@ public final class PropertiesGenerator {
                 value = "";
             }
             
-            if (RBEPreferences.getKeepEmptyFields() || value.length() > 0) {
+            if (options.isKeepEmptyFields() || value.length() > 0) {
                 // handle group equal align and line break options
-                if (RBEPreferences.getGroupKeys()) {
-                    String newGroup = getKeyGroup(key);
+                if (options.isGroupKeys()) {
+                    String newGroup = getKeyGroup(key, options);
                     if (newGroup == null || !newGroup.equals(group)) {
                         group = newGroup;
-                        equalIndex = getEqualIndex(key, group, bundle);
+                        equalIndex = getEqualIndex(
+                                key, group, bundle, options);
                         for (int i = 0; i < numOfLineBreaks; i++) {
                             text.append(lineBreak);
                         }
                     }
                 } else {
-                    equalIndex = getEqualIndex(key, null, bundle);
+                    equalIndex = getEqualIndex(key, null, bundle, options);
                 }
                 
                 // Build line
-                if (RBEPreferences.getConvertUnicodeToEncoded()) {
-                    key = PropertiesGenerator.convertUnicodeToEncoded(key);
-                    value = PropertiesGenerator.convertUnicodeToEncoded(value);
+                if (options.isConvertUnicodeToEncoded()) {
+                    boolean upper = options.isConvertUnicodeToEncodedUpper();
+                    key = PropertiesGenerator.convertUnicodeToEncoded(
+                            key, upper);
+                    value = PropertiesGenerator.convertUnicodeToEncoded(
+                            value, upper);
                 }
                 if (comment != null && comment.length() > 0) {
                     text.append(comment);
                 }
-                appendKey(text, key, equalIndex, bundleEntry.isCommented());
-                appendValue(text, value, equalIndex, bundleEntry.isCommented());
+                appendKey(text, key, equalIndex,
+                        bundleEntry.isCommented(), options);
+                appendValue(text, value, equalIndex,
+                        bundleEntry.isCommented(), options);
                 text.append(lineBreak);
             }
         }
@@ -147,10 +145,12 @@ public final class PropertiesGenerator {
     /**
      * Converts unicodes to encoded &#92;uxxxx.
      * @param str string to convert
+     * @param upperCase whether to use upper case hexadecimal digits
      * @return converted string
      * @see java.util.Properties
      */
-    public static String convertUnicodeToEncoded(String str) {
+    public static String convertUnicodeToEncoded(
+            String str, boolean upperCase) {
         int len = str.length();
         StringBuffer outBuffer = new StringBuffer(len * 2);
 
@@ -159,10 +159,10 @@ public final class PropertiesGenerator {
             if ((aChar < 0x0020) || (aChar > 0x007e)) {
                 outBuffer.append('\\');
                 outBuffer.append('u');
-                outBuffer.append(toHex((aChar >> 12) & 0xF));
-                outBuffer.append(toHex((aChar >> 8) & 0xF));
-                outBuffer.append(toHex((aChar >> 4) & 0xF));
-                outBuffer.append(toHex(aChar & 0xF));
+                outBuffer.append(toHex((aChar >> 12) & 0xF, upperCase));
+                outBuffer.append(toHex((aChar >> 8) & 0xF, upperCase));
+                outBuffer.append(toHex((aChar >> 4) & 0xF, upperCase));
+                outBuffer.append(toHex(aChar & 0xF, upperCase));
             } else {
                 outBuffer.append(aChar);
             }
@@ -173,11 +173,12 @@ public final class PropertiesGenerator {
     /**
      * Converts a nibble to a hex character
      * @param nibble  the nibble to convert.
+     * @param upperCase whether to use upper case
      * @return a converted character
      */
-    private static char toHex(int nibble) {
+    private static char toHex(int nibble, boolean upperCase) {
         char hexChar = HEX_DIGITS[(nibble & 0xF)];
-        if (!RBEPreferences.getConvertUnicodeToEncodedUpper()) {
+        if (!upperCase) {
             return Character.toLowerCase(hexChar);
         }
         return hexChar;
@@ -189,40 +190,42 @@ public final class PropertiesGenerator {
      * @param value the value to add
      * @param equalIndex the equal sign position
      * @param commented is the value commented
+     * @param options formatting options
      */
     private static void appendValue(
             StringBuffer text, String value, 
-            int equalIndex, boolean commented) {
+            int equalIndex, boolean commented, FormatOptions options) {
         if (value != null) {
             // Escape potential leading spaces.
             if (value.startsWith(" ")) {
                 value = "\\" + value;
             }
-            int lineLength = RBEPreferences.getWrapCharLimit() - 1;
+            String lineSep = options.getLineSeparator();
+            int lineLength = options.getWrapCharLimit() - 1;
             int valueStartPos = equalIndex;
-            if (RBEPreferences.getSpacesAroundEqualSigns()) {
+            if (options.isSpacesAroundEqualSigns()) {
                 valueStartPos += 3;
             } else {
                 valueStartPos += 1;
             }
             
             // Break line after escaped new line
-            if (RBEPreferences.getNewLineNice()) {
+            if (options.isNewLineNice()) {
                 value = value.replaceAll(
                         "(\\\\r\\\\n|\\\\r|\\\\n)",
-                        "$1\\\\" + SYSTEM_LINE_SEP);
+                        "$1\\\\" + lineSep);
             }
             // Wrap lines
-            if (RBEPreferences.getWrapLines() && valueStartPos < lineLength) {
+            if (options.isWrapLines() && valueStartPos < lineLength) {
                 StringBuffer valueBuf = new StringBuffer(value);
                 while (valueBuf.length() + valueStartPos > lineLength
                         || valueBuf.indexOf("\n") != -1) {
                     int endPos = Math.min(
                             valueBuf.length(), lineLength - valueStartPos);
                     String line = valueBuf.substring(0, endPos);
-                    int breakPos = line.indexOf(SYSTEM_LINE_SEP);
+                    int breakPos = line.indexOf(lineSep);
                     if (breakPos != -1) {
-                        endPos = breakPos + SYSTEM_LINE_SEP.length();
+                        endPos = breakPos + lineSep.length();
                         saveValue(text, valueBuf.substring(0, endPos));
                         //text.append(valueBuf.substring(0, endPos));
                     } else {
@@ -232,13 +235,13 @@ public final class PropertiesGenerator {
                             saveValue(text, valueBuf.substring(0, endPos));
                             //text.append(valueBuf.substring(0, endPos));
                             text.append("\\");
-                            text.append(SYSTEM_LINE_SEP);
+                            text.append(lineSep);
                         }
                     }
                     valueBuf.delete(0, endPos);
                     // Figure out starting position for next line
-                    if (!RBEPreferences.getWrapAlignEqualSigns()) {
-                        valueStartPos = RBEPreferences.getWrapIndentSpaces();
+                    if (!options.isWrapAlignEqualSigns()) {
+                        valueStartPos = options.getWrapIndentSpaces();
                     }
 
                     if (commented && valueStartPos > 0) {
@@ -263,9 +266,10 @@ public final class PropertiesGenerator {
      * @param key the key to add
      * @param equalIndex the equal sign position
      * @param commented is the key commented out
+     * @param options formatting options
      */
-    private static void appendKey(
-            StringBuffer text, String key, int equalIndex, boolean commented) {
+    private static void appendKey(StringBuffer text, String key,
+            int equalIndex, boolean commented, FormatOptions options) {
 
         if (commented) {
             text.append("##");
@@ -277,7 +281,7 @@ public final class PropertiesGenerator {
         for (int i = 0; i < equalIndex - key.length(); i++) {
             text.append(' ');
         }
-        if (RBEPreferences.getSpacesAroundEqualSigns()) {
+        if (options.isSpacesAroundEqualSigns()) {
             text.append(" = ");
         } else {
             text.append("=");
@@ -313,11 +317,12 @@ public final class PropertiesGenerator {
     /**
      * Gets the group from a resource bundle key.
      * @param key the key to get a group from
+     * @param options formatting options
      * @return key group
      */
-    private static String getKeyGroup(String key) {
-        String sep = RBEPreferences.getKeyGroupSeparator();
-        int deepness = RBEPreferences.getGroupLevelDepth();
+    private static String getKeyGroup(String key, FormatOptions options) {
+        String sep = options.getKeyGroupSeparator();
+        int deepness = options.getGroupLevelDepth();
         int endIndex = 0;
         int levelFound = 0;
         
@@ -343,13 +348,15 @@ public final class PropertiesGenerator {
      * @param key resource bundle key
      * @param group resource bundle key group
      * @param bundle resource bundle
+     * @param options formatting options
      * @return position
      */
-    private static int getEqualIndex(String key, String group, Bundle bundle) {
+    private static int getEqualIndex(String key, String group,
+            Bundle bundle, FormatOptions options) {
         int equalIndex = -1;
-        boolean alignEquals = RBEPreferences.getAlignEqualSigns();
-        boolean groupKeys = RBEPreferences.getGroupKeys();
-        boolean groupAlignEquals = RBEPreferences.getGroupAlignEqualSigns();
+        boolean alignEquals = options.isAlignEqualSigns();
+        boolean groupKeys = options.isGroupKeys();
+        boolean groupAlignEquals = options.isGroupAlignEqualSigns();
 
         // Exit now if we are not aligning equals
         if (!alignEquals || groupKeys && !groupAlignEquals 
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the entries of a properties file are, by key.  An entry spans from
+ * the start of its first line to the end of its last continuation line.
+ * The index is created by
+ * {@link PropertiesParser#parseIndex(CharSequence, ParseOptions)} and
+ * can be kept current as the text changes, reparsing only the lines around
+ * each change.
+ */
+public final class PropertiesIndex {
+
+    /** Entries, by offset. */
+    private final List<Entry> entries = new ArrayList<>();
+    /** Entries by key (the last one, for keys found more than once). */
+    private final Map<String, Entry> keyEntries = new HashMap<>();
+    /** Options keys are parsed with. */
+    private final ParseOptions options;
+    /** Whether a key was ever found more than once. */
+    private boolean duplicateKeys;
+
+    /**
+     * Constructor.
+     * @param text properties file content
+     * @param options parsing options
+     */
+    /*default*/ PropertiesIndex(CharSequence text, ParseOptions options) {
+        super();
+        this.options = options;
+        parse(text, 0, false, Integer.MAX_VALUE, 0, entries);
+        for (Entry entry : entries) {
+            putKeyEntry(entry);
+        }
+    }
+
+    /**
+     * Gets the offset of an entry.
+     * @param key entry key
+     * @return offset of the entry first line, or -1 if there is no entry
+     *         with this key
+     */
+    public int getOffset(String key) {
+        Entry entry = keyEntries.get(key);
+        return entry == null ? -1 : entry.offset;
+    }
+
+    /**
+     * Gets the length of an entry.
+     * @param key entry key
+     * @return length of the entry lines, or -1 if there is no entry
+     *         with this key
+     */
+    public int getLength(String key) {
+        Entry entry = keyEntries.get(key);
+        return entry == null ? -1 : entry.length;
+    }
+
+    /**
+     * Gets the key of the entry at an offset.
+     * @param offset offset in the properties file
+     * @return key, or <code>null</code> if the offset is not in an entry
+     */
+    public String getKeyAt(int offset) {
+        int index = indexAt(offset);
+        if (index == -1) {
+            return null;
+        }
+        Entry entry = entries.get(index);
+        return offset <= entry.offset + entry.length ? entry.key : null;
+    }
+
+    /**
+     * Updates this index after the text changed.  Lines are reparsed from
+     * the entry or line where the change starts, until past the change
+     * and back in step with an entry already indexed.  Following entries
+     * are moved by the change length difference.
+     * @param text properties file content, after the change
+     * @param offset offset of the change
+     * @param removedLength length of the text replaced
+     * @param insertedLength length of the replacement text
+     */
+    public void update(CharSequence text, int offset, int removedLength,
+            int insertedLength) {
+        int delta = insertedLength - removedLength;
+        int start = offset;
+        while (start > 0 && text.charAt(start - 1) != '\n'
+                && text.charAt(start - 1) != '\r') {
+            start--;
+        }
+        // the entry changed, or one which may continue on the changed line
+        int first = indexAt(offset);
+        if (first != -1 && entries.get(first).offset
+                + entries.get(first).length >= start - 2) {
+            start = Math.min(start, entries.get(first).offset);
+        } else {
+            first++;
+        }
+        boolean doneWithFileComment = first > 0;
+        if (!doneWithFileComment) {
+            // whether "##" lines are entries depends on preceding lines
+            start = 0;
+        }
+
+        List<Entry> parsed = new ArrayList<>();
+        int last = parse(text, start, doneWithFileComment,
+                offset + insertedLength, delta, parsed);
+
+        List<Entry> replaced = entries.subList(first, last);
+        List<String> unmappedKeys = new ArrayList<>();
+        for (Entry entry : replaced) {
+            if (keyEntries.get(entry.key) == entry) {
+                keyEntries.remove(entry.key);
+                unmappedKeys.add(entry.key);
+            }
+        }
+        replaced.clear();
+        for (int i = first; i < entries.size(); i++) {
+            entries.get(i).offset += delta;
+        }
+        entries.addAll(first, parsed);
+        for (Entry entry : parsed) {
+            putKeyEntry(entry);
+        }
+        if (duplicateKeys) {
+            for (String key : unmappedKeys) {
+                if (!keyEntries.containsKey(key)) {
+                    for (Entry entry : entries) {
+                        if (entry.key.equals(key)) {
+                            putKeyEntry(entry);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses entries, line by line.  When reparsing after a change, parsing
+     * stops at the first entry indexed before the change which starts at
+     * the same place after the change.
+     * @param text properties file content
+     * @param start offset of the line to start from
+     * @param doneWithFileComment whether lines before are past the
+     *        leading file comment
+     * @param changeEnd offset of the end of the change (parsing goes on
+     *        at least until there)
+     * @param delta change length difference
+     * @param parsed where to add entries found
+     * @return index of the first entry indexed before the change which
+     *         was not reparsed
+     */
+    private int parse(CharSequence text, int start,
+            boolean doneWithFileComment, int changeEnd, int delta,
+            List<Entry> parsed) {
+        int length = text.length();
+        int last = indexAt(start - 1) + 1;
+        int lineStart = start;
+        while (lineStart < length) {
+            if (lineStart >= changeEnd && doneWithFileComment) {
+                int oldOffset = lineStart - delta;
+                while (last < entries.size()
+                        && entries.get(last).offset < oldOffset) {
+                    last++;
+                }
+                if (last < entries.size()
+                        && entries.get(last).offset == oldOffset) {
+                    return last;
+                }
+            }
+            int lineEnd = lineEnd(text, lineStart);
+            String line = text.subSequence(lineStart, lineEnd).toString();
+            String key = PropertiesParser.parseKey(
+                    line, doneWithFileComment, options);
+            int entryStart = lineStart;
+            lineStart = nextLine(text, lineEnd);
+            if (key != null) {
+                boolean commented = !PropertiesParser.isRegularLine(line);
+                // lines ending with a backslash continue on the next line
+                while (line.endsWith("\\") && lineStart < length) {
+                    lineEnd = lineEnd(text, lineStart);
+                    line = stripLeadingSpace(
+                            text.subSequence(lineStart, lineEnd).toString());
+                    if (commented && line.startsWith("##")) {
+                        line = line.substring(2);
+                    }
+                    lineStart = nextLine(text, lineEnd);
+                }
+                parsed.add(new Entry(key, entryStart, lineEnd - entryStart));
+                doneWithFileComment = true;
+            } else if (line.length() == 0 || (line.charAt(0) != '#'
+                    && line.charAt(0) != '!')) {
+                doneWithFileComment = true;
+            }
+        }
+        return entries.size();
+    }
+
+    /**
+     * Gets the index of the last entry starting at or before an offset.
+     * @param offset offset
+     * @return entry index, or -1 if none
+     */
+    private int indexAt(int offset) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (entries.get(middle).offset <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Maps a key to an entry, unless an entry further down has that key.
+     * @param entry entry
+     */
+    private void putKeyEntry(Entry entry) {
+        Entry existing = keyEntries.get(entry.key);
+        if (existing != null) {
+            duplicateKeys = true;
+            if (existing.offset > entry.offset) {
+                return;
+            }
+        }
+        keyEntries.put(entry.key, entry);
+    }
+
+    private static int lineEnd(CharSequence text, int lineStart) {
+        int lineEnd = lineStart;
+        while (lineEnd < text.length() && text.charAt(lineEnd) != '\n'
+                && text.charAt(lineEnd) != '\r') {
+            lineEnd++;
+        }
+        return lineEnd;
+    }
+
+    private static int nextLine(CharSequence text, int lineEnd) {
+        if (lineEnd < text.length() && text.charAt(lineEnd) == '\r') {
+            lineEnd++;
+        }
+        if (lineEnd < text.length() && text.charAt(lineEnd) == '\n') {
+            lineEnd++;
+        }
+        return lineEnd;
+    }
+
+    private static String stripLeadingSpace(String line) {
+        int i = 0;
+        while (i < line.length() && " \t\u000B\f".indexOf(line.charAt(i)) != -1) {
+            i++;
+        }
+        return line.substring(i);
+    }
+
+    /**
+     * Offset and length of an entry.
+     */
+    private static class Entry {
+        private final String key;
+        private int offset;
+        private final int length;
+        private Entry(String key, int offset, int length) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
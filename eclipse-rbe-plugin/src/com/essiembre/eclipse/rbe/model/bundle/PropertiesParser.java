@@ -17,9 +17,6 @@ package com.essiembre.eclipse.rbe.model.bundle;
 
 import java.util.regex.Pattern;
 
-import com.essiembre.eclipse.rbe.RBEPlugin;
-import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
-
 /**
  * Bundle-related utility methods. 
  * @author Pascal Essiembre
@@ -59,9 +56,10 @@ public final class PropertiesParser {
      * The returned bundle will have no <code>Locale</code> and no
      * <code>BundleGroup</code> associated to it.
      * @param properties the string containing the properties to parse
+     * @param options parsing options
      * @return a new bundle
      */
-    public static Bundle parse(String properties) {
+    public static Bundle parse(String properties, ParseOptions options) {
         Bundle bundle = new Bundle();
         String[] lines = PATTERN_LINE_BREAK.split(properties);
         
@@ -122,9 +120,11 @@ public final class PropertiesParser {
                     value = value.substring(1);
                 }
                 
-                if (RBEPreferences.getConvertEncodedToUnicode()) {
-                    key = PropertiesParser.convertEncodedToUnicode(key);
-                    value = PropertiesParser.convertEncodedToUnicode(value);
+                if (options.isConvertEncodedToUnicode()) {
+                    key = PropertiesParser.convertEncodedToUnicode(
+                            key, options);
+                    value = PropertiesParser.convertEncodedToUnicode(
+                            value, options);
                 } else {
                     value = PATTERN_BACKSLASH_R.matcher(value).replaceAll("\r");
                     value = PATTERN_BACKSLASH_N.matcher(value).replaceAll("\n");
@@ -152,6 +152,54 @@ public final class PropertiesParser {
     }
     
     
+    /**
+     * Parses a string to find where its entries are.  The string is
+     * expected to match the documented structure of a properties file.
+     * @param properties the string containing the properties to parse
+     * @param options parsing options
+     * @return a new index of entry offsets, by key
+     */
+    public static PropertiesIndex parseIndex(
+            CharSequence properties, ParseOptions options) {
+        return new PropertiesIndex(properties, options);
+    }
+
+    /**
+     * Gets the key of the entry starting on a line, the same way
+     * {@link #parse(String, ParseOptions)} does.
+     * @param line first line of an entry
+     * @param doneWithFileComment whether the lines before are past the
+     *        leading file comment
+     * @param options parsing options
+     * @return key, or <code>null</code> if no entry starts on this line
+     */
+    /*default*/ static String parseKey(String line,
+            boolean doneWithFileComment, ParseOptions options) {
+        int equalPosition = findKeyValueSeparator(line);
+        boolean isRegularLine = isRegularLine(line);
+        boolean isCommentedLine = doneWithFileComment 
+                && PATTERN_IS_COMMENTED_LINE.matcher(line).matches();
+        if (equalPosition < 1 || !(isRegularLine || isCommentedLine)) {
+            return null;
+        }
+        String key = line.substring(
+                isCommentedLine ? 2 : 0, equalPosition).trim();
+        key = unescapeKey(key);
+        if (options.isConvertEncodedToUnicode()) {
+            key = PropertiesParser.convertEncodedToUnicode(key);
+        }
+        return key;
+    }
+
+    /**
+     * Checks whether a line is neither a comment nor a commented entry.
+     * @param line a line
+     * @return <code>true</code> if regular
+     */
+    /*default*/ static boolean isRegularLine(String line) {
+        return PATTERN_IS_REGULAR_LINE.matcher(line).matches();
+    }
+
     /**
      * Converts encoded &#92;uxxxx to unicode chars
      * and changes special saved chars to their original forms
@@ -160,6 +208,21 @@ public final class PropertiesParser {
      * @see java.util.Properties
      */
     public static String convertEncodedToUnicode(String str) {
+        return convertEncodedToUnicode(str, ParseOptions.DEFAULT);
+    }
+
+    /**
+     * Converts encoded &#92;uxxxx to unicode chars
+     * and changes special saved chars to their original forms, reporting
+     * malformed encodings to the options problem handler.
+     * @param str the string to convert
+     * @param options parsing options
+     * @return converted string
+     * @see java.util.Properties
+     */
+    public static String convertEncodedToUnicode(
+            String str, ParseOptions options) {
+        boolean malformed = false;
         char aChar;
         int len = str.length();
         StringBuffer outBuffer = new StringBuffer(len);
@@ -188,8 +251,7 @@ public final class PropertiesParser {
                             break;
                         default:
                             value = aChar;
-                            System.err.println(RBEPlugin.getString(
-                                 "error.init.badencoding") + str);
+                            malformed = true;
                         }
                     }
                     outBuffer.append((char) value);
@@ -211,6 +273,9 @@ public final class PropertiesParser {
                 outBuffer.append(aChar);
             }
         }
+        if (malformed && options.getProblemHandler() != null) {
+            options.getProblemHandler().badEncoding(str);
+        }
         return outBuffer.toString();
     }
     
@@ -22,7 +22,6 @@ import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleVisitorAdapter;
 import com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer;
 import com.essiembre.eclipse.rbe.model.utils.WordCountAnalyzer;
-import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 
 /**
  * Finds bundle entries having values similar (case insensitive) to the bundle 
@@ -37,12 +36,17 @@ public class SimilarValuesVisitor extends BundleVisitorAdapter {
 
     /** Proximity analyzer used to find similarities. */
     private ProximityAnalyzer analyzer = WordCountAnalyzer.getInstance();
+    /** Minimum proximity for values to be similar. */
+    private final double precision;
     
     /**
      * Constructor.
+     * @param precision minimum proximity for values to be similar,
+     *        between 0 and 1
      */
-    public SimilarValuesVisitor() {
+    public SimilarValuesVisitor(double precision) {
         super();
+        this.precision = precision;
     }
 
     /**
@@ -60,7 +64,7 @@ public class SimilarValuesVisitor extends BundleVisitorAdapter {
                 && analyzer.analyse(
                         entry.getValue().toLowerCase(), 
                         entryToMatch.getValue().toLowerCase())
-                        >= RBEPreferences.getReportSimilarValuesPrecision()) {
+                        >= precision) {
             similars.add(entry);
         }
     }
@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroupSnapshot;
+
+/**
+ * Searches keys, values and comments of a bundle group, directly in the
+ * strings held by the model.  Finding all matches of large groups is done
+ * in parallel, one task per locale, on a snapshot of the bundle group
+ * taken by the calling thread.  Replacements are applied in a single
+ * batch of modifications of the bundle group.
+ */
+public class BundleGroupSearcher {
+
+    /** Number of entries above which locales are searched in parallel. */
+    private static final int PARALLEL_THRESHOLD = 20000;
+
+    /** Threads searching locales in parallel, created when first needed. */
+    private static ExecutorService executor;
+
+    private final BundleGroup bundleGroup;
+
+    /**
+     * Constructor.
+     * @param bundleGroup bundle group to search
+     */
+    public BundleGroupSearcher(BundleGroup bundleGroup) {
+        super();
+        this.bundleGroup = bundleGroup;
+    }
+
+    /**
+     * Finds all matches of a query, sorted by key, field (keys, values
+     * then comments), locale and offset.
+     * @param query search query
+     * @param locales locales to search, in the order matches are sorted
+     * @return matches
+     */
+    public List<SearchMatch> findAll(
+            SearchQuery query, final List<Locale> locales) {
+        List<SearchMatch> matches = new ArrayList<>();
+        if (query.isInScope(SearchQuery.KEYS)) {
+            Matcher matcher = query.getPattern().matcher("");
+            for (String key : bundleGroup.getKeys()) {
+                addMatches(matches, matcher, key, null, SearchQuery.KEYS, key);
+            }
+        }
+        if (query.isInScope(SearchQuery.VALUES | SearchQuery.COMMENTS)) {
+            BundleGroupSnapshot snapshot = bundleGroup.snapshot();
+            List<LocaleSearch> searches = new ArrayList<>(locales.size());
+            for (Locale locale : locales) {
+                if (snapshot.getLocales().contains(locale)) {
+                    searches.add(new LocaleSearch(query, locale,
+                            snapshot.getBundleEntries(locale)));
+                }
+            }
+            int entryCount = searches.size() * bundleGroup.getKeys().size();
+            if (searches.size() > 1 && entryCount > PARALLEL_THRESHOLD) {
+                searchInParallel(searches, matches);
+            } else {
+                for (LocaleSearch search : searches) {
+                    matches.addAll(search.call());
+                }
+            }
+        }
+
+        final Map<Locale, Integer> localeIndexes = new HashMap<>();
+        for (int i = 0; i < locales.size(); i++) {
+            localeIndexes.put(locales.get(i), i);
+        }
+        Collections.sort(matches, new Comparator<SearchMatch>() {
+            public int compare(SearchMatch match1, SearchMatch match2) {
+                int result = match1.getKey().compareTo(match2.getKey());
+                if (result == 0) {
+                    result = match1.getField() - match2.getField();
+                }
+                if (result == 0 && match1.getField() != SearchQuery.KEYS) {
+                    result = localeIndexes.get(match1.getLocale())
+                            - localeIndexes.get(match2.getLocale());
+                }
+                if (result == 0) {
+                    result = match1.getOffset() - match2.getOffset();
+                }
+                return result;
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Finds the next match of a query in values, starting from a position
+     * in the value of a key, and going through locales then keys.
+     * @param query search query
+     * @param locales locales to search, in search order
+     * @param key key to start from, or <code>null</code> to start from the
+     *        first key (last key if searching backward), in which case
+     *        the locale index and offset are ignored
+     * @param localeIndex index of the locale to start from
+     * @param offset offset to start from in the value.  Forward, matches
+     *        starting at or after the offset are found; backward, matches
+     *        starting at or before the offset are
+     * @param forward whether to search forward
+     * @return a match, or <code>null</code> if there is no match up to the
+     *         end (start if searching backward) of the bundle group
+     */
+    public SearchMatch findNext(SearchQuery query, List<Locale> locales,
+            String key, int localeIndex, int offset, boolean forward) {
+        SortedSet<String> keys = bundleGroup.getKeys();
+        if (keys.isEmpty() || locales.isEmpty()) {
+            return null;
+        }
+        Matcher matcher = query.getPattern().matcher("");
+        String currentKey;
+        if (key == null) {
+            currentKey = forward ? keys.first() : keys.last();
+            localeIndex = forward ? 0 : locales.size() - 1;
+            offset = forward ? 0 : Integer.MAX_VALUE;
+        } else if (keys.contains(key)) {
+            currentKey = key;
+        } else {
+            // key removed meanwhile, start from where it would be
+            SortedSet<String> next = forward
+                    ? keys.tailSet(key) : keys.headSet(key);
+            if (next.isEmpty()) {
+                return null;
+            }
+            currentKey = forward ? next.first() : next.last();
+            localeIndex = forward ? 0 : locales.size() - 1;
+            offset = forward ? 0 : Integer.MAX_VALUE;
+        }
+        while (currentKey != null) {
+            int step = forward ? 1 : -1;
+            for (int i = localeIndex; i >= 0 && i < locales.size(); i += step) {
+                Locale locale = locales.get(i);
+                BundleEntry entry = bundleGroup.getBundleEntry(
+                        locale, currentKey);
+                if (entry != null) {
+                    int[] region = find(
+                            matcher, entry.getValue(), offset, forward);
+                    if (region != null) {
+                        return new SearchMatch(currentKey, locale,
+                                SearchQuery.VALUES, region[0], region[1]);
+                    }
+                }
+                offset = forward ? 0 : Integer.MAX_VALUE;
+            }
+            currentKey = forward ? bundleGroup.getNextKey(currentKey)
+                    : bundleGroup.getPreviousKey(currentKey);
+            localeIndex = forward ? 0 : locales.size() - 1;
+        }
+        return null;
+    }
+
+    /**
+     * Replaces a match of a query in a value or comment.
+     * @param match match to replace
+     * @param query query which found the match
+     * @param replacement replacement string, with <code>$n</code> group
+     *        references if <code>regexReplace</code>
+     * @param regexReplace whether the replacement refers to groups
+     * @return length of the replaced text, or -1 if the match is no longer
+     *         found where it was (or is a key match)
+     */
+    public int replace(SearchMatch match, SearchQuery query,
+            String replacement, boolean regexReplace) {
+        BundleEntry entry = bundleGroup.getBundleEntry(
+                match.getLocale(), match.getKey());
+        if (entry == null || match.getField() == SearchQuery.KEYS) {
+            return -1;
+        }
+        boolean value = match.getField() == SearchQuery.VALUES;
+        String text = value ? entry.getValue() : entry.getComment();
+        if (text == null) {
+            return -1;
+        }
+        String newText = query.replace(text, match.getOffset(),
+                match.getLength(), replacement, regexReplace);
+        if (newText == null) {
+            return -1;
+        }
+        bundleGroup.addBundleEntry(match.getLocale(), new BundleEntry(
+                entry.getKey(),
+                value ? newText : entry.getValue(),
+                value ? entry.getComment() : newText,
+                entry.isCommented()));
+        return newText.length() - text.length() + match.getLength();
+    }
+
+    /**
+     * Replaces all matches of a query in values and comments (keys are
+     * left as is), in one batch of modifications.
+     * @param query search query
+     * @param locales locales to replace matches in
+     * @param replacement replacement string, with <code>$n</code> group
+     *        references if <code>regexReplace</code>
+     * @param regexReplace whether the replacement refers to groups
+     * @return number of modified entries
+     */
+    public int replaceAll(SearchQuery query, List<Locale> locales,
+            String replacement, boolean regexReplace) {
+        List<BundleEntry> newEntries = new ArrayList<>();
+        List<Locale> newEntryLocales = new ArrayList<>();
+        for (Locale locale : locales) {
+            Bundle bundle = bundleGroup.getBundle(locale);
+            if (bundle == null) {
+                continue;
+            }
+            for (Iterator<BundleEntry> iter = bundle.iterator();
+                    iter.hasNext();) {
+                BundleEntry entry = iter.next();
+                String value = entry.getValue();
+                String comment = entry.getComment();
+                if (query.isInScope(SearchQuery.VALUES)) {
+                    value = query.replaceAll(value, replacement, regexReplace);
+                }
+                if (query.isInScope(SearchQuery.COMMENTS) && comment != null) {
+                    comment = query.replaceAll(
+                            comment, replacement, regexReplace);
+                }
+                if (value != entry.getValue() || comment != entry.getComment()) {
+                    newEntries.add(new BundleEntry(entry.getKey(), value,
+                            comment, entry.isCommented()));
+                    newEntryLocales.add(locale);
+                }
+            }
+        }
+        // entries are only added once the bundles are no longer iterated
+        bundleGroup.beginBatch();
+        try {
+            for (int i = 0; i < newEntries.size(); i++) {
+                bundleGroup.addBundleEntry(
+                        newEntryLocales.get(i), newEntries.get(i));
+            }
+        } finally {
+            bundleGroup.endBatch();
+        }
+        return newEntries.size();
+    }
+
+    /**
+     * Finds a match in a string.
+     * @param matcher matcher of the search pattern
+     * @param text string to search
+     * @param offset offset to search from
+     * @param forward whether to search forward
+     * @return offset and length of the match, or <code>null</code>
+     */
+    private static int[] find(
+            Matcher matcher, String text, int offset, boolean forward) {
+        if (forward ? offset > text.length() : offset < 0) {
+            return null;
+        }
+        matcher.reset(text);
+        if (forward) {
+            return matcher.find(Math.max(offset, 0)) ? new int[] {
+                    matcher.start(), matcher.end() - matcher.start() } : null;
+        }
+        int[] region = null;
+        while (matcher.find() && matcher.start() <= offset) {
+            region = new int[] {
+                    matcher.start(), matcher.end() - matcher.start() };
+        }
+        return region;
+    }
+
+    /**
+     * Adds all matches found in a string.
+     * @param matches where to add matches
+     * @param matcher matcher of the search pattern
+     * @param key key of the string
+     * @param locale locale of the string
+     * @param field field of the string
+     * @param text string to search
+     */
+    private static void addMatches(List<SearchMatch> matches, Matcher matcher,
+            String key, Locale locale, int field, String text) {
+        matcher.reset(text);
+        while (matcher.find()) {
+            matches.add(new SearchMatch(key, locale, field,
+                    matcher.start(), matcher.end() - matcher.start()));
+        }
+    }
+
+    /**
+     * Runs locale searches in parallel, waiting for them to complete.
+     * @param searches locale searches
+     * @param matches where to add the matches found
+     */
+    private static void searchInParallel(
+            List<LocaleSearch> searches, List<SearchMatch> matches) {
+        ExecutorService service = getExecutor();
+        List<Future<List<SearchMatch>>> futures = new ArrayList<>();
+        for (LocaleSearch search : searches) {
+            futures.add(service.submit(search));
+        }
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                matches.addAll(futures.get(i).get());
+            } catch (InterruptedException e) {
+                // keep waiting threads from blocking, search here instead
+                interrupted = true;
+                futures.get(i).cancel(false);
+                matches.addAll(searches.get(i).call());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw (Error) cause;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the threads searching locales in parallel.
+     * @return executor service
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            BundleGroupSearcher.class.getSimpleName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the threads searching locales in parallel, if any.  To be
+     * invoked when the plugin stops.  Threads are created again if
+     * needed afterwards.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Search of the values and comments of one bundle, as found in a
+     * bundle group snapshot.
+     */
+    private static class LocaleSearch implements Callable<List<SearchMatch>> {
+        private final SearchQuery query;
+        private final Locale locale;
+        private final Map<String, BundleEntry> entries;
+        private LocaleSearch(SearchQuery query, Locale locale,
+                Map<String, BundleEntry> entries) {
+            this.query = query;
+            this.locale = locale;
+            this.entries = entries;
+        }
+        public List<SearchMatch> call() {
+            List<SearchMatch> matches = new ArrayList<>();
+            Matcher matcher = query.getPattern().matcher("");
+            boolean values = query.isInScope(SearchQuery.VALUES);
+            boolean comments = query.isInScope(SearchQuery.COMMENTS);
+            for (BundleEntry entry : entries.values()) {
+                if (values) {
+                    addMatches(matches, matcher, entry.getKey(), locale,
+                            SearchQuery.VALUES, entry.getValue());
+                }
+                if (comments && entry.getComment() != null) {
+                    addMatches(matches, matcher, entry.getKey(), locale,
+                            SearchQuery.COMMENTS, entry.getComment());
+                }
+            }
+            return matches;
+        }
+    }
+}
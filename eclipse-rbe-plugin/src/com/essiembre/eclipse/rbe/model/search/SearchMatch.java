@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.search;
+
+import java.util.Locale;
+
+/**
+ * A match of a search query in a key, or in the value or comment of a
+ * bundle entry.
+ */
+public final class SearchMatch {
+
+    private final String key;
+    private final Locale locale;
+    private final int field;
+    private final int offset;
+    private final int length;
+
+    /**
+     * Constructor.
+     * @param key key of the matching entry, or matching key
+     * @param locale locale of the matching entry (<code>null</code> for
+     *        the default locale, and for key matches)
+     * @param field matching field: {@link SearchQuery#KEYS},
+     *        {@link SearchQuery#VALUES} or {@link SearchQuery#COMMENTS}
+     * @param offset match offset in the field
+     * @param length match length
+     */
+    public SearchMatch(
+            String key, Locale locale, int field, int offset, int length) {
+        super();
+        this.key = key;
+        this.locale = locale;
+        this.field = field;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Gets the key of the matching entry.
+     * @return key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the locale of the matching entry.
+     * @return locale
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * Gets the matching field.
+     * @return {@link SearchQuery#KEYS}, {@link SearchQuery#VALUES} or
+     *         {@link SearchQuery#COMMENTS}
+     */
+    public int getField() {
+        return field;
+    }
+
+    /**
+     * Gets the match offset in the field.
+     * @return offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the match length.
+     * @return length
+     */
+    public int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.search;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * What to search for in a bundle group, and where.  The search string is
+ * compiled to a pattern once, when the query is created, and the query
+ * can then be matched against any number of strings, from any thread.
+ */
+public class SearchQuery {
+
+    /** Search in keys. */
+    public static final int KEYS = 1;
+    /** Search in values. */
+    public static final int VALUES = 2;
+    /** Search in comments. */
+    public static final int COMMENTS = 4;
+
+    private final String findString;
+    private final Pattern pattern;
+    private final boolean caseSensitive;
+    private final boolean wholeWord;
+    private final boolean regex;
+    private final int scope;
+
+    /**
+     * Constructor.
+     * @param findString string or regular expression to find
+     * @param caseSensitive whether case matters
+     * @param wholeWord whether to only match whole words (ignored for
+     *        regular expressions)
+     * @param regex whether the find string is a regular expression
+     * @param scope where to search: a combination of {@link #KEYS},
+     *        {@link #VALUES} and {@link #COMMENTS}
+     * @throws PatternSyntaxException if the regular expression is invalid
+     */
+    public SearchQuery(String findString, boolean caseSensitive,
+            boolean wholeWord, boolean regex, int scope) {
+        super();
+        this.findString = findString;
+        this.caseSensitive = caseSensitive;
+        this.wholeWord = wholeWord;
+        this.regex = regex;
+        this.scope = scope;
+        String expression;
+        if (regex) {
+            expression = findString;
+        } else {
+            expression = Pattern.quote(findString);
+            if (wholeWord && findString.length() > 0) {
+                // like the text editors, only word ends get boundaries
+                if (isWordChar(findString.charAt(0))) {
+                    expression = "\\b" + expression;
+                }
+                if (isWordChar(findString.charAt(findString.length() - 1))) {
+                    expression = expression + "\\b";
+                }
+            }
+        }
+        int flags = regex ? Pattern.MULTILINE : 0;
+        if (!caseSensitive) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        this.pattern = Pattern.compile(expression, flags);
+    }
+
+    /**
+     * Gets the string to find.
+     * @return find string
+     */
+    public String getFindString() {
+        return findString;
+    }
+
+    /**
+     * Gets whether case matters.
+     * @return <code>true</code> if case sensitive
+     */
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    /**
+     * Gets whether only whole words are matched.
+     * @return <code>true</code> if matching whole words
+     */
+    public boolean isWholeWord() {
+        return wholeWord;
+    }
+
+    /**
+     * Gets whether the find string is a regular expression.
+     * @return <code>true</code> if a regular expression
+     */
+    public boolean isRegex() {
+        return regex;
+    }
+
+    /**
+     * Gets the compiled search pattern.
+     * @return pattern
+     */
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Checks whether this query searches in the given fields.
+     * @param fields {@link #KEYS}, {@link #VALUES} or {@link #COMMENTS}
+     * @return <code>true</code> if searched
+     */
+    public boolean isInScope(int fields) {
+        return (scope & fields) != 0;
+    }
+
+    /**
+     * Replaces the match found at a given offset of a string.
+     * @param text string containing the match
+     * @param offset match offset
+     * @param length match length
+     * @param replacement replacement string, with <code>$n</code> group
+     *        references if <code>regexReplace</code>
+     * @param regexReplace whether the replacement refers to groups
+     * @return the string with the match replaced, or <code>null</code> if
+     *         the match is no longer found in the string
+     */
+    public String replace(String text, int offset, int length,
+            String replacement, boolean regexReplace) {
+        Matcher matcher = pattern.matcher(text);
+        if (offset > text.length() || !matcher.find(offset)
+                || matcher.start() != offset || matcher.end() != offset + length) {
+            return null;
+        }
+        StringBuffer buf = new StringBuffer(text.length());
+        matcher.appendReplacement(buf, getReplacement(
+                replacement, regexReplace));
+        matcher.appendTail(buf);
+        return buf.toString();
+    }
+
+    /**
+     * Replaces every match in a string.
+     * @param text string
+     * @param replacement replacement string, with <code>$n</code> group
+     *        references if <code>regexReplace</code>
+     * @param regexReplace whether the replacement refers to groups
+     * @return the string with matches replaced (the same string if there
+     *         is no match)
+     */
+    public String replaceAll(
+            String text, String replacement, boolean regexReplace) {
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find()) {
+            return text;
+        }
+        return matcher.replaceAll(getReplacement(replacement, regexReplace));
+    }
+
+    /**
+     * Gets a replacement to give to a matcher.
+     * @param replacement replacement string
+     * @param regexReplace whether the replacement refers to groups
+     * @return replacement for a matcher
+     */
+    private String getReplacement(String replacement, boolean regexReplace) {
+        return regex && regexReplace
+                ? replacement : Matcher.quoteReplacement(replacement);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
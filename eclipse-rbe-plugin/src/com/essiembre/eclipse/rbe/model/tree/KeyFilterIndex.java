@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Case insensitive substring index of the keys shown in a key tree.
+ * Keys are stored lower-cased once, and a trigram inverted index narrows
+ * down the keys to check for a given filter.  The index is maintained
+ * as keys are added and removed.  When a filter extends the previous one,
+ * only the previous matches are checked again.
+ */
+public class KeyFilterIndex {
+
+    /** Empty match. */
+    private static final int[] NO_SLOTS = new int[0];
+
+    /** Keys, by slot (<code>null</code> for removed keys). */
+    private final List<String> keys = new ArrayList<>();
+    /** Lower-cased keys, by slot. */
+    private final List<String> lowerKeys = new ArrayList<>();
+    /** Slot of each indexed key. */
+    private final Map<String, Integer> slots = new HashMap<>();
+    /** Ascending slots of keys containing a trigram (key=packed trigram). */
+    private final Map<Long, Postings> postings = new HashMap<>();
+    /** Number of removed keys still occupying a slot. */
+    private int removedCount;
+    /** Incremented each time a key is added. */
+    private int modCount;
+
+    /** Last filter matched. */
+    private String lastFilter;
+    /** Slots matching the last filter. */
+    private int[] lastMatches;
+    /** Value of <code>modCount</code> when last filter was matched. */
+    private int lastModCount;
+
+    /**
+     * Adds a key to this index.
+     * @param key key to add
+     */
+    public void add(String key) {
+        if (slots.containsKey(key)) {
+            return;
+        }
+        int slot = keys.size();
+        String lowerKey = key.toLowerCase();
+        keys.add(key);
+        lowerKeys.add(lowerKey);
+        slots.put(key, slot);
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= lowerKey.length(); i++) {
+            Long trigram = trigram(lowerKey, i);
+            if (trigrams.add(trigram)) {
+                Postings slotList = postings.get(trigram);
+                if (slotList == null) {
+                    slotList = new Postings();
+                    postings.put(trigram, slotList);
+                }
+                slotList.add(slot);
+            }
+        }
+        modCount++;
+    }
+
+    /**
+     * Removes a key from this index.
+     * @param key key to remove
+     */
+    public void remove(String key) {
+        Integer slot = slots.remove(key);
+        if (slot == null) {
+            return;
+        }
+        keys.set(slot, null);
+        lowerKeys.set(slot, null);
+        removedCount++;
+        // Postings are never updated on removal, they get rebuilt instead
+        if (removedCount > 1000 && removedCount > slots.size()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Removes all keys from this index.
+     */
+    public void clear() {
+        keys.clear();
+        lowerKeys.clear();
+        slots.clear();
+        postings.clear();
+        removedCount = 0;
+        modCount++;
+        lastFilter = null;
+        lastMatches = null;
+    }
+
+    /**
+     * Checks whether a key is in this index.
+     * @param key key to check
+     * @return <code>true</code> if indexed
+     */
+    public boolean contains(String key) {
+        return slots.containsKey(key);
+    }
+
+    /**
+     * Gets the number of keys in this index.
+     * @return number of keys
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Gets all keys in this index.
+     * @return keys, in no particular order
+     */
+    public List<String> getKeys() {
+        List<String> allKeys = new ArrayList<>(slots.size());
+        for (String key : keys) {
+            if (key != null) {
+                allKeys.add(key);
+            }
+        }
+        return allKeys;
+    }
+
+    /**
+     * Gets all keys containing the given filter, regardless of case.
+     * @param filter filter string
+     * @return matching keys, in no particular order
+     */
+    public List<String> match(String filter) {
+        String lowerFilter = filter.toLowerCase();
+        int[] matches = null;
+        if (lastFilter != null && lastModCount == modCount
+                && lowerFilter.contains(lastFilter)) {
+            // extended filter: only previous matches can still match
+            matches = verify(lastMatches, lastMatches.length, lowerFilter);
+        } else if (lowerFilter.length() < 3) {
+            matches = scan(lowerFilter);
+        } else {
+            matches = lookup(lowerFilter);
+        }
+        lastFilter = lowerFilter;
+        lastMatches = matches;
+        lastModCount = modCount;
+
+        List<String> matchingKeys = new ArrayList<>(matches.length);
+        for (int slot : matches) {
+            matchingKeys.add(keys.get(slot));
+        }
+        return matchingKeys;
+    }
+
+    /**
+     * Checks every key against a filter.
+     * @param lowerFilter lower-cased filter
+     * @return matching slots
+     */
+    private int[] scan(String lowerFilter) {
+        int[] matches = new int[slots.size()];
+        int count = 0;
+        for (int slot = 0; slot < lowerKeys.size(); slot++) {
+            String lowerKey = lowerKeys.get(slot);
+            if (lowerKey != null && lowerKey.contains(lowerFilter)) {
+                matches[count++] = slot;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Checks keys sharing all the trigrams of a filter against it.
+     * @param lowerFilter lower-cased filter, at least 3 characters long
+     * @return matching slots
+     */
+    private int[] lookup(String lowerFilter) {
+        // start from the rarest trigram
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= lowerFilter.length(); i++) {
+            Postings slotList = postings.get(trigram(lowerFilter, i));
+            if (slotList == null) {
+                return NO_SLOTS;
+            }
+            lists.add(slotList);
+        }
+        Postings rarest = lists.get(0);
+        for (Postings slotList : lists) {
+            if (slotList.size < rarest.size) {
+                rarest = slotList;
+            }
+        }
+        int[] candidates = rarest.slots;
+        int count = rarest.size;
+        for (Postings slotList : lists) {
+            if (slotList != rarest) {
+                candidates = slotList.retain(candidates, count);
+                count = candidates.length;
+            }
+        }
+        return verify(candidates, count, lowerFilter);
+    }
+
+    /**
+     * Keeps the candidate slots whose key contains the filter.
+     * @param candidates candidate slots
+     * @param count number of candidates
+     * @param lowerFilter lower-cased filter
+     * @return matching slots
+     */
+    private int[] verify(int[] candidates, int count, String lowerFilter) {
+        int[] matches = new int[count];
+        int matchCount = 0;
+        for (int i = 0; i < count; i++) {
+            String lowerKey = lowerKeys.get(candidates[i]);
+            if (lowerKey != null && lowerKey.contains(lowerFilter)) {
+                matches[matchCount++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(matches, matchCount);
+    }
+
+    /**
+     * Re-indexes all keys, dropping removed ones.
+     */
+    private void rebuild() {
+        List<String> liveKeys = getKeys();
+        clear();
+        for (String key : liveKeys) {
+            add(key);
+        }
+    }
+
+    /**
+     * Packs three characters of a string in a long.
+     * @param text string
+     * @param index index of first character
+     * @return trigram
+     */
+    private static Long trigram(String text, int index) {
+        return ((long) text.charAt(index) << 32)
+                | ((long) text.charAt(index + 1) << 16)
+                | text.charAt(index + 2);
+    }
+
+    /**
+     * Growable, ascending list of slots.
+     */
+    private static class Postings {
+        private int[] slots = new int[4];
+        private int size;
+
+        private void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        /**
+         * Keeps the given ascending slots also found in this list.
+         * @param others ascending slots
+         * @param count number of slots
+         * @return slots found in both
+         */
+        private int[] retain(int[] others, int count) {
+            int[] common = new int[Math.min(count, size)];
+            int commonCount = 0;
+            int i = 0;
+            int j = 0;
+            while (i < count && j < size) {
+                if (others[i] < slots[j]) {
+                    i++;
+                } else if (others[i] > slots[j]) {
+                    j++;
+                } else {
+                    common[commonCount++] = others[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(common, commonCount);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches keys against a filter string, according to a filter mode.
+ * Each match is given a score used to rank results: the lower, the
+ * better.
+ */
+public abstract class KeyMatcher {
+
+    /** Case insensitive "contains" matching. */
+    public static final int MODE_CONTAINS = 0;
+    /** Case insensitive regular expression matching. */
+    public static final int MODE_REGEX = 1;
+    /** Matching of key segment initials (e.g. "e.l.t" or "elt" matching
+     *  "error.login.timeout", or "eLT" matching "errorLoginTimeout"). */
+    public static final int MODE_INITIALS = 2;
+    /** Typo tolerant matching. */
+    public static final int MODE_FUZZY = 3;
+
+    /** Score of keys not matching. */
+    public static final int NO_MATCH = -1;
+
+    /**
+     * Creates a matcher.
+     * @param mode one of the MODE_??? constants
+     * @param filter filter string
+     * @return key matcher
+     * @throws java.util.regex.PatternSyntaxException if mode is
+     *         <code>MODE_REGEX</code> and filter is not a valid expression
+     */
+    public static KeyMatcher create(int mode, String filter) {
+        switch (mode) {
+        case MODE_REGEX:
+            return new RegexMatcher(filter);
+        case MODE_INITIALS:
+            return new InitialsMatcher(filter);
+        case MODE_FUZZY:
+            return new FuzzyMatcher(filter);
+        default:
+            return new ContainsMatcher(filter);
+        }
+    }
+
+    /**
+     * Scores a key against the filter.
+     * @param key key to match
+     * @return score (lower is better), or <code>NO_MATCH</code>
+     */
+    public abstract int score(String key);
+
+    /**
+     * Splits a string in words, on non letter or digit characters and
+     * on lower case to upper case transitions.
+     * @param text text to split
+     * @return lower-cased words
+     */
+    /*default*/ static List<String> splitWords(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                if (start != -1) {
+                    words.add(text.substring(start, i).toLowerCase());
+                    start = -1;
+                }
+            } else if (start == -1) {
+                start = i;
+            } else if (Character.isUpperCase(c)
+                    && !Character.isUpperCase(text.charAt(i - 1))) {
+                words.add(text.substring(start, i).toLowerCase());
+                start = i;
+            }
+        }
+        if (start != -1) {
+            words.add(text.substring(start).toLowerCase());
+        }
+        return words;
+    }
+
+    /**
+     * Case insensitive "contains" matcher.  Earlier matches rank better.
+     */
+    private static class ContainsMatcher extends KeyMatcher {
+        private final String lowerFilter;
+        private ContainsMatcher(String filter) {
+            lowerFilter = filter.toLowerCase();
+        }
+        @Override
+        public int score(String key) {
+            return key.toLowerCase().indexOf(lowerFilter);
+        }
+    }
+
+    /**
+     * Case insensitive regular expression matcher.  Earlier matches rank
+     * better.
+     */
+    private static class RegexMatcher extends KeyMatcher {
+        private final Pattern pattern;
+        private RegexMatcher(String filter) {
+            pattern = Pattern.compile(filter,
+                    Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+        @Override
+        public int score(String key) {
+            Matcher matcher = pattern.matcher(key);
+            return matcher.find() ? matcher.start() : NO_MATCH;
+        }
+    }
+
+    /**
+     * Matches filter parts against the beginning of key words, in order.
+     * A filter made of lower case letters or digits only has one part per
+     * character.  Keys skipping fewer words rank better.
+     */
+    private static class InitialsMatcher extends KeyMatcher {
+        private final String[] parts;
+        private InitialsMatcher(String filter) {
+            List<String> filterParts = new ArrayList<>();
+            StringBuilder part = new StringBuilder();
+            for (int i = 0; i < filter.length(); i++) {
+                char c = filter.charAt(i);
+                if (!Character.isLetterOrDigit(c) || Character.isUpperCase(c)) {
+                    if (part.length() > 0) {
+                        filterParts.add(part.toString());
+                        part.setLength(0);
+                    }
+                }
+                if (Character.isLetterOrDigit(c)) {
+                    part.append(Character.toLowerCase(c));
+                }
+            }
+            if (part.length() > 0) {
+                filterParts.add(part.toString());
+            }
+            if (filterParts.size() == 1 && filter.equals(filterParts.get(0))) {
+                String word = filterParts.get(0);
+                filterParts.clear();
+                for (int i = 0; i < word.length(); i++) {
+                    filterParts.add(word.substring(i, i + 1));
+                }
+            }
+            parts = filterParts.toArray(new String[filterParts.size()]);
+        }
+        @Override
+        public int score(String key) {
+            if (parts.length == 0) {
+                return 0;
+            }
+            List<String> words = splitWords(key);
+            int part = 0;
+            int skipped = 0;
+            for (String word : words) {
+                if (word.startsWith(parts[part])) {
+                    if (++part == parts.length) {
+                        return skipped;
+                    }
+                } else {
+                    skipped++;
+                }
+            }
+            return NO_MATCH;
+        }
+    }
+
+    /**
+     * Matches keys containing the filter with a few typos (characters
+     * added, removed or replaced).  Keys needing fewer edits rank better.
+     * Filters shorter than <code>MIN_FUZZY_LENGTH</code> must match
+     * exactly, as a single typo would let them match almost any key.
+     * Not thread safe: working arrays are reused between keys.
+     */
+    private static class FuzzyMatcher extends KeyMatcher {
+        /** Minimum filter length for typos to be allowed. */
+        private static final int MIN_FUZZY_LENGTH = 4;
+        private final String lowerFilter;
+        private final int maxEdits;
+        private final int[] previous;
+        private final int[] current;
+        private FuzzyMatcher(String filter) {
+            lowerFilter = filter.toLowerCase();
+            maxEdits = lowerFilter.length() < MIN_FUZZY_LENGTH
+                    ? 0 : lowerFilter.length() / MIN_FUZZY_LENGTH;
+            previous = new int[lowerFilter.length() + 1];
+            current = new int[lowerFilter.length() + 1];
+        }
+        @Override
+        public int score(String key) {
+            // Edit distance of filter to the best matching key substring
+            String lowerKey = key.toLowerCase();
+            int length = lowerFilter.length();
+            for (int i = 0; i <= length; i++) {
+                previous[i] = i;
+            }
+            int best = previous[length];
+            for (int j = 0; j < lowerKey.length(); j++) {
+                char c = lowerKey.charAt(j);
+                current[0] = 0;
+                for (int i = 1; i <= length; i++) {
+                    int cost = lowerFilter.charAt(i - 1) == c ? 0 : 1;
+                    current[i] = Math.min(previous[i - 1] + cost,
+                            Math.min(previous[i], current[i - 1]) + 1);
+                }
+                best = Math.min(best, current[length]);
+                System.arraycopy(current, 0, previous, 0, length + 1);
+            }
+            return best <= maxEdits ? best : NO_MATCH;
+        }
+    }
+}
@@ -15,19 +15,23 @@
  */
 package com.essiembre.eclipse.rbe.model.tree;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
-import org.eclipse.jface.viewers.ViewerFilter;
-
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.Model;
 import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleChange;
 import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
@@ -39,10 +43,21 @@ import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
  */
 public class KeyTree extends Model implements IKeyTreeVisitable {
 
+    /** Fraction of the keys that may change while a layout is set aside
+     *  before the layout is dropped, as rebuilding it is then cheaper. */
+    private static final double MAX_CHANGED_RATIO = 0.25d;
+
     /** Caching of key tree items (key=ID; value=KeyTreeItem). **/
-    private final Map<String, KeyTreeItem> keyItemsCache = new TreeMap<String, KeyTreeItem>();
+    private TreeMap<String, KeyTreeItem> keyItemsCache = new TreeMap<String, KeyTreeItem>();
     /** Items found at root level. */
-    private final Set<KeyTreeItem> rootKeyItems = new TreeSet<KeyTreeItem>();
+    private Set<KeyTreeItem> rootKeyItems = new TreeSet<KeyTreeItem>();
+    /** Root items by index, created on demand (<code>null</code> when
+     *  root items changed). */
+    private KeyTreeItem[] rootKeyItemsByIndex;
+    /** Index of the keys in this tree, used for filtering. */
+    private KeyFilterIndex filterIndex = new KeyFilterIndex();
+    /** Layouts set aside when switching updater (key=layout id). */
+    private final Map<String, Layout> inactiveLayouts = new HashMap<>();
     /** Updater responsible for tree changes. */
     private KeyTreeUpdater updater;
     /** Bundle group used to build the tree. */
@@ -61,20 +76,7 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
         this.updater = updater;
         
         // Set listeners
-        bundleGroup.addListener(new IDeltaListener() {
-            public void add(DeltaEvent event) {
-                initBundle((Bundle) event.receiver());
-            }
-            public void remove(DeltaEvent event) {
-                // do nothing
-            }
-            public void modify(DeltaEvent event) {
-                // do nothing
-            }
-            public void select(DeltaEvent event) {
-                // do nothing
-            }
-        });
+        bundleGroup.addListener(bundleGroupListener);
         for (Iterator<Bundle> iter = bundleGroup.iterator(); iter.hasNext();) {
             initBundle(iter.next());
         }
@@ -87,30 +89,83 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      * @param bundle the bundle to initialize
      */
     protected void initBundle(final Bundle bundle) {
-        bundle.addListener(new IDeltaListener() {
-            public void add(DeltaEvent event) {
-                //TODO figure out how to filter event that do not add keys.
-                //Probably not necessary with plugin rewrite.
-                String key = ((BundleEntry) event.receiver()).getKey();
-                addKey(key);
-            }
-            public void remove(DeltaEvent event) {
-                String key = ((BundleEntry) event.receiver()).getKey();
-                Collection<BundleEntry> entries = 
-                        bundleGroup.getBundleEntries(key);
-                if (entries.size() == 0) {
-                    removeKey(((BundleEntry) event.receiver()).getKey());
+        bundle.addListener(bundleListener);
+    }
+
+    /**
+     * Stops listening to the bundle group, which may outlive this tree.
+     */
+    public void dispose() {
+        bundleGroup.removeListener(bundleGroupListener);
+        for (Iterator<Bundle> iter = bundleGroup.iterator(); iter.hasNext();) {
+            iter.next().removeListener(bundleListener);
+        }
+    }
+
+    /** Listens to new bundles in the bundle group. */
+    private final IDeltaListener bundleGroupListener = new IDeltaListener() {
+        public void add(DeltaEvent event) {
+            initBundle((Bundle) event.receiver());
+            // new keys, and keys now missing a value
+            reconcile();
+        }
+        public void remove(DeltaEvent event) {
+            // do nothing
+        }
+        public void modify(DeltaEvent event) {
+            // do nothing
+        }
+        public void select(DeltaEvent event) {
+            // do nothing
+        }
+    };
+
+    /** Listens to entry changes in each bundle. */
+    private final IDeltaListener bundleListener = new IDeltaListener() {
+        public void add(DeltaEvent event) {
+            //TODO figure out how to filter event that do not add keys.
+            //Probably not necessary with plugin rewrite.
+            updateKey(((BundleEntry) event.receiver()).getKey());
+        }
+        public void remove(DeltaEvent event) {
+            updateKey(((BundleEntry) event.receiver()).getKey());
+        }
+        public void modify(DeltaEvent event) {
+            //TODO figure out how to filter event that do not modify keys.
+            //Probably not necessary with plugin rewrite.
+            if (event.receiver() instanceof BundleChange) {
+                // only the keys changed when a bundle was reloaded
+                for (String key
+                        : ((BundleChange) event.receiver()).getKeys()) {
+                    updateKey(key);
                 }
+            } else {
+                updateKey(((BundleEntry) event.receiver()).getKey());
             }
-            public void modify(DeltaEvent event) {
-                //TODO figure out how to filter event that do not modify keys.
-                //Probably not necessary with plugin rewrite.
-                String key = ((BundleEntry) event.receiver()).getKey();
-                modifyKey(key);
-            }
-            public void select(DeltaEvent event) {
-            }
-        });
+        }
+        public void select(DeltaEvent event) {
+        }
+    };
+
+    /**
+     * Adds, removes or modifies a key on this tree after its bundle entries
+     * changed, depending on whether the key still exists and is still
+     * accepted by the updater (e.g. a key completed while only incomplete
+     * keys are shown drops out of the tree).
+     * @param key changed key
+     */
+    private void updateKey(String key) {
+        addInactiveLayoutChange(key);
+        boolean show = bundleGroup.isKey(key)
+                && updater.isKeyAccepted(this, key);
+        boolean shown = filterIndex.contains(key);
+        if (show && !shown) {
+            addKey(key);
+        } else if (!show && shown) {
+            removeKey(key);
+        } else if (show) {
+            modifyKey(key);
+        }
     }
 
     /**
@@ -122,6 +177,70 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
         return keyItemsCache.get(key);
     }
     
+    /**
+     * Gets the key tree items whose id starts with the given prefix.
+     * @param prefix id prefix
+     * @return matching items, sorted by id
+     */
+    public Collection<KeyTreeItem> getKeyTreeItems(String prefix) {
+        String end = getPrefixEnd(prefix);
+        if (end == null) {
+            return keyItemsCache.tailMap(prefix, true).values();
+        }
+        return keyItemsCache.subMap(prefix, true, end, false).values();
+    }
+
+    /**
+     * Gets the number of key tree items whose id starts with the given
+     * prefix.
+     * @param prefix id prefix
+     * @return number of matching items
+     */
+    public int getKeyTreeItemCount(String prefix) {
+        return getKeyTreeItems(prefix).size();
+    }
+
+    /**
+     * Gets all items under the given item, from all levels.  Since a
+     * child id always starts with its parent id, they are looked up in
+     * the sorted item cache rather than by walking the children.
+     * @param item parent item
+     * @return nested items, sorted by id
+     */
+    public List<KeyTreeItem> getNestedKeyTreeItems(KeyTreeItem item) {
+        List<KeyTreeItem> nestedItems = new ArrayList<>();
+        if (item.isLeaf()) {
+            return nestedItems;
+        }
+        for (KeyTreeItem candidate : getKeyTreeItems(item.getId())) {
+            // skip item itself and items sharing a prefix but not a parent
+            Object parent = candidate.getParent();
+            while (parent instanceof KeyTreeItem && parent != item) {
+                parent = ((KeyTreeItem) parent).getParent();
+            }
+            if (parent == item) {
+                nestedItems.add(candidate);
+            }
+        }
+        return nestedItems;
+    }
+
+    /**
+     * Gets the smallest string greater than all strings starting with the
+     * given prefix.
+     * @param prefix a prefix
+     * @return exclusive upper bound, or <code>null</code> if none
+     */
+    private static String getPrefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char c = prefix.charAt(i);
+            if (c != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (c + 1);
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the currently selected key.
      * 
@@ -144,7 +263,44 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      * @return a collection of <code>KeyTreeItem</code> objects.
      */
     public Set<KeyTreeItem> getRootKeyItems() {
-        return rootKeyItems;
+        return Collections.unmodifiableSet(rootKeyItems);
+    }
+    /**
+     * Adds an item to the root level of this tree.
+     * @param item item to add
+     */
+    public void addRootKeyItem(KeyTreeItem item) {
+        if (rootKeyItems.add(item)) {
+            rootKeyItemsByIndex = null;
+        }
+    }
+    /**
+     * Removes an item from the root level of this tree.
+     * @param item item to remove
+     */
+    public void removeRootKeyItem(KeyTreeItem item) {
+        if (rootKeyItems.remove(item)) {
+            rootKeyItemsByIndex = null;
+        }
+    }
+    /**
+     * Gets the number of items at the root level of this tree.
+     * @return number of root items
+     */
+    public int getRootKeyItemCount() {
+        return rootKeyItems.size();
+    }
+    /**
+     * Gets the root item found at the given index of the sorted root items.
+     * @param index root item index
+     * @return root item
+     */
+    public KeyTreeItem getRootKeyItem(int index) {
+        if (rootKeyItemsByIndex == null) {
+            rootKeyItemsByIndex = rootKeyItems.toArray(
+                    new KeyTreeItem[rootKeyItems.size()]);
+        }
+        return rootKeyItemsByIndex[index];
     }
     
     /**
@@ -153,6 +309,8 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      */
     public void addKey(String key) {
         updater.addKey(this, key);
+        indexKey(key);
+        addInactiveLayoutChange(key);
         fireAdd(keyItemsCache.get(key));
     }
     /**
@@ -162,6 +320,8 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     public void removeKey(String key) {
         Object item = keyItemsCache.get(key);
         updater.removeKey(this, key);
+        filterIndex.remove(key);
+        addInactiveLayoutChange(key);
         fireRemove(item);
     }
     /**
@@ -169,8 +329,11 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      * @param key key to modify
      */
     public void modifyKey(String key) {
+        addInactiveLayoutChange(key);
         Object item = keyItemsCache.get(key);
-        fireModify(item);
+        if (item != null) {
+            fireModify(item);
+        }
     }
     /**
      * Marks a key as selected on this tree.
@@ -187,19 +350,11 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     }
     public void selectNextKey() {
         String currentKey = getSelectedKey();
-        boolean takeNext = false;
-        String nextKey = null;
-        for (String key : keyItemsCache.keySet()) {
-            if (takeNext) {
-                nextKey = key;
-                break;
-            }
-            if (key.equals(currentKey))
-                takeNext = true;
+        if (currentKey != null && keyItemsCache.containsKey(currentKey)) {
+            String nextKey = keyItemsCache.higherKey(currentKey);
+            if (nextKey != null)
+                selectKey(nextKey);
         }
-        
-        if (nextKey != null)
-            selectKey(nextKey);            
     }
     /**
      * Gets the key tree updater.
@@ -209,15 +364,104 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
         return updater;
     }
     /**
-     * Sets the key tree updater. Doing so will automatically refresh the tree,
-     * which means, recreating it entirely.
+     * Sets the key tree updater. Doing so will automatically refresh the tree.
+     * The current layout is set aside, and if the new updater's layout was
+     * set aside before, it is restored and brought up to date instead of
+     * being recreated entirely.  Leaf items are shared between layouts.
      * @param updater key tree updater
      */
     public void setUpdater(KeyTreeUpdater updater) {
+        String oldLayoutId = this.updater.getLayoutId();
+        String newLayoutId = updater.getLayoutId();
+        Layout layout = null;
+        Layout oldLayout = null;
+        if (newLayoutId != null && !newLayoutId.equals(oldLayoutId)) {
+            layout = inactiveLayouts.remove(newLayoutId);
+            if (oldLayoutId != null) {
+                oldLayout = new Layout();
+                inactiveLayouts.put(oldLayoutId, oldLayout);
+            }
+        }
         this.updater = updater;
-        keyItemsCache.clear();
-        rootKeyItems.clear();
-        load();        
+        rootKeyItemsByIndex = null;
+        if (layout == null) {
+            keyItemsCache = new TreeMap<String, KeyTreeItem>();
+            rootKeyItems = new TreeSet<KeyTreeItem>();
+            filterIndex = new KeyFilterIndex();
+            load();
+        } else {
+            restore(layout);
+        }
+        if (oldLayout != null) {
+            oldLayout.shareLeaves();
+        }
+    }
+
+    /**
+     * Restores a layout set aside, and brings it up to date.
+     * @param layout layout to restore
+     */
+    private void restore(Layout layout) {
+        keyItemsCache = layout.keyItemsCache;
+        rootKeyItems = layout.rootKeyItems;
+        filterIndex = layout.filterIndex;
+        boolean copied = layout.relinkLeaves();
+        for (String key : layout.changedKeys) {
+            boolean show = bundleGroup.isKey(key)
+                    && updater.isKeyAccepted(this, key);
+            if (show && !filterIndex.contains(key)) {
+                updater.addKey(this, key);
+                indexKey(key);
+            } else if (!show && filterIndex.contains(key)) {
+                updater.removeKey(this, key);
+                filterIndex.remove(key);
+            }
+        }
+        if (copied || !layout.changedKeys.isEmpty()
+                || layout.filterStamp != filterStamp) {
+            refilter();
+        }
+        fireAdd(this);
+    }
+
+    /**
+     * Records a key change for layouts set aside.  Layouts having too many
+     * changes are dropped, to be rebuilt when needed.
+     * @param key changed key
+     */
+    private void addInactiveLayoutChange(String key) {
+        if (inactiveLayouts.isEmpty()) {
+            return;
+        }
+        int maxChanges = (int) (bundleGroup.getKeys().size()
+                * MAX_CHANGED_RATIO);
+        for (Iterator<Layout> iter = inactiveLayouts.values().iterator();
+                iter.hasNext();) {
+            Layout layout = iter.next();
+            layout.changedKeys.add(key);
+            if (layout.changedKeys.size() > maxChanges) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Brings this tree in line with its bundle group keys, adding and
+     * removing only the keys that differ.  Unlike {@link #setUpdater},
+     * unchanged items are kept, and so is their state in viewers.
+     */
+    public void reconcile() {
+        Set<String> groupKeys = bundleGroup.getKeys();
+        for (String key : filterIndex.getKeys()) {
+            if (!groupKeys.contains(key) || !updater.isKeyAccepted(this, key)) {
+                removeKey(key);
+            }
+        }
+        for (String key : groupKeys) {
+            if (!filterIndex.contains(key) && updater.isKeyAccepted(this, key)) {
+                addKey(key);
+            }
+        }
     }
 
     /**
@@ -245,41 +489,149 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      * Loads all key tree items, base on bundle group.
      */
     private final void load() {
-        for (Iterator<String> iter = bundleGroup.getKeys().iterator();
-                iter.hasNext();) {
-            /*
-             * Do not call "fireAdd" method from here for extreme performance
-             * improvement.  This is not an addition in the sense that we are
-             * laying out existing keys, not adding any new ones.  We will
-             * refresh the whole tree after we are done looping.
-             */
-            updater.addKey(this, iter.next());
+        /*
+         * Do not call "fireAdd" method from here for extreme performance
+         * improvement.  This is not an addition in the sense that we are
+         * laying out existing keys, not adding any new ones.  We will
+         * refresh the whole tree after we are done.
+         */
+        Collection<String> keys = bundleGroup.getKeys();
+        updater.addKeys(this, keys);
+        for (String key : keys) {
+            indexKey(key);
         }
         if (getFilter() != null)
-            filterKeyItems(getFilter());
+            refilter();
         
         fireAdd(this);
     }
     
+    /**
+     * Adds a key to the filter index, if it made it to this tree.
+     * @param key key to index
+     */
+    private void indexKey(String key) {
+        if (keyItemsCache.containsKey(key)) {
+            filterIndex.add(key);
+        }
+    }
+
+    /**
+     * Gets the index of the keys in this tree.
+     * @return key filter index
+     */
+    public KeyFilterIndex getFilterIndex() {
+        return filterIndex;
+    }
+
     private String filter;
+    /** Matcher the filter was applied with (<code>null</code> for
+     *  "contains" filtering, done with the filter index). */
+    private KeyMatcher filterMatcher;
+    /** Keys shown by the last filter, or <code>null</code> for all. */
+    private Collection<String> filterKeys;
+    /** Whether the keys shown were matched before items last changed. */
+    private boolean filterStale;
+    private int filterStamp;
     
     /**
      * Returns the key filter that was applied using the last call to {@link #filterKeyItems(String)}
      * @return The key filter that was applied using the last call to {@link #filterKeyItems(String)}
      */
-    private String getFilter() {
+    public String getFilter() {
         return filter;
     }
     
     /**
      * Filters the key items by applying a substring-check for the given <code>filter</code> string. This information
-     * can be used later in {@link ViewerFilter}s to suppress filtered items. 
+     * can be used later in {@link org.eclipse.jface.viewers.ViewerFilter}s
+     * to suppress filtered items. 
      * @param filter The <code>filter</code> that should be applied to the key items.
      */
     public void filterKeyItems(String filter) {
+        if (filter == null || filter.length() == 0) {
+            filterKeyItems(filter, null, null);
+        } else {
+            filterKeyItems(filter, null, filterIndex.match(filter));
+        }
+    }
+
+    /**
+     * Filters the key items by showing only the given keys (and their
+     * groups).  Used to publish the result of filters computed elsewhere.
+     * The matcher is kept to filter again the same way when the tree is
+     * rebuilt.
+     * @param filter the filter that was applied to get the keys
+     * @param matcher matcher used to get the keys, or <code>null</code>
+     *        for "contains" filtering
+     * @param matchingKeys keys to show, or <code>null</code> to show all
+     *        (kept, so not to be modified afterwards)
+     */
+    public void filterKeyItems(String filter, KeyMatcher matcher,
+            Collection<String> matchingKeys) {
         this.filter = filter;
-        for (KeyTreeItem item : rootKeyItems) {
-            item.applyFilter(filter);
+        this.filterMatcher = matcher;
+        this.filterKeys = matchingKeys;
+        filterStale = false;
+        filterStamp++;
+        if (matchingKeys == null) {
+            setAllVisible(true);
+            return;
+        }
+        setAllVisible(false);
+        for (String key : matchingKeys) {
+            /* Group ids are prefixes of their children ids, so items
+             * containing the filter are matching keys and their ancestors. */
+            Object item = keyItemsCache.get(key);
+            while (item instanceof KeyTreeItem
+                    && !((KeyTreeItem) item).isVisible()) {
+                ((KeyTreeItem) item).setVisible(true);
+                item = ((KeyTreeItem) item).getParent();
+            }
+        }
+    }
+
+    /**
+     * Applies the current filter again after the tree items changed.
+     * "Contains" filtering is done again with the filter index.  Matching
+     * keys with other matchers can take a while, so the keys matched last
+     * are shown again instead, and the filter is marked as stale for the
+     * viewer to match them again in the background.
+     * @see #isFilterStale()
+     */
+    private void refilter() {
+        if (filterMatcher == null || filter == null || filter.length() == 0) {
+            filterKeyItems(filter);
+            return;
+        }
+        filterKeyItems(filter, filterMatcher, filterKeys);
+        filterStale = true;
+    }
+
+    /**
+     * Gets whether the keys shown by the current filter were matched
+     * before the tree items last changed, and should be matched again.
+     * @return <code>true</code> if the filter is stale
+     */
+    public boolean isFilterStale() {
+        return filterStale;
+    }
+
+    /**
+     * Gets a number changing every time items are filtered.
+     * @return filter stamp
+     */
+    public int getFilterStamp() {
+        return filterStamp;
+    }
+
+    /**
+     * Sets the visibility of all key items.
+     * @param visible whether items are visible
+     */
+    private void setAllVisible(boolean visible) {
+        for (KeyTreeItem item : keyItemsCache.values()) {
+            item.setVisible(visible);
         }
     }
     
@@ -289,4 +641,107 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     public void resetFilter() {
         filterKeyItems("");
     }
+
+    /**
+     * Items of a layout set aside when switching updater, along with the
+     * keys changed since.  Leaf items are shared with the active layout
+     * where they are leaves too, so the parent and name of each leaf in
+     * this layout are kept aside, to be set back on restore.
+     */
+    private class Layout {
+        private final TreeMap<String, KeyTreeItem> keyItemsCache =
+                KeyTree.this.keyItemsCache;
+        private final Set<KeyTreeItem> rootKeyItems = KeyTree.this.rootKeyItems;
+        private final KeyFilterIndex filterIndex = KeyTree.this.filterIndex;
+        private final int filterStamp = KeyTree.this.filterStamp;
+        /** Keys added, removed or modified since set aside. */
+        private final Set<String> changedKeys = new HashSet<>();
+        /** Leaf items, sorted by id. */
+        private final KeyTreeItem[] leaves;
+        /** Parent of each leaf in this layout. */
+        private final Object[] leafParents;
+        /** Name of each leaf in this layout. */
+        private final String[] leafNames;
+
+        private Layout() {
+            List<KeyTreeItem> leafList = new ArrayList<KeyTreeItem>();
+            for (KeyTreeItem item : keyItemsCache.values()) {
+                if (item.isLeaf()) {
+                    leafList.add(item);
+                }
+            }
+            leaves = leafList.toArray(new KeyTreeItem[leafList.size()]);
+            leafParents = new Object[leaves.length];
+            leafNames = new String[leaves.length];
+            for (int i = 0; i < leaves.length; i++) {
+                leafParents[i] = leaves[i].getParent();
+                leafNames[i] = leaves[i].getName();
+            }
+        }
+
+        /**
+         * Replaces the leaves of this layout with the leaves of the active
+         * layout having the same id, so both layouts hold a single item.
+         * Both item caches are sorted, so they are walked side by side.
+         */
+        private void shareLeaves() {
+            Iterator<KeyTreeItem> activeItems =
+                    KeyTree.this.keyItemsCache.values().iterator();
+            KeyTreeItem active = activeItems.hasNext()
+                    ? activeItems.next() : null;
+            for (int i = 0; i < leaves.length && active != null; i++) {
+                int diff = active.getId().compareTo(leaves[i].getId());
+                while (diff < 0 && activeItems.hasNext()) {
+                    active = activeItems.next();
+                    diff = active.getId().compareTo(leaves[i].getId());
+                }
+                if (diff == 0 && active != leaves[i] && active.isLeaf()) {
+                    replace(leaves[i], active, leafParents[i]);
+                    leaves[i] = active;
+                }
+            }
+        }
+
+        /**
+         * Sets back the parent and name of the leaves of this layout.
+         * Leaves which got children in another layout are copied instead.
+         * @return <code>true</code> if leaves were copied
+         */
+        private boolean relinkLeaves() {
+            boolean copied = false;
+            for (int i = 0; i < leaves.length; i++) {
+                KeyTreeItem leaf = leaves[i];
+                if (leaf.isLeaf()) {
+                    leaf.setParent(leafParents[i]);
+                    leaf.setName(leafNames[i]);
+                } else {
+                    KeyTreeItem copy = new KeyTreeItem(
+                            KeyTree.this, leaf.getId(), leafNames[i]);
+                    copy.setParent(leafParents[i]);
+                    replace(leaf, copy, leafParents[i]);
+                    leaves[i] = copy;
+                    copied = true;
+                }
+            }
+            return copied;
+        }
+
+        /**
+         * Replaces an item of this layout with another one of the same id.
+         * @param oldItem item to replace
+         * @param newItem replacement item
+         * @param parent parent of the item in this layout
+         */
+        private void replace(
+                KeyTreeItem oldItem, KeyTreeItem newItem, Object parent) {
+            keyItemsCache.put(newItem.getId(), newItem);
+            if (parent instanceof KeyTreeItem) {
+                ((KeyTreeItem) parent).removeChildren(oldItem);
+                ((KeyTreeItem) parent).addChildren(newItem);
+            } else {
+                rootKeyItems.remove(oldItem);
+                rootKeyItems.add(newItem);
+            }
+        }
+    }
 }
@@ -37,6 +37,9 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
     private Object parent;
     /** Child items. */
     private final SortedSet<KeyTreeItem> children = new TreeSet<KeyTreeItem>();
+    /** Child items by index, created on demand (<code>null</code> when
+     *  children changed). */
+    private KeyTreeItem[] childrenByIndex;
     
     /**
      * Constructor.
@@ -81,6 +84,25 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
     public SortedSet<KeyTreeItem> getChildren() {
         return children;
     }
+    /**
+     * Gets the number of children of this item.
+     * @return number of children
+     */
+    public int getChildCount() {
+        return children.size();
+    }
+    /**
+     * Gets the child found at the given index of the sorted children.
+     * @param index child index
+     * @return child item
+     */
+    public KeyTreeItem getChild(int index) {
+        if (childrenByIndex == null) {
+            childrenByIndex = children.toArray(
+                    new KeyTreeItem[children.size()]);
+        }
+        return childrenByIndex[index];
+    }
     /**
      * Gets the "id" attribute.
      * @return Returns the id.
@@ -102,6 +124,14 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
     public String getName() {
         return name;
     }
+    /**
+     * Sets the "name" attribute, as leaves shared between layouts of a
+     * key tree are named differently in each.
+     * @param name The name to set.
+     */
+    /*default*/ void setName(String name) {
+        this.name = name;
+    }
 
     /**
      * Gets all children of this item, from all available level.
@@ -121,14 +151,18 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
      * @param item child to add
      */
     public void addChildren(KeyTreeItem item) {
-        children.add(item);
+        if (children.add(item)) {
+            childrenByIndex = null;
+        }
     }
     /**
      * Removes a child from this item.
      * @param item child to remove
      */
     public void removeChildren(KeyTreeItem item) {
-        children.remove(item);
+        if (children.remove(item)) {
+            childrenByIndex = null;
+        }
     }
     
     /**
@@ -225,4 +259,12 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
     public boolean isVisible() {
         return visible;
     }
+
+    /**
+     * Sets whether this node is visible under the current filter.
+     * @param visible <code>true</code> if visible
+     */
+    /*default*/ void setVisible(boolean visible) {
+        this.visible = visible;
+    }
 }
@@ -34,13 +34,18 @@ public class FlatKeyTreeUpdater extends KeyTreeUpdater {
         super();
     }
 
+    @Override
+    public String getLayoutId() {
+        return "flat";
+    }
+
     @Override
     public void addKey(KeyTree keyTree, String key) {
         Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
         if (!keyCache.containsKey(key)) {
             KeyTreeItem item = new KeyTreeItem(keyTree, key, key);
             item.setParent(keyTree);
-            keyTree.getRootKeyItems().add(item);
+            keyTree.addRootKeyItem(item);
             keyCache.put(key, item);
         }
     }
@@ -15,7 +15,18 @@
  */
 package com.essiembre.eclipse.rbe.model.tree.updater;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.StringTokenizer;
 
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
@@ -39,6 +50,11 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
         this.separator = keyGroupSeparator;
     }
 
+    @Override
+    public String getLayoutId() {
+        return "grouped:" + separator;
+    }
+
     @Override
     public void addKey(KeyTree keyTree, String key) {
         Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
@@ -57,7 +73,7 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
                     KeyTreeItem item = new KeyTreeItem(keyTree, id, name);
                     item.setParent(parent);
                     if (parent instanceof KeyTree) {
-                        keyTree.getRootKeyItems().add(item);
+                        keyTree.addRootKeyItem(item);
                     } else {
                         ((KeyTreeItem) parent).addChildren(item);
                     }
@@ -70,6 +86,149 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
         }
     }
 
+    /**
+     * Builds the tree in a single pass over sorted keys.  The items of the
+     * previous key are kept on a stack, so groups shared with the next key
+     * are reused without being looked up again, and new items are created
+     * from substrings of the key taken at segment boundaries.  When the
+     * tree is empty, new items are put in the key item cache all at once,
+     * which a <code>TreeMap</code> does in linear time.  Keys with empty
+     * segments are delegated to {@link #addKey(KeyTree, String)}.
+     */
+    @Override
+    public void addKeys(KeyTree keyTree, Collection<String> sortedKeys) {
+        Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
+        boolean bulk = keyCache.isEmpty();
+        List<KeyTreeItem> newItems = null;
+        boolean newItemsSorted = true;
+        if (bulk) {
+            newItems = new ArrayList<>(sortedKeys.size());
+        }
+        /* With sorted keys, an item leaving the stack is only needed again
+         * when the key making it leave starts with its id (e.g. "a.b" left
+         * for "a.b-c", needed again for "a.b.c"), and only as long as keys
+         * keep starting with its id. */
+        List<KeyTreeItem> poppedItems = new ArrayList<>();
+        List<String> irregularKeys = new ArrayList<>();
+
+        int sepLength = separator.length();
+        // items of previous key and the key offsets their ids end at
+        KeyTreeItem[] stack = new KeyTreeItem[8];
+        int[] stackEnds = new int[8];
+        int stackSize = 0;
+        String previousKey = "";
+        for (String key : sortedKeys) {
+            if (!isRegularKey(key)) {
+                irregularKeys.add(key);
+                continue;
+            }
+            while (!poppedItems.isEmpty() && !key.startsWith(poppedItems.get(
+                    poppedItems.size() - 1).getId())) {
+                poppedItems.remove(poppedItems.size() - 1);
+            }
+            // keep the groups shared with the previous key
+            int depth = 0;
+            while (depth < stackSize) {
+                int from = depth == 0 ? 0 : stackEnds[depth - 1];
+                int end = stackEnds[depth];
+                if (!key.regionMatches(from, previousKey, from, end - from)) {
+                    break;
+                }
+                if (end != key.length() && !key.startsWith(separator, end)) {
+                    if (bulk) {
+                        poppedItems.add(stack[depth]);
+                    }
+                    break;
+                }
+                depth++;
+            }
+            stackSize = depth;
+            int start = depth == 0 ? 0 : stackEnds[depth - 1] + sepLength;
+            while (start <= key.length()) {
+                int end = key.indexOf(separator, start);
+                if (end == -1) {
+                    end = key.length();
+                }
+                String id = key.substring(0, end);
+                KeyTreeItem item = null;
+                if (!bulk) {
+                    item = keyCache.get(id);
+                } else {
+                    for (KeyTreeItem poppedItem : poppedItems) {
+                        if (poppedItem.getId().equals(id)) {
+                            item = poppedItem;
+                        }
+                    }
+                }
+                if (item == null) {
+                    item = new KeyTreeItem(
+                            keyTree, id, key.substring(start, end));
+                    if (stackSize == 0) {
+                        item.setParent(keyTree);
+                        keyTree.addRootKeyItem(item);
+                    } else {
+                        item.setParent(stack[stackSize - 1]);
+                        stack[stackSize - 1].addChildren(item);
+                    }
+                    if (!bulk) {
+                        keyCache.put(id, item);
+                    } else {
+                        if (!newItems.isEmpty() && newItems.get(
+                                newItems.size() - 1).compareTo(item) > 0) {
+                            newItemsSorted = false;
+                        }
+                        newItems.add(item);
+                    }
+                }
+                if (stackSize == stack.length) {
+                    stack = Arrays.copyOf(stack, stackSize * 2);
+                    stackEnds = Arrays.copyOf(stackEnds, stackSize * 2);
+                }
+                stack[stackSize] = item;
+                stackEnds[stackSize] = end;
+                stackSize++;
+                start = end + sepLength;
+            }
+            previousKey = key;
+        }
+        if (bulk) {
+            if (!newItemsSorted) {
+                Collections.sort(newItems);
+            }
+            keyCache.putAll(new SortedItemMap(newItems));
+        }
+        for (String key : irregularKeys) {
+            addKey(keyTree, key);
+        }
+    }
+
+    /**
+     * Checks whether a key is made of non-empty segments joined by the
+     * separator, in which case group ids are prefixes of the key.
+     * @param key key to check
+     * @return <code>true</code> if regular
+     */
+    private boolean isRegularKey(String key) {
+        int length = key.length();
+        int sepLength = separator.length();
+        char sepChar = separator.charAt(0);
+        if (length == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c == sepChar || (sepLength > 1 && separator.indexOf(c) != -1)) {
+                if (i == 0 || i + sepLength >= length
+                        || !key.startsWith(separator, i)
+                        || separator.indexOf(key.charAt(i + sepLength)) != -1) {
+                    return false;
+                }
+                i += sepLength - 1;
+            }
+        }
+        return true;
+    }
+
     /**
      * Gets the key group separator.
      * @return key group separator.
@@ -84,4 +243,62 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
     public void setSeparator(String separator) {
         this.separator = separator;
     }
+
+    /**
+     * Read-only sorted map view of key tree items sorted by id, allowing
+     * a <code>TreeMap</code> to add them all in linear time.
+     */
+    private static class SortedItemMap
+            extends AbstractMap<String, KeyTreeItem>
+            implements SortedMap<String, KeyTreeItem> {
+        private final List<KeyTreeItem> items;
+        private SortedItemMap(List<KeyTreeItem> items) {
+            this.items = items;
+        }
+        @Override
+        public Set<Map.Entry<String, KeyTreeItem>> entrySet() {
+            return new AbstractSet<Map.Entry<String, KeyTreeItem>>() {
+                @Override
+                public Iterator<Map.Entry<String, KeyTreeItem>> iterator() {
+                    final Iterator<KeyTreeItem> iter = items.iterator();
+                    return new Iterator<Map.Entry<String, KeyTreeItem>>() {
+                        public boolean hasNext() {
+                            return iter.hasNext();
+                        }
+                        public Map.Entry<String, KeyTreeItem> next() {
+                            KeyTreeItem item = iter.next();
+                            return new SimpleImmutableEntry<>(
+                                    item.getId(), item);
+                        }
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+                @Override
+                public int size() {
+                    return items.size();
+                }
+            };
+        }
+        public Comparator<? super String> comparator() {
+            return null;
+        }
+        public String firstKey() {
+            return items.get(0).getId();
+        }
+        public String lastKey() {
+            return items.get(items.size() - 1).getId();
+        }
+        public SortedMap<String, KeyTreeItem> subMap(
+                String fromKey, String toKey) {
+            throw new UnsupportedOperationException();
+        }
+        public SortedMap<String, KeyTreeItem> headMap(String toKey) {
+            throw new UnsupportedOperationException();
+        }
+        public SortedMap<String, KeyTreeItem> tailMap(String fromKey) {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
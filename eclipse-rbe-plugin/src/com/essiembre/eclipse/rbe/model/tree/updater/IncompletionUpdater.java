@@ -16,12 +16,12 @@
 package com.essiembre.eclipse.rbe.model.tree.updater;
 
 
-import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.List;
 
 /**
  * An update which filters entries where at least one isn't available.
@@ -45,21 +45,41 @@ public class IncompletionUpdater extends KeyTreeUpdater {
     }
     
 
+    @Override
+    public String getLayoutId() {
+        String layoutId = delegation.getLayoutId();
+        return layoutId == null ? null : "incomplete:" + layoutId;
+    }
+
     @Override
     public void addKey(KeyTree keytree, String key) {
-        Collection<BundleEntry> entries  = bundlegroup.getBundleEntries(key);
-        int        count    = 0;
-        Iterator<BundleEntry>   iterator = entries.iterator();
-        while(iterator.hasNext()) {
-            BundleEntry entry = iterator.next();
-            String      value = entry.getValue();
-            if((value != null) && (value.length() > 0)) {
-                count++;
-            }
-        }
-        // we only delegate entries in case there are some incomplete ones
-        if (count < bundlegroup.getBundleCount()) {
+        if (isIncomplete(key)) {
             delegation.addKey(keytree, key);
         }
     }
+
+    @Override
+    public boolean isKeyAccepted(KeyTree keytree, String key) {
+        return isIncomplete(key);
+    }
+
+    @Override
+    public void addKeys(KeyTree keytree, Collection<String> sortedKeys) {
+        List<String> incompleteKeys = new ArrayList<>();
+        for (String key : sortedKeys) {
+            if (isIncomplete(key)) {
+                incompleteKeys.add(key);
+            }
+        }
+        delegation.addKeys(keytree, incompleteKeys);
+    }
+
+    /**
+     * Checks whether a key is missing a value in at least one bundle.
+     * @param key key to check
+     * @return <code>true</code> if incomplete
+     */
+    private boolean isIncomplete(String key) {
+        return !bundlegroup.isKeyComplete(key);
+    }
 }
@@ -15,6 +15,7 @@
  */
 package com.essiembre.eclipse.rbe.model.tree.updater;
 
+import java.util.Collection;
 import java.util.Map;
 
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
@@ -40,6 +41,38 @@ public abstract class KeyTreeUpdater {
      */
     public abstract void addKey(KeyTree keyTree, String key);
 
+    /**
+     * Gets an identifier for the tree layout produced by this updater.
+     * Updaters with the same identifier produce the same tree, which
+     * allows a key tree to keep their items aside when switching updaters.
+     * @return layout identifier, or <code>null</code> if not to be kept
+     */
+    public String getLayoutId() {
+        return null;
+    }
+
+    /**
+     * Checks whether a key belongs in the key tree.  By default all keys do.
+     * @param keyTree key tree
+     * @param key key to check
+     * @return <code>true</code> if the key is to be shown
+     */
+    public boolean isKeyAccepted(KeyTree keyTree, String key) {
+        return true;
+    }
+
+    /**
+     * Adds many keys to the key tree at once.  Implementations may rely on
+     * keys being sorted to build the tree faster.
+     * @param keyTree key tree on which to add the keys
+     * @param sortedKeys keys to add, in ascending order
+     */
+    public void addKeys(KeyTree keyTree, Collection<String> sortedKeys) {
+        for (String key : sortedKeys) {
+            addKey(keyTree, key);
+        }
+    }
+
     /**
      * Removes a key from the key tree.
      * @param keyTree key tree from which to remove the key
@@ -51,7 +84,7 @@ public abstract class KeyTreeUpdater {
         if (item != null) {
             Object parent = item.getParent();
             if (parent instanceof KeyTree) {
-                ((KeyTree) parent).getRootKeyItems().remove(item);
+                ((KeyTree) parent).removeRootKeyItem(item);
             } else {
                 ((KeyTreeItem) parent).removeChildren(item);
             }
@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.utils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable hash map (hash array mapped trie).  Adding or removing a key
+ * returns a new map sharing all but the path to that key with the original
+ * one, so old versions of a map stay valid and can be read by other threads
+ * without locking.  <code>null</code> keys and values are supported.
+ * @param <K> key type
+ * @param <V> value type
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    /** Bits of the hash used at each level of the trie. */
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap(null, 0);
+
+    /** Root node, <code>null</code> if empty. */
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        super();
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Gets the empty map.
+     * @return empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Gets a map with the given key mapped to the given value, in
+     * addition to the mappings of this map.
+     * @param key key
+     * @param value value
+     * @return new map, or this map if the key already maps to the value
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        Leaf leaf = new Leaf(key, value, hash(key));
+        if (root == null) {
+            return new PersistentMap<>(leaf.wrap(0), 1);
+        }
+        int[] added = new int[1];
+        Node newRoot = root.plus(leaf, 0, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentMap<>(newRoot, size + added[0]);
+    }
+
+    /**
+     * Gets a map without the given key, but otherwise the mappings of this
+     * map.
+     * @param key key
+     * @return new map, or this map if the key is not mapped
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        if (root == null) {
+            return this;
+        }
+        Node newRoot = root.minus(key, hash(key), 0);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? PersistentMap.<K, V>empty()
+                : new PersistentMap<K, V>(newRoot, size - 1);
+    }
+
+    /**
+     * @see java.util.AbstractMap#get(java.lang.Object)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = root == null ? null : root.find(key, hash(key), 0);
+        return leaf == null ? null : (V) leaf.getValue();
+    }
+
+    /**
+     * @see java.util.AbstractMap#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && root.find(key, hash(key), 0) != null;
+    }
+
+    /**
+     * @see java.util.AbstractMap#size()
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @see java.util.AbstractMap#entrySet()
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new LeafIterator<>(root);
+            }
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equal(Object key1, Object key2) {
+        return key1 == null ? key2 == null : key1.equals(key2);
+    }
+
+    /**
+     * Trie node.
+     */
+    private abstract static class Node {
+        /**
+         * Finds the leaf of a key.
+         * @return leaf, or <code>null</code>
+         */
+        abstract Leaf find(Object key, int hash, int shift);
+        /**
+         * Adds or replaces a leaf, counting added leaves in
+         * <code>added[0]</code>.
+         * @return new node, or this node if unchanged
+         */
+        abstract Node plus(Leaf leaf, int shift, int[] added);
+        /**
+         * Removes the leaf of a key.
+         * @return new node, this node if unchanged, or <code>null</code>
+         *         if empty
+         */
+        abstract Node minus(Object key, int hash, int shift);
+        /**
+         * Gets the only leaf of this node.
+         * @return leaf, or <code>null</code> if not a single leaf
+         */
+        abstract Leaf singleLeaf();
+        /** Gets the number of leaves and child nodes. */
+        abstract int slotCount();
+        /** Gets a leaf or child node. */
+        abstract Object slot(int index);
+    }
+
+    /**
+     * Key mapping, holding the key hash.
+     */
+    private static final class Leaf
+            extends AbstractMap.SimpleImmutableEntry<Object, Object> {
+        private static final long serialVersionUID = 1L;
+        private final int hash;
+        private Leaf(Object key, Object value, int hash) {
+            super(key, value);
+            this.hash = hash;
+        }
+        /** Gets a node made of this leaf. */
+        private Node wrap(int shift) {
+            return new BitmapNode(bit(hash, shift), new Object[] { this });
+        }
+    }
+
+    /**
+     * Node holding up to 32 leaves or child nodes, present ones being
+     * flagged in a bitmap indexed by 5 bits of the key hashes.
+     */
+    private static final class BitmapNode extends Node {
+        private final int bitmap;
+        private final Object[] slots;
+        private BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+        @Override
+        Leaf find(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[index(bit)];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return equal(key, leaf.getKey()) ? leaf : null;
+            }
+            return ((Node) slot).find(key, hash, shift + BITS);
+        }
+        @Override
+        Node plus(Leaf leaf, int shift, int[] added) {
+            int bit = bit(leaf.hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1,
+                        slots.length - index);
+                added[0]++;
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Leaf) {
+                Leaf oldLeaf = (Leaf) slot;
+                if (equal(leaf.getKey(), oldLeaf.getKey())) {
+                    if (leaf.getValue() == oldLeaf.getValue()) {
+                        return this;
+                    }
+                    newSlot = leaf;
+                } else {
+                    newSlot = merge(oldLeaf, leaf, shift + BITS);
+                    added[0]++;
+                }
+            } else {
+                Node node = (Node) slot;
+                newSlot = node.plus(leaf, shift + BITS, added);
+                if (newSlot == node) {
+                    return this;
+                }
+            }
+            return new BitmapNode(bitmap, replace(slots, index, newSlot));
+        }
+        @Override
+        Node minus(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Leaf) {
+                if (!equal(key, ((Leaf) slot).getKey())) {
+                    return this;
+                }
+                newSlot = null;
+            } else {
+                Node node = (Node) slot;
+                Node newNode = node.minus(key, hash, shift + BITS);
+                if (newNode == node) {
+                    return this;
+                }
+                // a single leaf left moves up in place of its node
+                newSlot = newNode == null || newNode.singleLeaf() == null
+                        ? newNode : newNode.singleLeaf();
+            }
+            if (newSlot != null) {
+                return new BitmapNode(bitmap, replace(slots, index, newSlot));
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index,
+                    newSlots.length - index);
+            return new BitmapNode(bitmap & ~bit, newSlots);
+        }
+        @Override
+        Leaf singleLeaf() {
+            return slots.length == 1 && slots[0] instanceof Leaf
+                    ? (Leaf) slots[0] : null;
+        }
+        @Override
+        int slotCount() {
+            return slots.length;
+        }
+        @Override
+        Object slot(int index) {
+            return slots[index];
+        }
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+
+    /**
+     * Node holding leaves whose keys have the same hash.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Leaf[] leaves;
+        private CollisionNode(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+        @Override
+        Leaf find(Object key, int hash, int shift) {
+            int index = indexOf(key);
+            return index == -1 ? null : leaves[index];
+        }
+        @Override
+        Node plus(Leaf leaf, int shift, int[] added) {
+            if (leaf.hash != hash) {
+                // nest this node where the hashes start to differ
+                return new BitmapNode(bit(hash, shift), new Object[] { this })
+                        .plus(leaf, shift, added);
+            }
+            int index = indexOf(leaf.getKey());
+            if (index == -1) {
+                Leaf[] newLeaves = new Leaf[leaves.length + 1];
+                System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+                newLeaves[leaves.length] = leaf;
+                added[0]++;
+                return new CollisionNode(hash, newLeaves);
+            }
+            if (leaves[index].getValue() == leaf.getValue()) {
+                return this;
+            }
+            Leaf[] newLeaves = leaves.clone();
+            newLeaves[index] = leaf;
+            return new CollisionNode(hash, newLeaves);
+        }
+        @Override
+        Node minus(Object key, int hash, int shift) {
+            int index = indexOf(key);
+            if (index == -1) {
+                return this;
+            }
+            if (leaves.length == 1) {
+                return null;
+            }
+            Leaf[] newLeaves = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, index);
+            System.arraycopy(leaves, index + 1, newLeaves, index,
+                    newLeaves.length - index);
+            return new CollisionNode(hash, newLeaves);
+        }
+        @Override
+        Leaf singleLeaf() {
+            return leaves.length == 1 ? leaves[0] : null;
+        }
+        @Override
+        int slotCount() {
+            return leaves.length;
+        }
+        @Override
+        Object slot(int index) {
+            return leaves[index];
+        }
+        private int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (equal(key, leaves[i].getKey())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Makes a node holding two leaves of different keys.
+     */
+    private static Node merge(Leaf leaf1, Leaf leaf2, int shift) {
+        if (leaf1.hash == leaf2.hash) {
+            return new CollisionNode(leaf1.hash, new Leaf[] { leaf1, leaf2 });
+        }
+        int bit1 = bit(leaf1.hash, shift);
+        int bit2 = bit(leaf2.hash, shift);
+        if (bit1 == bit2) {
+            return new BitmapNode(bit1,
+                    new Object[] { merge(leaf1, leaf2, shift + BITS) });
+        }
+        // slots are ordered by bit position
+        boolean ordered = (leaf1.hash >>> shift & MASK)
+                < (leaf2.hash >>> shift & MASK);
+        return new BitmapNode(bit1 | bit2, ordered
+                ? new Object[] { leaf1, leaf2 }
+                : new Object[] { leaf2, leaf1 });
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Object[] replace(Object[] slots, int index, Object slot) {
+        Object[] newSlots = slots.clone();
+        newSlots[index] = slot;
+        return newSlots;
+    }
+
+    /**
+     * Iterates through the leaves of a trie, depth first.
+     */
+    private static final class LeafIterator<K, V>
+            implements Iterator<Map.Entry<K, V>> {
+        private final List<Node> nodes = new ArrayList<>();
+        private final List<Integer> indexes = new ArrayList<>();
+        private Leaf next;
+        private LeafIterator(Node root) {
+            if (root != null) {
+                nodes.add(root);
+                indexes.add(0);
+            }
+            advance();
+        }
+        private void advance() {
+            next = null;
+            while (next == null && !nodes.isEmpty()) {
+                int last = nodes.size() - 1;
+                Node node = nodes.get(last);
+                int index = indexes.get(last);
+                if (index == node.slotCount()) {
+                    nodes.remove(last);
+                    indexes.remove(last);
+                    continue;
+                }
+                indexes.set(last, index + 1);
+                Object slot = node.slot(index);
+                if (slot instanceof Leaf) {
+                    next = (Leaf) slot;
+                } else {
+                    nodes.add((Node) slot);
+                    indexes.add(0);
+                }
+            }
+        }
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = (Map.Entry<K, V>) (Map.Entry<?, ?>) next;
+            advance();
+            return entry;
+        }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
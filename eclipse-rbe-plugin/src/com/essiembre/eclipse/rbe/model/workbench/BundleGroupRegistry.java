@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.workbench;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+
+/**
+ * Workbench-wide registry of the bundle groups loaded from properties
+ * files, so editors and other consumers of the same bundle share one
+ * bundle group.  Bundle groups are reference counted, and kept for a
+ * while after being released for the last time, so reopening a bundle
+ * does not parse it again.
+ */
+public final class BundleGroupRegistry {
+
+    /** Shared instance. */
+    private static final BundleGroupRegistry INSTANCE =
+            new BundleGroupRegistry();
+
+    /** Registered bundle groups (key=sorted file paths). */
+    private final Map<String, Handle> handles = new HashMap<>();
+
+    /**
+     * Constructor.
+     */
+    private BundleGroupRegistry() {
+        super();
+    }
+
+    /**
+     * Gets the shared instance.
+     * @return bundle group registry
+     */
+    public static BundleGroupRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Acquires the bundle group made of the given files, creating an empty
+     * one if none is registered.  Each call must be matched by a call to
+     * {@link #release(Handle)}.
+     * @param files files of the bundle
+     * @return handle on the bundle group
+     */
+    public synchronized Handle acquire(IFile[] files) {
+        String[] paths = new String[files.length];
+        for (int i = 0; i < files.length; i++) {
+            paths[i] = files[i].getFullPath().toString();
+        }
+        Arrays.sort(paths);
+        String id = Arrays.toString(paths);
+        Handle handle = handles.get(id);
+        if (handle == null) {
+            handle = new Handle(id);
+            handles.put(id, handle);
+        }
+        handle.references++;
+        handle.evictJob.cancel();
+        return handle;
+    }
+
+    /**
+     * Releases a bundle group acquired with {@link #acquire(IFile[])}.
+     * Once no longer referenced, the bundle group is kept for the time set
+     * in preferences, then discarded.
+     * @param handle handle on the bundle group
+     */
+    public synchronized void release(Handle handle) {
+        if (--handle.references > 0) {
+            return;
+        }
+        long keepAlive = RBEPreferences.getModelKeepAlive() * 1000L;
+        if (keepAlive > 0) {
+            handle.evictJob.schedule(keepAlive);
+        } else {
+            handles.remove(handle.id);
+        }
+    }
+
+    /**
+     * Discards a bundle group if still not referenced.
+     * @param handle handle on the bundle group
+     */
+    /*default*/ synchronized void evict(Handle handle) {
+        if (handle.references == 0 && handles.get(handle.id) == handle) {
+            handles.remove(handle.id);
+        }
+    }
+
+    /**
+     * Reference to a shared bundle group.  Handles also record the content
+     * each bundle was last loaded from, to tell which files changed since.
+     * They are meant to be used from the UI thread.
+     */
+    public static final class Handle {
+        private final String id;
+        private final BundleGroup bundleGroup = new BundleGroup();
+        /** Hash of the content loaded from each file (key=file path). */
+        private final Map<IPath, Long> loadedHashes = new HashMap<>();
+        private final Job evictJob;
+        /** Number of references, guarded by the registry. */
+        private int references;
+
+        private Handle(String id) {
+            this.id = id;
+            this.evictJob = new Job(RBEPlugin.getString("model.evict.job")) {
+                @Override
+                protected IStatus run(IProgressMonitor monitor) {
+                    INSTANCE.evict(Handle.this);
+                    return Status.OK_STATUS;
+                }
+            };
+            evictJob.setSystem(true);
+        }
+
+        /**
+         * Gets the shared bundle group.
+         * @return bundle group
+         */
+        public BundleGroup getBundleGroup() {
+            return bundleGroup;
+        }
+
+        /**
+         * Checks whether the bundle group holds the given content of a file.
+         * @param file properties file
+         * @param hash hash of the file content
+         * @return <code>true</code> if the content is already loaded
+         */
+        public boolean isLoaded(IFile file, long hash) {
+            Long loadedHash = loadedHashes.get(file.getFullPath());
+            return loadedHash != null && loadedHash.longValue() == hash;
+        }
+
+        /**
+         * Records the content of a file the bundle group now holds, as
+         * loaded from or generated to the file.
+         * @param file properties file
+         * @param hash hash of the file content
+         */
+        public void setLoaded(IFile file, long hash) {
+            loadedHashes.put(file.getFullPath(), hash);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.workbench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleCodec;
+import com.essiembre.eclipse.rbe.model.bundle.ParseOptions;
+import com.essiembre.eclipse.rbe.model.utils.HashUtils;
+
+/**
+ * Cache of parsed properties files, stored in the plugin state location.
+ * Each file gets a binary cache file, valid for the file path, modification
+ * stamp, content hash and parsing options it was written for, so unchanged
+ * files are read back from the cache instead of being parsed.  Cache files
+ * are read in full in a heap buffer rather than mapped in memory, since a
+ * mapped file cannot be replaced on some platforms until the mapping is
+ * garbage collected.  They are written in the background, and pruned once
+ * per session: files not used for <code>MAX_AGE</code> are removed, then
+ * the least recently used ones until the cache fits in
+ * <code>MAX_SIZE</code>.
+ */
+public final class ParseCache {
+
+    /** Cache file format identifier ("RBEC"). */
+    private static final int MAGIC = 0x52424543;
+    /** Cache file format version. */
+    private static final int VERSION = 2;
+    /** Time after which unused cache files are removed (30 days). */
+    private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+    /** Total size of cache files kept (64 MB). */
+    private static final long MAX_SIZE = 64L * 1024 * 1024;
+
+    /** Shared instance. */
+    private static final ParseCache INSTANCE = new ParseCache();
+
+    /** Cache file contents waiting to be written (key=file). */
+    private final Map<IFile, byte[]> pending = new LinkedHashMap<>();
+    private final Job writeJob;
+    /** Whether cache files were pruned in this session. */
+    private boolean pruned;
+
+    /**
+     * Constructor.
+     */
+    private ParseCache() {
+        super();
+        writeJob = new Job(RBEPlugin.getString("parse.cache.job")) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                writePending(monitor);
+                if (!pruned && !monitor.isCanceled()) {
+                    pruned = true;
+                    prune();
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        writeJob.setSystem(true);
+        writeJob.setPriority(Job.DECORATE);
+    }
+
+    /**
+     * Gets the shared instance.
+     * @return parse cache
+     */
+    public static ParseCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the bundle parsed from a file, if cached.
+     * @param file properties file
+     * @param contentHash hash of the content to be parsed
+     * @param options parsing options
+     * @return bundle, or <code>null</code> if not cached for this content
+     */
+    public Bundle get(IFile file, long contentHash, ParseOptions options) {
+        File cacheFile = getCacheFile(file);
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(
+                    Files.readAllBytes(cacheFile.toPath()));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || !file.getFullPath().toString().equals(
+                            BundleCodec.readString(buffer))
+                    || buffer.getLong() != file.getModificationStamp()
+                    || buffer.getLong() != contentHash
+                    || buffer.getInt() != getFlags(options)) {
+                return null;
+            }
+            Bundle bundle = BundleCodec.read(buffer);
+            // marks the file as recently used, for pruning
+            cacheFile.setLastModified(System.currentTimeMillis());
+            return bundle;
+        } catch (IOException | BufferUnderflowException e) {
+            // corrupted cache files are rewritten on next parse
+            return null;
+        }
+    }
+
+    /**
+     * Caches the bundle parsed from a file.  The bundle is encoded right
+     * away, so it can change afterwards, and written in the background.
+     * @param file properties file
+     * @param contentHash hash of the content parsed
+     * @param options parsing options
+     * @param bundle parsed bundle
+     */
+    public void put(IFile file, long contentHash, ParseOptions options,
+            Bundle bundle) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            BundleCodec.writeString(file.getFullPath().toString(), out);
+            out.writeLong(file.getModificationStamp());
+            out.writeLong(contentHash);
+            out.writeInt(getFlags(options));
+            BundleCodec.write(bundle, out);
+        } catch (IOException e) {
+            // not thrown by in-memory streams
+            throw new IllegalStateException(e);
+        }
+        synchronized (pending) {
+            pending.put(file, bytes.toByteArray());
+        }
+        writeJob.schedule();
+    }
+
+    /**
+     * Writes the pending bundles.
+     * @param monitor progress monitor
+     */
+    /*default*/ void writePending(IProgressMonitor monitor) {
+        while (!monitor.isCanceled()) {
+            IFile file;
+            byte[] content;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                file = pending.keySet().iterator().next();
+                content = pending.remove(file);
+            }
+            File cacheFile = getCacheFile(file);
+            if (cacheFile == null) {
+                return;
+            }
+            try {
+                write(cacheFile, content);
+            } catch (IOException e) {
+                RBEPlugin.getDefault().getLog().log(new Status(
+                        IStatus.WARNING, RBEPlugin.ID,
+                        "Cannot write parse cache " + cacheFile, e));
+            }
+        }
+    }
+
+    /**
+     * Removes cache files not used for <code>MAX_AGE</code>, then the least
+     * recently used ones beyond <code>MAX_SIZE</code>.  Leftover temporary
+     * files are removed the same way.
+     */
+    /*default*/ void prune() {
+        File dir = getCacheDir();
+        File[] files = dir == null ? null : dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File file1, File file2) {
+                // most recently used first
+                return Long.compare(file2.lastModified(), file1.lastModified());
+            }
+        });
+        long oldest = System.currentTimeMillis() - MAX_AGE;
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+            if ((file.lastModified() < oldest || size > MAX_SIZE)
+                    && !file.delete()) {
+                RBEPlugin.getDefault().getLog().log(new Status(
+                        IStatus.WARNING, RBEPlugin.ID,
+                        "Cannot delete parse cache " + file));
+            }
+        }
+    }
+
+    /**
+     * Writes a cache file, replacing the previous one at once so readers
+     * never see a partial file.
+     * @param cacheFile cache file
+     * @param content cache file content
+     * @throws IOException problem writing file
+     */
+    private static void write(File cacheFile, byte[] content)
+            throws IOException {
+        File dir = cacheFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        File tempFile = File.createTempFile("rbe", ".tmp", dir);
+        try {
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                out.write(content);
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Gets the cache file of a properties file.
+     * @param file properties file
+     * @return cache file, or <code>null</code> if the plugin has no state
+     *         location
+     */
+    private static File getCacheFile(IFile file) {
+        File dir = getCacheDir();
+        if (dir == null) {
+            return null;
+        }
+        long hash = HashUtils.fnv1a(file.getFullPath().toString());
+        return new File(dir, Long.toHexString(hash) + ".bin");
+    }
+
+    /**
+     * Gets the directory holding cache files.
+     * @return cache directory, or <code>null</code> if the plugin has no
+     *         state location
+     */
+    private static File getCacheDir() {
+        RBEPlugin plugin = RBEPlugin.getDefault();
+        if (plugin == null) {
+            return null;
+        }
+        return plugin.getStateLocation().append("parse-cache").toFile();
+    }
+
+    /**
+     * Gets parsing options as flags.
+     * @param options parsing options
+     * @return flags
+     */
+    private static int getFlags(ParseOptions options) {
+        return options.isConvertEncodedToUnicode() ? 1 : 0;
+    }
+}
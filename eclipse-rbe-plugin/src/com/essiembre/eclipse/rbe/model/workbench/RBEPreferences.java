@@ -15,9 +15,14 @@
  */
 package com.essiembre.eclipse.rbe.model.workbench;
 
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.preference.IPreferenceStore;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.FormatOptions;
+import com.essiembre.eclipse.rbe.model.bundle.ParseOptions;
 
 /**
  * Application preferences, relevant to the resource bundle editor plugin.
@@ -104,11 +109,11 @@ public final class RBEPreferences {
     public static final String NEW_LINE_NICE = "newLineNice";
     
     /** New Line Type: UNIX. */
-    public static final int NEW_LINE_UNIX = 0;
+    public static final int NEW_LINE_UNIX = FormatOptions.NEW_LINE_UNIX;
     /** New Line Type: Windows. */
-    public static final int NEW_LINE_WIN = 1;
+    public static final int NEW_LINE_WIN = FormatOptions.NEW_LINE_WIN;
     /** New Line Type: Mac. */
-    public static final int NEW_LINE_MAC = 2;
+    public static final int NEW_LINE_MAC = FormatOptions.NEW_LINE_MAC;
 
     /** Report missing values. */
     public static final String REPORT_MISSING_VALUES = "detectMissingValues";
@@ -126,11 +131,17 @@ public final class RBEPreferences {
     public static final String REPORT_SIM_VALUES_PRECISION = 
             "reportSimilarValuesPrecision";
     
+    /** Create key tree rows lazily, as they become visible. */
+    public static final String KEY_TREE_VIRTUAL = "keyTreeVirtual";
+    
     /** Don't show the tree within the editor. */
     public static final String NO_TREE_IN_EDITOR = "noTreeInEditor";
 
     /** Keep empty fields. */
     public static final String KEEP_EMPTY_FIELDS = "keepEmptyFields";
+
+    /** Seconds a bundle stays loaded after its last editor closed. */
+    public static final String MODEL_KEEP_ALIVE = "modelKeepAlive";
     
     public static final String MIN_HEIGHT = "minHeight";
 //    public static final String AUTO_ADJUST = "autoAdjust";                               
@@ -141,6 +152,16 @@ public final class RBEPreferences {
     /** RBEPreferences. */
     private static final IPreferenceStore PREFS = 
             RBEPlugin.getDefault().getPreferenceStore();
+
+    /** Logs parsing problems, with localized messages. */
+    private static final ParseOptions.ProblemHandler PARSE_PROBLEM_HANDLER =
+            new ParseOptions.ProblemHandler() {
+        public void badEncoding(String str) {
+            RBEPlugin.getDefault().getLog().log(new Status(IStatus.WARNING,
+                    RBEPlugin.ID, RBEPlugin.getString(
+                            "error.init.badencoding") + str));
+        }
+    };
     
     /**
      * Constructor.
@@ -357,6 +378,49 @@ public final class RBEPreferences {
         return PREFS.getBoolean(FORCE_NEW_LINE_TYPE);
     }
 
+    /**
+     * Gets the options to read properties files with.  Options do not follow
+     * later preference changes, so get them once per operation.
+     * @return parsing options
+     */
+    public static ParseOptions getParseOptions() {
+        return new ParseOptions(
+                getConvertEncodedToUnicode(), PARSE_PROBLEM_HANDLER);
+    }
+
+    /**
+     * Gets the options to write properties files with, using the Eclipse
+     * line separator.  Options do not follow later preference changes, so
+     * get them once per operation.
+     * @return formatting options
+     */
+    public static FormatOptions getFormatOptions() {
+        return new FormatOptions.Builder()
+                .setLineSeparator(Platform.getPreferencesService().getString(
+                        "org.eclipse.core.runtime", "line.separator",
+                        System.getProperty("line.separator"), null))
+                .setShowGenerator(getShowGenerator())
+                .setKeepEmptyFields(getKeepEmptyFields())
+                .setConvertUnicodeToEncoded(getConvertUnicodeToEncoded())
+                .setConvertUnicodeToEncodedUpper(
+                        getConvertUnicodeToEncodedUpper())
+                .setAlignEqualSigns(getAlignEqualSigns())
+                .setSpacesAroundEqualSigns(getSpacesAroundEqualSigns())
+                .setGroupKeys(getGroupKeys())
+                .setKeyGroupSeparator(getKeyGroupSeparator())
+                .setGroupLevelDepth(getGroupLevelDepth())
+                .setGroupLineBreaks(getGroupLineBreaks())
+                .setGroupAlignEqualSigns(getGroupAlignEqualSigns())
+                .setWrapLines(getWrapLines())
+                .setWrapCharLimit(getWrapCharLimit())
+                .setWrapAlignEqualSigns(getWrapAlignEqualSigns())
+                .setWrapIndentSpaces(getWrapIndentSpaces())
+                .setForceNewLineType(getForceNewLineType())
+                .setNewLineType(getNewLineType())
+                .setNewLineNice(getNewLineNice())
+                .build();
+    }
+
     
     //--- Reporting/Performance ------------------------------------------------
 
@@ -405,5 +469,21 @@ public final class RBEPreferences {
     public static double getReportSimilarValuesPrecision() {
         return PREFS.getDouble(REPORT_SIM_VALUES_PRECISION);
     }
+    /**
+     * Gets whether key tree rows should only be created when they become
+     * visible (<code>SWT.VIRTUAL</code> tree).
+     * @return <code>true</code> if virtual
+     */
+    public static boolean getKeyTreeVirtual() {
+        return PREFS.getBoolean(KEY_TREE_VIRTUAL);
+    }
+    /**
+     * Gets how long a bundle stays loaded after it is no longer used, so
+     * reopening it is fast.
+     * @return time in seconds
+     */
+    public static int getModelKeepAlive() {
+        return PREFS.getInt(MODEL_KEEP_ALIVE);
+    }
 
 }
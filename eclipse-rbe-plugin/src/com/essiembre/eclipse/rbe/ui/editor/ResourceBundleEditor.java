@@ -44,8 +44,12 @@ import org.eclipse.ui.part.MultiPageEditorPart;
 import org.eclipse.ui.views.contentoutline.IContentOutlinePage;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.search.BundleGroupSearcher;
+import com.essiembre.eclipse.rbe.model.search.SearchMatch;
+import com.essiembre.eclipse.rbe.model.search.SearchQuery;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
+import com.essiembre.eclipse.rbe.ui.editor.grid.GridPage;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.I18nPage;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.I18nPageEditor;
 import com.essiembre.eclipse.rbe.ui.editor.locale.NewLocalePage;
@@ -66,6 +70,8 @@ public class ResourceBundleEditor extends MultiPageEditorPart
     
     private ResourceManager resourceMediator;
     private I18nPage i18nPage;
+    /** Key by locale grid page. */
+    private GridPage gridPage;
     /** New locale page. */
     private NewLocalePage newLocalePage;
     
@@ -74,7 +80,6 @@ public class ResourceBundleEditor extends MultiPageEditorPart
     
     private ResourceChangeListener resourceChangeListener = 
             new ResourceChangeListener();
-    private List<IPath> paths = new ArrayList<>();
     private SourceEditor lastEditor;
     
     /**
@@ -157,8 +162,6 @@ public class ResourceBundleEditor extends MultiPageEditorPart
                         sourceEditor.getLocale()));
                 setPageImage(index, 
                         UIUtils.getImage(UIUtils.IMAGE_PROPERTIES_FILE));
-                
-                paths.add( sourceEditor.getFile().getFullPath() );
             }
             outline = new ResourceBundleOutline(resourceMediator.getKeyTree());
             
@@ -169,6 +172,12 @@ public class ResourceBundleEditor extends MultiPageEditorPart
                 null, e.getStatus());
         }
         
+        // Add grid page
+        gridPage = new GridPage(getContainer(), resourceMediator);
+        index = addPage(gridPage);
+        setPageText(index, RBEPlugin.getString("editor.grid"));
+        setPageImage(index, UIUtils.getImage(UIUtils.IMAGE_LAYOUT_FLAT));
+
         // Add "new locale" page
         newLocalePage = new NewLocalePage(
                 getContainer(), resourceMediator, this);
@@ -182,7 +191,8 @@ public class ResourceBundleEditor extends MultiPageEditorPart
         try {            
             SourceEditor sourceEditor = 
                     resourceMediator.addSourceEditor(resource, locale);
-            int index = getPageCount() - 1;
+            // before grid and "new locale" pages
+            int index = getPageCount() - 2;
             addPage(index,
                     sourceEditor.getEditor(), 
                     sourceEditor.getEditor().getEditorInput());
@@ -191,6 +201,7 @@ public class ResourceBundleEditor extends MultiPageEditorPart
             setPageImage(index, 
                     UIUtils.getImage(UIUtils.IMAGE_PROPERTIES_FILE));
             i18nPage.refreshPage();
+            gridPage.refreshPage();
             setActivePage(0);
             // re-set the content to trigger dirty state 
             sourceEditor.setContent(sourceEditor.getContent()); 
@@ -224,15 +235,9 @@ public class ResourceBundleEditor extends MultiPageEditorPart
      */
     @Override
     public void doSave(IProgressMonitor monitor) {
-        KeyTree keyTree = resourceMediator.getKeyTree();
-        String key = keyTree.getSelectedKey();
-
         i18nPage.refreshEditorOnChanges();
         resourceMediator.save(monitor);
-        
-        keyTree.setUpdater(keyTree.getUpdater());
-        if (key != null)
-            keyTree.selectKey(key);
+        resourceMediator.getKeyTree().reconcile();
     }
     
     @Override
@@ -267,6 +272,39 @@ public class ResourceBundleEditor extends MultiPageEditorPart
         }
     }
 
+    /**
+     * Shows a search match in the internationalization page.
+     * @param match search match
+     */
+    public void showMatch(SearchMatch match) {
+        if (getActivePage() != 0) {
+            setActivePage(0);
+        }
+        i18nPage.selectMatch(match);
+    }
+
+    /**
+     * Replaces all matches of a query in the values and comments of
+     * locales which are not read-only, in one batch of modifications.
+     * @param query search query
+     * @param replacement replacement string, with <code>$n</code> group
+     *        references for regular expression queries
+     * @return number of modified entries
+     */
+    public int replaceAll(SearchQuery query, String replacement) {
+        i18nPage.refreshEditorOnChanges();
+        List<Locale> locales = new ArrayList<>();
+        for (SourceEditor editor : resourceMediator.getSourceEditors()) {
+            if (!editor.isReadOnly()) {
+                locales.add(editor.getLocale());
+            }
+        }
+        int count = new BundleGroupSearcher(resourceMediator.getBundleGroup())
+                .replaceAll(query, locales, replacement, query.isRegex());
+        i18nPage.refreshTextBoxes();
+        return count;
+    }
+
     @Override
     public void gotoMarker(IMarker marker) {
         IPath markerPath = marker.getResource().getProjectRelativePath();
@@ -306,6 +344,12 @@ public class ResourceBundleEditor extends MultiPageEditorPart
         
         if (newPageIndex == getPageCount()-1) // switched to last page
             return;
+
+        if (getControl(newPageIndex) == gridPage) { // switched to grid page
+            resourceMediator.reloadProperties();
+            lastEditor = null;
+            return;
+        }
         
         int editorIndex = newPageIndex - 1; // adjust because first page is tree page        
         if (editorIndex >= 0 && editorIndex < resourceMediator.getSourceEditors().length) {
@@ -355,6 +399,9 @@ public class ResourceBundleEditor extends MultiPageEditorPart
         if (i18nPage != null) {
             i18nPage.dispose();
         }
+        if (gridPage != null) {
+            gridPage.dispose();
+        }
         if (newLocalePage != null) {
             newLocalePage.dispose();
         }
@@ -370,20 +417,40 @@ public class ResourceBundleEditor extends MultiPageEditorPart
 
         ResourcesPlugin.getWorkspace().removeResourceChangeListener(
                 resourceChangeListener);
+        resourceMediator.dispose();
         super.dispose();
     }
 
+    /**
+     * Reloads the properties files changed on disk, ignoring changes
+     * other than to their content (markers, properties...).
+     */
     private class ResourceChangeListener implements IResourceChangeListener {
+      private static final int RELOAD_FLAGS = IResourceDelta.CONTENT
+              | IResourceDelta.REPLACED | IResourceDelta.ENCODING;
       @Override
       public void resourceChanged( IResourceChangeEvent event ) {
-         boolean deltaFound = false;
-         for ( IPath path : paths ) {
-            IResourceDelta delta = event.getDelta().findMember(path);
-            deltaFound |= delta!= null;
+         IResourceDelta rootDelta = event.getDelta();
+         if ( rootDelta == null ) {
+            return;
          }
-         if ( deltaFound ) {
-            resourceMediator.reloadProperties();
-            i18nPage.refreshTextBoxes();
+         List<IFile> files = new ArrayList<>();
+         SourceEditor[] sourceEditors = resourceMediator.getSourceEditors();
+         for ( int i = 0; i < sourceEditors.length; i++ ) {
+            IFile file = sourceEditors[i].getFile();
+            IResourceDelta delta = rootDelta.findMember(file.getFullPath());
+            if ( delta != null && ( delta.getKind() == IResourceDelta.ADDED
+                    || ( delta.getKind() == IResourceDelta.CHANGED
+                            && ( delta.getFlags() & RELOAD_FLAGS ) != 0 ) ) ) {
+               files.add(file);
+            }
+         }
+         if ( !files.isEmpty() ) {
+            resourceMediator.reloadFiles(files, new Runnable() {
+               public void run() {
+                  i18nPage.refreshTextBoxes();
+               }
+            });
          }
       }
    }
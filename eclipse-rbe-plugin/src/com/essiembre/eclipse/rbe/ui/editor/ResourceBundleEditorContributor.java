@@ -15,11 +15,13 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor;
 
+import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.action.IMenuManager;
 import org.eclipse.jface.action.IToolBarManager;
 import org.eclipse.ui.IActionBars;
 import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IWorkbenchActionConstants;
 import org.eclipse.ui.actions.ActionFactory;
 import org.eclipse.ui.ide.IDEActionFactory;
 import org.eclipse.ui.part.MultiPageEditorActionBarContributor;
@@ -27,6 +29,7 @@ import org.eclipse.ui.texteditor.ITextEditor;
 import org.eclipse.ui.texteditor.ITextEditorActionConstants;
 import org.eclipse.ui.texteditor.IWorkbenchActionDefinitionIds;
 
+import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.I18nPageEditor;
 
 /**
@@ -39,6 +42,8 @@ import com.essiembre.eclipse.rbe.ui.editor.i18n.I18nPageEditor;
 public class ResourceBundleEditorContributor 
         extends MultiPageEditorActionBarContributor {
     private IEditorPart activeEditorPart;
+    /** "Find all" of the internationalization page, when active. */
+    private IAction findAllAction;
     /**
      * Creates a multi-page contributor.
      */
@@ -67,6 +72,7 @@ public class ResourceBundleEditorContributor
             return;
 
         activeEditorPart = part;
+        findAllAction.setEnabled(part instanceof I18nPageEditor);
 
         IActionBars actionBars = getActionBars();
         if (actionBars != null) {
@@ -128,6 +134,15 @@ public class ResourceBundleEditorContributor
         }
     }
     private void createActions() {
+        findAllAction = new Action(RBEPlugin.getString("search.findAll")) {
+            public void run() {
+                if (activeEditorPart instanceof I18nPageEditor) {
+                    ((I18nPageEditor) activeEditorPart)
+                            .getFindAllAction().run();
+                }
+            }
+        };
+        findAllAction.setEnabled(false);
 //        sampleAction = new Action() {
 //            public void run() {
 //                MessageDialog.openInformation(null,
@@ -142,6 +157,12 @@ public class ResourceBundleEditorContributor
     }
     @Override
     public void contributeToMenu(IMenuManager manager) {
+        IMenuManager editMenu = manager.findMenuUsingPath(
+                IWorkbenchActionConstants.M_EDIT);
+        if (editMenu != null) {
+            editMenu.appendToGroup(
+                    IWorkbenchActionConstants.FIND_EXT, findAllAction);
+        }
 //        IMenuManager menu = new MenuManager("Editor &Menu");
 //        manager.prependToGroup(IWorkbenchActionConstants.MB_ADDITIONS, menu);
 //        menu.add(sampleAction);
@@ -0,0 +1,593 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.TableEditor;
+import org.eclipse.swt.dnd.Clipboard;
+import org.eclipse.swt.dnd.TextTransfer;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Menu;
+import org.eclipse.swt.widgets.MenuItem;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.DeltaEvent;
+import com.essiembre.eclipse.rbe.model.IDeltaListener;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.ui.UIUtils;
+import com.essiembre.eclipse.rbe.ui.editor.resources.ResourceManager;
+import com.essiembre.eclipse.rbe.ui.editor.resources.SourceEditor;
+
+/**
+ * Page showing all keys of a resource bundle at once, with keys as rows
+ * and locales as columns.  The table is virtual: cells are only rendered
+ * when shown.  Values are edited in place, and blocks of values pasted
+ * from the clipboard (tab-separated columns, one row per line) are applied
+ * as a single model batch.
+ */
+public class GridPage extends Composite {
+
+    /** Rows sorted by key. */
+    private static final int SORT_KEY = 0;
+    /** Rows sorted by number of values. */
+    private static final int SORT_COMPLETENESS = 1;
+
+    /** Index of the first locale column. */
+    private static final int FIRST_LOCALE_COLUMN = 2;
+    /** Initial width of locale columns. */
+    private static final int LOCALE_COLUMN_WIDTH = 200;
+    /** Maximum number of characters rendered in a cell. */
+    private static final int MAX_CELL_LENGTH = 200;
+
+    private final ResourceManager resourceManager;
+    private final BundleGroup bundleGroup;
+    private final Table table;
+    private final TableEditor tableEditor;
+    private final IDeltaListener bundleGroupListener;
+
+    /** Locales of the locale columns. */
+    private List<Locale> locales = new ArrayList<>();
+    /** Widths of hidden locale columns (key=Locale). */
+    private final Map<Locale, Integer> hiddenWidths = new HashMap<>();
+    /** Keys, in row order. */
+    /*default*/ String[] rows = new String[0];
+    private int sortMode = SORT_KEY;
+    private int sortDirection = SWT.UP;
+    /** Column last clicked, where values get edited or pasted. */
+    /*default*/ int focusColumn = FIRST_LOCALE_COLUMN;
+    /** Whether rows must be refreshed. */
+    /*default*/ boolean refreshPending;
+
+    /**
+     * Constructor.
+     * @param parent parent component
+     * @param resourceManager resource manager
+     */
+    public GridPage(Composite parent, ResourceManager resourceManager) {
+        super(parent, SWT.NONE);
+        this.resourceManager = resourceManager;
+        this.bundleGroup = resourceManager.getBundleGroup();
+        setLayout(new FillLayout());
+
+        table = new Table(this, SWT.VIRTUAL | SWT.MULTI
+                | SWT.FULL_SELECTION | SWT.BORDER);
+        table.setHeaderVisible(true);
+        table.setLinesVisible(true);
+        tableEditor = new TableEditor(table);
+        tableEditor.grabHorizontal = true;
+        tableEditor.grabVertical = true;
+
+        Listener tableListener = new Listener() {
+            public void handleEvent(Event event) {
+                switch (event.type) {
+                case SWT.SetData:
+                    renderItem((TableItem) event.item, event.index);
+                    break;
+                case SWT.MouseDown:
+                    updateFocusColumn(new Point(event.x, event.y));
+                    break;
+                case SWT.Selection:
+                    int index = table.getSelectionIndex();
+                    if (index != -1) {
+                        GridPage.this.resourceManager.getKeyTree().selectKey(
+                                rows[index]);
+                    }
+                    break;
+                case SWT.DefaultSelection:
+                    editSelection();
+                    break;
+                case SWT.KeyDown:
+                    if (event.keyCode == SWT.F2) {
+                        editSelection();
+                    } else if (event.keyCode == 'v'
+                            && (event.stateMask & SWT.MOD1) != 0) {
+                        pasteValues();
+                    }
+                    break;
+                }
+            }
+        };
+        table.addListener(SWT.SetData, tableListener);
+        table.addListener(SWT.MouseDown, tableListener);
+        table.addListener(SWT.Selection, tableListener);
+        table.addListener(SWT.DefaultSelection, tableListener);
+        table.addListener(SWT.KeyDown, tableListener);
+
+        final Menu columnMenu = new Menu(table);
+        columnMenu.addListener(SWT.Show, new Listener() {
+            public void handleEvent(Event event) {
+                fillColumnMenu(columnMenu);
+            }
+        });
+        table.setMenu(columnMenu);
+
+        // rows get refreshed once shown
+        addListener(SWT.Show, new Listener() {
+            public void handleEvent(Event event) {
+                if (refreshPending) {
+                    refresh();
+                }
+            }
+        });
+
+        bundleGroupListener = new IDeltaListener() {
+            public void add(DeltaEvent event) {
+                scheduleRefresh();
+            }
+            public void remove(DeltaEvent event) {
+                scheduleRefresh();
+            }
+            public void modify(DeltaEvent event) {
+                scheduleRefresh();
+            }
+            public void select(DeltaEvent event) {
+            }
+        };
+        bundleGroup.addListener(bundleGroupListener);
+
+        createColumns();
+        refresh();
+    }
+
+    /**
+     * Recreates the columns, after locales were added, and refreshes rows.
+     */
+    public void refreshPage() {
+        createColumns();
+        refresh();
+    }
+
+    /**
+     * Reloads keys and sorts them, and clears rendered rows.
+     */
+    public void refresh() {
+        refreshPending = false;
+        Set<String> selectedKeys = new HashSet<>();
+        for (int index : table.getSelectionIndices()) {
+            selectedKeys.add(rows[index]);
+        }
+
+        SortedSet<String> keys = bundleGroup.getKeys();
+        rows = keys.toArray(new String[keys.size()]);
+        sortRows();
+        table.setItemCount(rows.length);
+        table.clearAll();
+
+        if (!selectedKeys.isEmpty()) {
+            int[] selection = new int[selectedKeys.size()];
+            int count = 0;
+            for (int i = 0; i < rows.length && count < selection.length; i++) {
+                if (selectedKeys.contains(rows[i])) {
+                    selection[count++] = i;
+                }
+            }
+            table.setSelection(Arrays.copyOf(selection, count));
+        }
+    }
+
+    /**
+     * Refreshes rows later, once for many model changes, and only if this
+     * page is shown.
+     */
+    /*default*/ void scheduleRefresh() {
+        if (refreshPending || isDisposed()) {
+            return;
+        }
+        refreshPending = true;
+        getDisplay().asyncExec(new Runnable() {
+            public void run() {
+                if (!isDisposed() && refreshPending && isVisible()) {
+                    refresh();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sorts rows by key (keys are already sorted) or by number of values.
+     * Keys with as many values remain sorted by key.
+     */
+    private void sortRows() {
+        if (sortMode == SORT_COMPLETENESS) {
+            // value count in upper bits, key index in lower bits
+            long[] ranks = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                ranks[i] = ((long) bundleGroup.getValueCount(rows[i]) << 32)
+                        | i;
+            }
+            Arrays.sort(ranks);
+            String[] sortedRows = new String[rows.length];
+            for (int i = 0; i < ranks.length; i++) {
+                sortedRows[i] = rows[(int) ranks[i]];
+            }
+            rows = sortedRows;
+        }
+        if (sortDirection == SWT.DOWN) {
+            for (int i = 0, j = rows.length - 1; i < j; i++, j--) {
+                String row = rows[i];
+                rows[i] = rows[j];
+                rows[j] = row;
+            }
+        }
+    }
+
+    /**
+     * Creates the key, completeness and locale columns.
+     */
+    private void createColumns() {
+        for (TableColumn column : table.getColumns()) {
+            column.dispose();
+        }
+        locales = new ArrayList<>(resourceManager.getLocales());
+        TableColumn keyColumn = createSortColumn(
+                RBEPlugin.getString("editor.grid.key"), 250, SORT_KEY);
+        createSortColumn(RBEPlugin.getString("editor.grid.values"),
+                60, SORT_COMPLETENESS);
+        for (Locale locale : locales) {
+            TableColumn column = new TableColumn(table, SWT.LEFT);
+            column.setText(UIUtils.getDisplayName(locale));
+            if (hiddenWidths.containsKey(locale)) {
+                column.setWidth(0);
+                column.setResizable(false);
+            } else {
+                column.setWidth(LOCALE_COLUMN_WIDTH);
+            }
+        }
+        if (sortMode == SORT_KEY) {
+            table.setSortColumn(keyColumn);
+        } else {
+            table.setSortColumn(table.getColumn(1));
+        }
+        table.setSortDirection(sortDirection);
+    }
+
+    /**
+     * Creates a column sorting rows when clicked.
+     * @param text column title
+     * @param width column width
+     * @param mode sort mode
+     * @return the column
+     */
+    private TableColumn createSortColumn(
+            String text, int width, final int mode) {
+        final TableColumn column = new TableColumn(table, SWT.LEFT);
+        column.setText(text);
+        column.setWidth(width);
+        column.addListener(SWT.Selection, new Listener() {
+            public void handleEvent(Event event) {
+                if (sortMode == mode) {
+                    sortDirection = sortDirection == SWT.UP ? SWT.DOWN : SWT.UP;
+                } else {
+                    sortMode = mode;
+                    sortDirection = SWT.UP;
+                }
+                table.setSortColumn(column);
+                table.setSortDirection(sortDirection);
+                refresh();
+            }
+        });
+        return column;
+    }
+
+    /**
+     * Fills the menu showing or hiding locale columns.
+     * @param menu the menu
+     */
+    /*default*/ void fillColumnMenu(Menu menu) {
+        for (MenuItem item : menu.getItems()) {
+            item.dispose();
+        }
+        for (int i = 0; i < locales.size(); i++) {
+            final int localeIndex = i;
+            final MenuItem item = new MenuItem(menu, SWT.CHECK);
+            item.setText(UIUtils.getDisplayName(locales.get(i)));
+            item.setSelection(!hiddenWidths.containsKey(locales.get(i)));
+            item.addListener(SWT.Selection, new Listener() {
+                public void handleEvent(Event event) {
+                    setLocaleColumnVisible(localeIndex, item.getSelection());
+                }
+            });
+        }
+    }
+
+    /**
+     * Shows or hides a locale column.  Hidden columns are not rendered.
+     * @param localeIndex index of the column locale
+     * @param visible whether to show the column
+     */
+    /*default*/ void setLocaleColumnVisible(int localeIndex, boolean visible) {
+        Locale locale = locales.get(localeIndex);
+        TableColumn column = table.getColumn(FIRST_LOCALE_COLUMN + localeIndex);
+        if (visible) {
+            Integer width = hiddenWidths.remove(locale);
+            if (width != null) {
+                column.setWidth(width);
+                column.setResizable(true);
+                table.clearAll();
+            }
+        } else if (!hiddenWidths.containsKey(locale)) {
+            hiddenWidths.put(locale, column.getWidth());
+            column.setWidth(0);
+            column.setResizable(false);
+        }
+    }
+
+    /**
+     * Renders a row on demand.
+     * @param item table item
+     * @param index row index
+     */
+    /*default*/ void renderItem(TableItem item, int index) {
+        String key = rows[index];
+        item.setText(0, key);
+        item.setText(1, bundleGroup.getValueCount(key) + "/" + locales.size());
+        for (int i = 0; i < locales.size(); i++) {
+            Locale locale = locales.get(i);
+            if (hiddenWidths.containsKey(locale)) {
+                continue;
+            }
+            BundleEntry entry = bundleGroup.getBundleEntry(locale, key);
+            if (entry != null && entry.getValue() != null) {
+                int column = FIRST_LOCALE_COLUMN + i;
+                item.setText(column, getCellText(entry.getValue()));
+                if (entry.isCommented()) {
+                    item.setForeground(column,
+                            getDisplay().getSystemColor(SWT.COLOR_GRAY));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the text rendered for a value: on one line, and truncated.
+     * @param value value
+     * @return cell text
+     */
+    private static String getCellText(String value) {
+        if (value.length() > MAX_CELL_LENGTH) {
+            value = value.substring(0, MAX_CELL_LENGTH) + "...";
+        }
+        return value.replace("\r\n", "\u21b5").replace('\n', '\u21b5')
+                .replace('\r', '\u21b5');
+    }
+
+    /**
+     * Remembers the column at a given point.
+     * @param point point in table
+     */
+    /*default*/ void updateFocusColumn(Point point) {
+        TableItem item = table.getItem(point);
+        if (item != null) {
+            for (int i = 0; i < table.getColumnCount(); i++) {
+                if (item.getBounds(i).contains(point)) {
+                    focusColumn = i;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Edits the value of the selected row in the focused column.
+     */
+    /*default*/ void editSelection() {
+        int index = table.getSelectionIndex();
+        if (index == -1 || focusColumn < FIRST_LOCALE_COLUMN
+                || focusColumn >= table.getColumnCount()) {
+            return;
+        }
+        final String key = rows[index];
+        final Locale locale = locales.get(focusColumn - FIRST_LOCALE_COLUMN);
+        if (hiddenWidths.containsKey(locale) || !isEditable(locale)) {
+            return;
+        }
+        table.showColumn(table.getColumn(focusColumn));
+        BundleEntry entry = bundleGroup.getBundleEntry(locale, key);
+
+        // Enter applies the value, Ctrl+Enter inserts a line break
+        final Text text = new Text(table, SWT.MULTI);
+        if (entry != null && entry.getValue() != null) {
+            text.setText(entry.getValue());
+        }
+        text.selectAll();
+        Listener textListener = new Listener() {
+            private boolean closed;
+            public void handleEvent(Event event) {
+                if (closed) {
+                    return;
+                }
+                if (event.type == SWT.FocusOut) {
+                    closed = true;
+                    applyValue(key, locale, text.getText());
+                    text.dispose();
+                } else if (event.detail == SWT.TRAVERSE_RETURN
+                        && (event.stateMask & SWT.MODIFIER_MASK) == 0) {
+                    closed = true;
+                    event.doit = false;
+                    applyValue(key, locale, text.getText());
+                    text.dispose();
+                    table.setFocus();
+                } else if (event.detail == SWT.TRAVERSE_ESCAPE) {
+                    closed = true;
+                    event.doit = false;
+                    text.dispose();
+                    table.setFocus();
+                }
+            }
+        };
+        text.addListener(SWT.FocusOut, textListener);
+        text.addListener(SWT.Traverse, textListener);
+        tableEditor.setEditor(text, table.getItem(index), focusColumn);
+        text.setFocus();
+    }
+
+    /**
+     * Pastes the clipboard text from the first selected row and the
+     * focused column on: lines go to subsequent rows, and tab-separated
+     * values to subsequent shown locale columns.
+     */
+    /*default*/ void pasteValues() {
+        int[] selection = table.getSelectionIndices();
+        if (selection.length == 0 || focusColumn < FIRST_LOCALE_COLUMN
+                || focusColumn >= table.getColumnCount()) {
+            return;
+        }
+        Clipboard clipboard = new Clipboard(getDisplay());
+        String contents;
+        try {
+            contents = (String) clipboard.getContents(
+                    TextTransfer.getInstance());
+        } finally {
+            clipboard.dispose();
+        }
+        if (contents == null || contents.length() == 0) {
+            return;
+        }
+        String[] lines = contents.split("\r\n|\r|\n", -1);
+        int lineCount = lines.length;
+        if (lines[lineCount - 1].length() == 0) {
+            lineCount--;
+        }
+        Arrays.sort(selection);
+        String[][] values = new String[lineCount][];
+        for (int i = 0; i < lineCount; i++) {
+            values[i] = lines[i].split("\t", -1);
+        }
+        setValues(selection[0], focusColumn - FIRST_LOCALE_COLUMN, values);
+    }
+
+    /**
+     * Sets the value of a key for a locale through the model batch API.
+     * @param key key
+     * @param locale locale
+     * @param value new value
+     */
+    /*default*/ void applyValue(String key, Locale locale, String value) {
+        bundleGroup.beginBatch();
+        try {
+            setValue(key, locale, value);
+        } finally {
+            bundleGroup.endBatch();
+        }
+    }
+
+    /**
+     * Sets values of consecutive rows, starting at a row and a locale
+     * column, in a single model batch.  Values for hidden columns or
+     * read-only locales are skipped.
+     * @param row first row
+     * @param localeIndex index of first locale column
+     * @param values values, by row and by shown locale column
+     */
+    private void setValues(int row, int localeIndex, String[][] values) {
+        bundleGroup.beginBatch();
+        try {
+            for (int i = 0; i < values.length && row + i < rows.length; i++) {
+                int column = localeIndex;
+                for (int j = 0; j < values[i].length; j++) {
+                    while (column < locales.size()
+                            && hiddenWidths.containsKey(locales.get(column))) {
+                        column++;
+                    }
+                    if (column >= locales.size()) {
+                        break;
+                    }
+                    setValue(rows[row + i], locales.get(column), values[i][j]);
+                    column++;
+                }
+            }
+        } finally {
+            bundleGroup.endBatch();
+        }
+    }
+
+    /**
+     * Sets the value of a key for a locale, if changed and editable.
+     * @param key key
+     * @param locale locale
+     * @param value new value
+     */
+    private void setValue(String key, Locale locale, String value) {
+        if (!isEditable(locale)) {
+            return;
+        }
+        BundleEntry entry = bundleGroup.getBundleEntry(locale, key);
+        String oldValue = entry == null || entry.getValue() == null
+                ? "" : entry.getValue();
+        if (!oldValue.equals(value)) {
+            bundleGroup.addBundleEntry(locale, new BundleEntry(key, value,
+                    entry == null ? null : entry.getComment(),
+                    entry != null && entry.isCommented()));
+        }
+    }
+
+    /**
+     * Checks whether values of a locale can be edited.
+     * @param locale locale
+     * @return <code>true</code> if editable
+     */
+    private boolean isEditable(Locale locale) {
+        SourceEditor sourceEditor = resourceManager.getSourceEditor(locale);
+        return sourceEditor != null && !sourceEditor.isReadOnly();
+    }
+
+    /**
+     * @see org.eclipse.swt.widgets.Widget#dispose()
+     */
+    public void dispose() {
+        bundleGroup.removeListener(bundleGroupListener);
+        super.dispose();
+    }
+}
@@ -16,7 +16,6 @@
 package com.essiembre.eclipse.rbe.ui.editor.i18n;
 
 import java.awt.ComponentOrientation;
-import java.awt.GraphicsEnvironment;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -78,7 +77,7 @@ import com.essiembre.eclipse.rbe.ui.editor.resources.SourceEditor;
 public class BundleEntryComposite extends Composite {
 
    /*default*/ final ResourceManager resourceManager;
-    /*default*/ final Locale locale;
+    /*default*/ Locale locale;
     /*default*/ final I18nPage page;
     private final Font boldFont;
     private final Font smallFont;
@@ -86,6 +85,9 @@ public class BundleEntryComposite extends Composite {
 //    /*default*/ Text textBox;
     private ITextViewer textViewer;
     private IUndoManager undoManager;
+
+    private Label txtLabel;
+    private Label imgLabel;
     
     private Button commentedCheckbox;
     private Button gotoButton;
@@ -198,6 +200,25 @@ public class BundleEntryComposite extends Composite {
         return locale;
     }
 
+    /**
+     * Binds this bundle entry section to another locale, so it can be
+     * reused instead of creating a new one.  Pending changes should be
+     * applied beforehand and the section refreshed afterwards.
+     * @param locale the new locale
+     */
+    /*default*/ void setLocale(Locale locale) {
+        if (locale == null ? this.locale == null : locale.equals(this.locale)) {
+            return;
+        }
+        this.locale = locale;
+        activeKey = null;
+        txtLabel.setText(" " + UIUtils.getDisplayName(locale) + " ");
+        imgLabel.setImage(loadCountryIcon(locale));
+        textViewer.getTextWidget().setOrientation(getOrientation(locale));
+        undoManager.reset();
+        txtLabel.getParent().layout(true);
+    }
+
     /**
      * Sets a selection in the text box.
      * @param start starting position to select
@@ -274,7 +295,8 @@ public class BundleEntryComposite extends Composite {
         }
         BundleGroup bundleGroup = resourceManager.getBundleGroup();
         if (similarVisitor == null) {
-            similarVisitor = new SimilarValuesVisitor();
+            similarVisitor = new SimilarValuesVisitor(
+                    RBEPreferences.getReportSimilarValuesPrecision());
         }
         similarVisitor.setProximityAnalyzer(analyzer);
         similarVisitor.clear();
@@ -312,7 +334,7 @@ public class BundleEntryComposite extends Composite {
                 new GridData(GridData.FILL_HORIZONTAL));
 
         // Locale text
-        Label txtLabel = new Label(labelComposite, SWT.NONE);
+        txtLabel = new Label(labelComposite, SWT.NONE);
         txtLabel.setText(" " + 
                 UIUtils.getDisplayName(locale) + " ");
         txtLabel.setFont(boldFont);
@@ -392,7 +414,7 @@ public class BundleEntryComposite extends Composite {
         // Country flag
         gridData = new GridData();
         gridData.horizontalAlignment = GridData.END;
-        Label imgLabel = new Label(labelComposite, SWT.NONE);
+        imgLabel = new Label(labelComposite, SWT.NONE);
         imgLabel.setLayoutData(gridData);
         imgLabel.setImage(loadCountryIcon(locale));
 
@@ -641,7 +663,8 @@ public class BundleEntryComposite extends Composite {
               _oldText=text;
               
               Font f = textBox.getFont();
-              String fontName = getBestFont(f.getFontData()[0].getName(), text);
+              String fontName = FontCoverageCache.getInstance().getBestFont(
+                      f.getFontData()[0].getName(), text);
               if ( fontName != null ) {
                  f = getSWTFont(f, fontName);
                  textBox.setFont(f);
@@ -758,52 +781,6 @@ public class BundleEntryComposite extends Composite {
         }
         return font;
     }    
-    /**
-     * Gets the name of the font which will be the best to display a String.
-     * All installed fonts are searched. If a font can display the entire 
-     * string, then it is retuned immediately.
-     * Otherwise, the font returned is the one which can display properly the 
-     * longest substring possible from the argument value. 
-     * @param baseFontName a font to be tested before any other. It will be 
-     * the current font used by a widget.
-     * @param value the string to be displayed.
-     * @return a font name
-     */
-    private static String getBestFont(String baseFontName, String value){
-        if(canFullyDisplay(baseFontName, value)) return baseFontName;
-        String[] fonts = getAvailableFontNames();
-        String fontName=null;
-        int currentScore = 0;
-        for (int i = 0; i < fonts.length; i++) {
-            int score = canDisplayUpTo(fonts[i], value);
-            if(score==-1){//no need to loop further
-                fontName=fonts[i];
-                break;
-            }
-            if(score>currentScore){
-                fontName=fonts[i];
-                currentScore = score;
-            }
-        }
-
-        return fontName;
-    }
-
-   private static String[] getAvailableFontNames() {
-      if ( _fontFamilyNames == null ) {
-         String[] fontFamilyNames = GraphicsEnvironment
-                 .getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
-         _fontFamilyNames = fontFamilyNames;
-      }
-      return _fontFamilyNames;
-   }
-
-   /**
-     * A cache holding an instance of every AWT font tested.
-     */
-    private static Map<String, java.awt.Font> awtFontCache = new HashMap<>();
-    private static String[] _fontFamilyNames;
-
     /**
      * Creates a variation from an original font, by changing the face name.
      * @param baseFont the original font
@@ -818,45 +795,6 @@ public class BundleEntryComposite extends Composite {
         }
         return new Font(display, fontData);
     }
-    /**
-     * Can a font display correctly an entire string ?
-     * @param fontName the font name
-     * @param value the string to be displayed
-     * @return 
-     */
-    private static boolean canFullyDisplay(String fontName, String value){
-        return canDisplayUpTo(fontName, value)==-1;
-    }
-
-    /**
-     * Test the number of characters from a given String that a font can 
-     * display correctly.
-     * @param fontName the name of the font
-     * @param value the value to be displayed
-     * @return the number of characters that can be displayed, or -1 if the 
-     * entire string can be displayed successfuly.
-     * @see java.aw.Font#canDisplayUpTo(String)
-     */
-    private static int canDisplayUpTo(String fontName, String value){
-        java.awt.Font font = getAWTFont(fontName);
-        return font.canDisplayUpTo(value);
-    }
-    /**
-     * Returns a cached or new AWT font by its name.
-     * If the font needs to be created, its style will be Font.PLAIN and its 
-     * size will be 12.
-     * @param name teh font name
-     * @return an AWT Font
-     */
-    private static java.awt.Font getAWTFont(String name){
-        java.awt.Font font = (java.awt.Font) awtFontCache.get(name);
-        if(font==null){
-            font = new java.awt.Font(name, java.awt.Font.PLAIN, 12);
-            awtFontCache.put(name, font);
-        }
-        return font;
-    }
-
     /**
      * Gets the orientation suited for a given locale.
      * @param locale the locale
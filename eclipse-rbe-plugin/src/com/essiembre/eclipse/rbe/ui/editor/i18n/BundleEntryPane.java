@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.ScrolledComposite;
+import org.eclipse.swt.events.FocusListener;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+import com.essiembre.eclipse.rbe.ui.editor.resources.ResourceManager;
+
+/**
+ * Content of the scrolled editing part of the internationalization page.
+ * Each locale gets a slot, but bundle entry sections are only created for
+ * the slots in view.  As the pane scrolls, sections leaving the view are
+ * bound to the locales entering it, and refreshed with the selected key
+ * only then.  The focused section is kept until it loses focus.
+ */
+/*default*/ class BundleEntryPane extends Composite {
+
+    /** Margin around the slots. */
+    private static final int MARGIN = 5;
+    /** Space between two slots. */
+    private static final int SPACING = 5;
+
+    private final ScrolledComposite scrolledComposite;
+    private final ResourceManager resourceManager;
+    private final I18nPage page;
+    private final FocusListener focusListener;
+    private final List<Locale> locales;
+
+    /** Bundle entry sections in use, by locale index. */
+    private final Map<Integer, BundleEntryComposite> boundEntries =
+            new HashMap<>();
+    /** Bundle entry sections not in use. */
+    private final List<BundleEntryComposite> spareEntries = new ArrayList<>();
+
+    /** Height of a slot, including spacing. */
+    private int slotHeight;
+    /** Preferred width of bundle entry sections. */
+    private int entryWidth;
+    /** Key shown in bundle entry sections. */
+    private String key;
+    /** Whether bundle entry sections are being bound. */
+    private boolean updating;
+
+    /**
+     * Constructor.
+     * @param scrolledComposite scrolled composite showing this pane
+     * @param resourceManager resource manager
+     * @param page internationalization page
+     * @param focusListener listener added to each bundle entry section
+     */
+    /*default*/ BundleEntryPane(ScrolledComposite scrolledComposite,
+            ResourceManager resourceManager, I18nPage page,
+            FocusListener focusListener) {
+        super(scrolledComposite, SWT.BORDER);
+        this.scrolledComposite = scrolledComposite;
+        this.resourceManager = resourceManager;
+        this.page = page;
+        this.focusListener = focusListener;
+        this.locales = resourceManager.getLocales();
+        this.slotHeight = RBEPreferences.getMinHeight();
+
+        scrolledComposite.setContent(this);
+        updateMinSize();
+
+        // scrolling moves this pane within the scrolled composite
+        Listener listener = new Listener() {
+            public void handleEvent(Event event) {
+                if (event.type == SWT.Resize) {
+                    int height = getSize().y - 2 * MARGIN;
+                    slotHeight = Math.max(RBEPreferences.getMinHeight(),
+                            height / Math.max(1, locales.size()));
+                }
+                updateEntries();
+            }
+        };
+        addListener(SWT.Resize, listener);
+        addListener(SWT.Move, listener);
+    }
+
+    /**
+     * Refreshes the bundle entry sections in view with the given key.
+     * Sections bound later get refreshed when bound.
+     * @param key key used to grab values
+     */
+    /*default*/ void refresh(String key) {
+        this.key = key;
+        for (BundleEntryComposite entry : boundEntries.values()) {
+            entry.refresh(key);
+        }
+    }
+
+    /**
+     * Gets the index of the locale a bundle entry section is bound to.
+     * @param entry bundle entry section
+     * @return locale index, or -1 if the section is not bound
+     */
+    /*default*/ int indexOf(BundleEntryComposite entry) {
+        if (entry == null || !boundEntries.containsValue(entry)) {
+            return -1;
+        }
+        return locales.indexOf(entry.getLocale());
+    }
+
+    /**
+     * Gets the number of locale slots.
+     * @return number of locales
+     */
+    /*default*/ int getLocaleCount() {
+        return locales.size();
+    }
+
+    /**
+     * Scrolls a locale slot in view, binding a bundle entry section to it
+     * if needed.
+     * @param locale locale to show
+     * @return the bundle entry section bound to the locale, or
+     *         <code>null</code> if there is no such locale
+     */
+    /*default*/ BundleEntryComposite reveal(Locale locale) {
+        return reveal(locales.indexOf(locale));
+    }
+
+    /**
+     * Scrolls a locale slot in view, binding a bundle entry section to it
+     * if needed.
+     * @param index locale index
+     * @return the bundle entry section bound to the locale, or
+     *         <code>null</code> if there is no such locale
+     */
+    /*default*/ BundleEntryComposite reveal(int index) {
+        if (index < 0 || index >= locales.size()) {
+            return null;
+        }
+        int top = MARGIN + index * slotHeight;
+        int bottom = top + slotHeight - SPACING;
+        int viewHeight = scrolledComposite.getClientArea().height;
+        Point origin = scrolledComposite.getOrigin();
+        if (bottom > origin.y + viewHeight) {
+            scrolledComposite.setOrigin(
+                    origin.x, bottom - viewHeight + MARGIN);
+        } else if (top < origin.y) {
+            scrolledComposite.setOrigin(origin.x, top);
+        }
+        updateEntries();
+        return boundEntries.get(index);
+    }
+
+    /**
+     * Binds bundle entry sections to the locales in view, recycling the
+     * ones no longer in view, and positions them.
+     */
+    private void updateEntries() {
+        if (locales.isEmpty() || updating) {
+            return;
+        }
+        updating = true;
+        int viewTop = scrolledComposite.getOrigin().y;
+        int viewHeight = scrolledComposite.getClientArea().height;
+        int first = Math.max(0, (viewTop - MARGIN) / slotHeight);
+        int last = Math.min(locales.size() - 1,
+                (viewTop + viewHeight - MARGIN) / slotHeight);
+
+        for (Iterator<Map.Entry<Integer, BundleEntryComposite>> iter =
+                boundEntries.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<Integer, BundleEntryComposite> bound = iter.next();
+            int index = bound.getKey();
+            BundleEntryComposite entry = bound.getValue();
+            if ((index < first || index > last) && entry != page.activeEntry) {
+                entry.updateBundleOnChanges();
+                entry.setVisible(false);
+                spareEntries.add(entry);
+                iter.remove();
+            }
+        }
+        for (int index = first; index <= last; index++) {
+            if (!boundEntries.containsKey(index)) {
+                boundEntries.put(index, bindEntry(locales.get(index)));
+            }
+        }
+
+        int width = getClientArea().width - 2 * MARGIN;
+        for (Map.Entry<Integer, BundleEntryComposite> bound :
+                boundEntries.entrySet()) {
+            bound.getValue().setBounds(MARGIN,
+                    MARGIN + bound.getKey() * slotHeight,
+                    width, slotHeight - SPACING);
+        }
+        updating = false;
+        updateMinSize();
+    }
+
+    /**
+     * Gets a bundle entry section for a locale, reusing a spare one if any.
+     * @param locale locale
+     * @return refreshed bundle entry section
+     */
+    private BundleEntryComposite bindEntry(Locale locale) {
+        BundleEntryComposite entry;
+        if (spareEntries.isEmpty()) {
+            entry = new BundleEntryComposite(
+                    this, resourceManager, locale, page);
+            entry.addFocusListener(focusListener);
+            entryWidth = Math.max(entryWidth,
+                    entry.computeSize(SWT.DEFAULT, SWT.DEFAULT).x);
+        } else {
+            entry = spareEntries.remove(spareEntries.size() - 1);
+            entry.setLocale(locale);
+            entry.setVisible(true);
+        }
+        entry.refresh(key);
+        return entry;
+    }
+
+    /**
+     * Sizes the scrolled area so every locale gets a slot of at least
+     * the preferred minimum height.
+     */
+    private void updateMinSize() {
+        int minWidth = entryWidth + 2 * MARGIN;
+        int minHeight = locales.size() * RBEPreferences.getMinHeight()
+                + 2 * MARGIN;
+        if (minWidth != scrolledComposite.getMinWidth()
+                || minHeight != scrolledComposite.getMinHeight()) {
+            scrolledComposite.setMinSize(minWidth, minHeight);
+        }
+    }
+
+    /**
+     * @see org.eclipse.swt.widgets.Widget#dispose()
+     */
+    public void dispose() {
+        // bundle entry sections release their fonts on dispose
+        for (BundleEntryComposite entry : boundEntries.values()) {
+            entry.dispose();
+        }
+        for (BundleEntryComposite entry : spareEntries) {
+            entry.dispose();
+        }
+        boundEntries.clear();
+        spareEntries.clear();
+        super.dispose();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n;
+
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Group;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.search.SearchQuery;
+
+/**
+ * Dialog asking what to find in all keys, values and comments of a
+ * resource bundle.
+ */
+/*default*/ class FindAllDialog extends Dialog {
+
+    private SearchQuery query;
+
+    private Text findText;
+    private Button caseButton;
+    private Button wordButton;
+    private Button regexButton;
+    private Button keysButton;
+    private Button valuesButton;
+    private Button commentsButton;
+    private Label errorLabel;
+
+    /**
+     * Constructor.
+     * @param parentShell parent shell
+     * @param query initial query (can be <code>null</code>)
+     */
+    /*default*/ FindAllDialog(Shell parentShell, SearchQuery query) {
+        super(parentShell);
+        this.query = query;
+    }
+
+    /**
+     * Gets the query entered, once the dialog is closed with OK.
+     * @return search query
+     */
+    /*default*/ SearchQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * @see org.eclipse.jface.window.Window#configureShell(Shell)
+     */
+    protected void configureShell(Shell shell) {
+        super.configureShell(shell);
+        shell.setText(RBEPlugin.getString("search.dialog.title"));
+    }
+
+    /**
+     * @see Dialog#createDialogArea(Composite)
+     */
+    protected Control createDialogArea(Composite parent) {
+        Composite composite = (Composite) super.createDialogArea(parent);
+        composite.setLayout(new GridLayout(2, false));
+
+        new Label(composite, SWT.NONE).setText(
+                RBEPlugin.getString("search.dialog.find"));
+        findText = new Text(composite, SWT.BORDER);
+        GridData gd = new GridData(GridData.FILL_HORIZONTAL);
+        gd.widthHint = convertWidthInCharsToPixels(40);
+        findText.setLayoutData(gd);
+
+        Group options = new Group(composite, SWT.NONE);
+        options.setText(RBEPlugin.getString("search.dialog.options"));
+        options.setLayout(new GridLayout());
+        options.setLayoutData(new GridData(GridData.FILL_BOTH));
+        caseButton = createCheckbox(options, "search.dialog.case");
+        wordButton = createCheckbox(options, "search.dialog.word");
+        regexButton = createCheckbox(options, "search.dialog.regex");
+
+        Group scope = new Group(composite, SWT.NONE);
+        scope.setText(RBEPlugin.getString("search.dialog.scope"));
+        scope.setLayout(new GridLayout());
+        scope.setLayoutData(new GridData(GridData.FILL_BOTH));
+        keysButton = createCheckbox(scope, "search.dialog.keys");
+        valuesButton = createCheckbox(scope, "search.dialog.values");
+        commentsButton = createCheckbox(scope, "search.dialog.comments");
+
+        errorLabel = new Label(composite, SWT.NONE);
+        gd = new GridData(GridData.FILL_HORIZONTAL);
+        gd.horizontalSpan = 2;
+        errorLabel.setLayoutData(gd);
+
+        if (query != null) {
+            findText.setText(query.getFindString());
+            caseButton.setSelection(query.isCaseSensitive());
+            wordButton.setSelection(query.isWholeWord());
+            regexButton.setSelection(query.isRegex());
+            keysButton.setSelection(query.isInScope(SearchQuery.KEYS));
+            valuesButton.setSelection(query.isInScope(SearchQuery.VALUES));
+            commentsButton.setSelection(
+                    query.isInScope(SearchQuery.COMMENTS));
+        } else {
+            valuesButton.setSelection(true);
+        }
+        wordButton.setEnabled(!regexButton.getSelection());
+        findText.addModifyListener(new ModifyListener() {
+            public void modifyText(ModifyEvent event) {
+                validate();
+            }
+        });
+        return composite;
+    }
+
+    /**
+     * @see Dialog#createButtonsForButtonBar(Composite)
+     */
+    protected void createButtonsForButtonBar(Composite parent) {
+        super.createButtonsForButtonBar(parent);
+        validate();
+    }
+
+    /**
+     * Creates a checkbox revalidating the dialog when selected.
+     * @param parent parent composite
+     * @param labelKey key of the checkbox label
+     * @return checkbox
+     */
+    private Button createCheckbox(Composite parent, String labelKey) {
+        Button button = new Button(parent, SWT.CHECK);
+        button.setText(RBEPlugin.getString(labelKey));
+        button.addSelectionListener(new SelectionAdapter() {
+            public void widgetSelected(SelectionEvent event) {
+                wordButton.setEnabled(!regexButton.getSelection());
+                validate();
+            }
+        });
+        return button;
+    }
+
+    /**
+     * Creates the query from the dialog fields, enabling the OK button
+     * only if the query is valid.
+     */
+    private void validate() {
+        String error = null;
+        int scope = 0;
+        if (keysButton.getSelection()) {
+            scope |= SearchQuery.KEYS;
+        }
+        if (valuesButton.getSelection()) {
+            scope |= SearchQuery.VALUES;
+        }
+        if (commentsButton.getSelection()) {
+            scope |= SearchQuery.COMMENTS;
+        }
+        query = null;
+        if (findText.getText().length() > 0 && scope != 0) {
+            try {
+                query = new SearchQuery(findText.getText(),
+                        caseButton.getSelection(),
+                        wordButton.getSelection(),
+                        regexButton.getSelection(), scope);
+            } catch (PatternSyntaxException e) {
+                error = e.getDescription();
+            }
+        }
+        errorLabel.setText(error == null ? "" : error);
+        getButton(IDialogConstants.OK_ID).setEnabled(query != null);
+    }
+}
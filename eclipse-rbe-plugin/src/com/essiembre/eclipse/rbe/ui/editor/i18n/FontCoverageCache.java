@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n;
+
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.lang.Character.UnicodeScript;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+
+/**
+ * Knows which installed fonts can display which Unicode scripts.  How well
+ * each font covers each script is computed once, in the background, from a
+ * sample of the letters of the script.  The best font for a value is then
+ * found among the fonts covering the scripts present in the value, instead
+ * of trying every installed font.
+ */
+/*default*/ final class FontCoverageCache {
+
+    /** Maximum number of letters tested per script. */
+    private static final int SAMPLE_SIZE = 64;
+    /** Number of best covering fonts tried against a whole value. */
+    private static final int MAX_CANDIDATES = 5;
+
+    /** Shared instance. */
+    private static final FontCoverageCache INSTANCE = new FontCoverageCache();
+
+    /** AWT fonts tested so far (key=font name). */
+    private final Map<String, Font> awtFonts = new HashMap<>();
+    /** Best covering fonts, per set of scripts. */
+    private final Map<Set<UnicodeScript>, String[]> candidates =
+            new HashMap<>();
+    /** Installed font names, once computed. */
+    private volatile String[] fontNames;
+    /** Share of the sample each font displays, by font index, per script. */
+    private volatile Map<UnicodeScript, float[]> coverage;
+
+    /**
+     * Constructor.
+     */
+    private FontCoverageCache() {
+        super();
+        Job job = new Job(RBEPlugin.getString("font.coverage.job")) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                computeCoverage(monitor);
+                return monitor.isCanceled()
+                        ? Status.CANCEL_STATUS : Status.OK_STATUS;
+            }
+        };
+        job.setSystem(true);
+        job.setPriority(Job.DECORATE);
+        job.schedule();
+    }
+
+    /**
+     * Gets the shared instance, computing font coverage in the background
+     * on first access.
+     * @return font coverage cache
+     */
+    /*default*/ static FontCoverageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the name of the font which will be the best to display a string.
+     * The current font is kept if it can display the entire string.
+     * Otherwise, the fonts covering best the scripts of the string are
+     * tried, and the first one displaying the entire string is returned.
+     * @param baseFontName font currently used to display the string
+     * @param value the string to be displayed
+     * @return a font name, or <code>null</code> if coverage is not known
+     *         yet or no font covers the scripts of the string
+     */
+    /*default*/ String getBestFont(String baseFontName, String value) {
+        if (getAWTFont(baseFontName).canDisplayUpTo(value) == -1) {
+            return baseFontName;
+        }
+        if (coverage == null) {
+            return null;
+        }
+        String[] fonts = getCandidates(getScripts(value));
+        for (int i = 0; i < fonts.length && i < MAX_CANDIDATES; i++) {
+            if (getAWTFont(fonts[i]).canDisplayUpTo(value) == -1) {
+                return fonts[i];
+            }
+        }
+        return fonts.length > 0 ? fonts[0] : null;
+    }
+
+    /**
+     * Gets the scripts present in a string, ignoring characters shared by
+     * scripts (digits, punctuation, combining marks...).
+     * @param value a string
+     * @return scripts
+     */
+    /*default*/ static Set<UnicodeScript> getScripts(String value) {
+        Set<UnicodeScript> scripts = EnumSet.noneOf(UnicodeScript.class);
+        for (int i = 0; i < value.length();) {
+            int codePoint = value.codePointAt(i);
+            // ASCII letters are all Latin
+            if (codePoint >= 0x80 || Character.isLetter(codePoint)) {
+                UnicodeScript script = UnicodeScript.of(codePoint);
+                if (script != UnicodeScript.COMMON
+                        && script != UnicodeScript.INHERITED
+                        && script != UnicodeScript.UNKNOWN) {
+                    scripts.add(script);
+                }
+            }
+            i += Character.charCount(codePoint);
+        }
+        return scripts;
+    }
+
+    /**
+     * Gets the fonts covering a set of scripts, best first.
+     * @param scripts scripts to cover (not modified afterwards)
+     * @return font names
+     */
+    private synchronized String[] getCandidates(Set<UnicodeScript> scripts) {
+        String[] fonts = candidates.get(scripts);
+        if (fonts == null) {
+            final float[] scores = new float[fontNames.length];
+            for (UnicodeScript script : scripts) {
+                float[] scriptCoverage = coverage.get(script);
+                for (int i = 0; i < scores.length; i++) {
+                    scores[i] += scriptCoverage == null
+                            ? 0 : scriptCoverage[i];
+                }
+            }
+            // score in upper bits, font index in lower bits
+            long[] ranks = new long[scores.length];
+            int count = 0;
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] > 0) {
+                    long score = Math.round(scores[i] * 1000);
+                    ranks[count++] = (-score << 32) | i;
+                }
+            }
+            Arrays.sort(ranks, 0, count);
+            fonts = new String[count];
+            for (int i = 0; i < count; i++) {
+                fonts[i] = fontNames[(int) ranks[i]];
+            }
+            candidates.put(scripts, fonts);
+        }
+        return fonts;
+    }
+
+    /**
+     * Computes how well each installed font covers each script.
+     * @param monitor progress monitor
+     */
+    /*default*/ void computeCoverage(IProgressMonitor monitor) {
+        Map<UnicodeScript, int[]> samples = getSampleLetters();
+        String[] names = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getAvailableFontFamilyNames();
+        Map<UnicodeScript, float[]> scriptCoverage =
+                new EnumMap<>(UnicodeScript.class);
+        for (UnicodeScript script : samples.keySet()) {
+            scriptCoverage.put(script, new float[names.length]);
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (monitor.isCanceled()) {
+                return;
+            }
+            Font font = getAWTFont(names[i]);
+            for (Map.Entry<UnicodeScript, int[]> sample : samples.entrySet()) {
+                int[] letters = sample.getValue();
+                int displayed = 0;
+                for (int letter : letters) {
+                    if (font.canDisplay(letter)) {
+                        displayed++;
+                    }
+                }
+                scriptCoverage.get(sample.getKey())[i] =
+                        (float) displayed / letters.length;
+            }
+        }
+        fontNames = names;
+        coverage = scriptCoverage;
+    }
+
+    /**
+     * Picks letters of each script to test fonts with, evenly spread over
+     * the letters of the script in the basic multilingual plane.
+     * @return letters, per script
+     */
+    private static Map<UnicodeScript, int[]> getSampleLetters() {
+        UnicodeScript[] scripts = UnicodeScript.values();
+        int[] counts = new int[scripts.length];
+        for (int codePoint = 0; codePoint < 0x10000; codePoint++) {
+            if (Character.isLetter(codePoint)) {
+                counts[UnicodeScript.of(codePoint).ordinal()]++;
+            }
+        }
+        int[][] samples = new int[scripts.length][];
+        int[] sampled = new int[scripts.length];
+        int[] seen = new int[scripts.length];
+        for (int i = 0; i < scripts.length; i++) {
+            samples[i] = new int[Math.min(SAMPLE_SIZE, counts[i])];
+        }
+        for (int codePoint = 0; codePoint < 0x10000; codePoint++) {
+            if (Character.isLetter(codePoint)) {
+                int i = UnicodeScript.of(codePoint).ordinal();
+                int size = samples[i].length;
+                // take letters at indices 0, count/size, 2*count/size...
+                if (sampled[i] < size && seen[i] == (int) (
+                        (long) sampled[i] * counts[i] / size)) {
+                    samples[i][sampled[i]++] = codePoint;
+                }
+                seen[i]++;
+            }
+        }
+        Map<UnicodeScript, int[]> scriptSamples =
+                new EnumMap<>(UnicodeScript.class);
+        for (int i = 0; i < scripts.length; i++) {
+            if (samples[i].length > 0) {
+                scriptSamples.put(scripts[i], samples[i]);
+            }
+        }
+        return scriptSamples;
+    }
+
+    /**
+     * Returns a cached or new AWT font by its name.
+     * If the font needs to be created, its style will be Font.PLAIN and its
+     * size will be 12.
+     * @param name the font name
+     * @return an AWT Font
+     */
+    private Font getAWTFont(String name) {
+        synchronized (awtFonts) {
+            Font font = awtFonts.get(name);
+            if (font == null) {
+                font = new Font(name, Font.PLAIN, 12);
+                awtFonts.put(name, font);
+            }
+            return font;
+        }
+    }
+}
@@ -15,15 +15,11 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor.i18n;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
-import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.Document;
-import org.eclipse.jface.text.FindReplaceDocumentAdapter;
 import org.eclipse.jface.text.IFindReplaceTarget;
+import org.eclipse.jface.text.IFindReplaceTargetExtension;
 import org.eclipse.jface.text.IFindReplaceTargetExtension3;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
@@ -32,19 +28,19 @@ import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.custom.ScrolledComposite;
-import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.events.FocusEvent;
 import org.eclipse.swt.events.FocusListener;
+import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Point;
-import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
-import com.essiembre.eclipse.rbe.model.bundle.Bundle;
 import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
-import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.search.BundleGroupSearcher;
+import com.essiembre.eclipse.rbe.model.search.SearchMatch;
+import com.essiembre.eclipse.rbe.model.search.SearchQuery;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
@@ -62,17 +58,17 @@ public class I18nPage extends ScrolledComposite {
 
     private final ResourceManager resourceMediator;
     private final KeyTreeComposite keysComposite;
-    private final List<BundleEntryComposite> entryComposites = 
-            new ArrayList<>();
     private final LocalBehaviour localBehaviour = new LocalBehaviour();
     private final ScrolledComposite editingComposite;
 
     /* default */BundleEntryComposite activeEntry;
     /* default */BundleEntryComposite lastActiveEntry;
 
+    private BundleEntryPane entryPane;
+    private FindReplaceTarget findReplaceTarget;
+
     private AutoMouseWheelAdapter _autoMouseWheelAdapter;
 //    boolean _autoAdjustNeeded;
-    private Composite _rightComposite;
 
     /**
      * Constructor.
@@ -180,24 +176,9 @@ public class I18nPage extends ScrolledComposite {
         for (int i = 0; i < children.length; i++) {
             children[i].dispose();
         }
-        _rightComposite = new Composite(parent, SWT.BORDER);
-        parent.setContent(_rightComposite);
-//        if (!RBEPreferences.getAutoAdjust()) {
-            parent.setMinSize(_rightComposite.computeSize(
-                    SWT.DEFAULT,
-                    resourceMediator.getLocales().size()
-                            * RBEPreferences.getMinHeight()));
-//        }
-        _rightComposite.setLayout(new GridLayout(1, false));
-        entryComposites.clear();
-        for (Iterator<Locale> iter = resourceMediator.getLocales().iterator(); 
-                iter.hasNext();) {
-            Locale locale = (Locale) iter.next();
-            BundleEntryComposite entryComposite = new BundleEntryComposite(
-                    _rightComposite, resourceMediator, locale, this);
-            entryComposite.addFocusListener(localBehaviour);
-            entryComposites.add(entryComposite);
-        }
+        entryPane = new BundleEntryPane(
+                parent, resourceMediator, this, localBehaviour);
+        entryPane.refresh(getSelectedKey());
     }
 
     /**
@@ -210,11 +191,9 @@ public class I18nPage extends ScrolledComposite {
      *            focussed.
      */
     public void focusBundleEntryComposite(Locale locale) {
-        for (BundleEntryComposite bec : entryComposites) {
-            if ((bec.getLocale() == null) && (locale == null)
-                    || (locale != null && locale.equals(bec.getLocale()))) {
-                bec.focusTextBox();
-            }
+        BundleEntryComposite comp = entryPane.reveal(locale);
+        if (comp != null) {
+            comp.focusTextBox();
         }
     }
 
@@ -222,54 +201,69 @@ public class I18nPage extends ScrolledComposite {
      * Focusses the next {@link BundleEntryComposite}.
      */
     public void focusNextBundleEntryComposite() {
-        int index = entryComposites.indexOf(activeEntry);
-        BundleEntryComposite nextComposite;
-        if (index < entryComposites.size() - 1)
-            nextComposite = entryComposites.get(++index);
+        int index = entryPane.indexOf(activeEntry);
+        if (index < entryPane.getLocaleCount() - 1)
+            focusComposite(++index);
         else
-            nextComposite = entryComposites.get(0);
-
-        if (nextComposite != null)
-            focusComposite(nextComposite);
+            focusComposite(0);
     }
 
     /**
      * Focusses the previous {@link BundleEntryComposite}.
      */
     public void focusPreviousBundleEntryComposite() {
-        int index = entryComposites.indexOf(activeEntry);
-        BundleEntryComposite nextComposite;
+        int index = entryPane.indexOf(activeEntry);
         if (index > 0)
-            nextComposite = entryComposites.get(--index);
+            focusComposite(--index);
         else
-            nextComposite = entryComposites.get(entryComposites.size() - 1);
-
-        if (nextComposite != null)
-            focusComposite(nextComposite);
+            focusComposite(entryPane.getLocaleCount() - 1);
     }
 
     /**
-     * Focusses the given {@link BundleEntryComposite} and scrolls the
-     * surrounding {@link ScrolledComposite} in order to make it visible.
+     * Scrolls the surrounding {@link ScrolledComposite} in order to make the
+     * {@link BundleEntryComposite} of the given locale visible, and 
+     * focusses it.
      * 
-     * @param comp
-     *            The {@link BundleEntryComposite} to be focussed.
+     * @param index
+     *            The index of the locale to be focussed.
      */
-    private void focusComposite(BundleEntryComposite comp) {
-        Point compPos = comp.getLocation();
-        Point compSize = comp.getSize();
-        Point size = editingComposite.getSize();
-        Point origin = editingComposite.getOrigin();
-        if (compPos.y + compSize.y > size.y + origin.y)
-            editingComposite.setOrigin(origin.x, origin.y
-                    + (compPos.y + compSize.y) - (origin.y + size.y) + 5);
-        else if (compPos.y < origin.y)
-            editingComposite.setOrigin(origin.x, compPos.y);
-        comp.focusTextBox();
+    private void focusComposite(int index) {
+        BundleEntryComposite comp = entryPane.reveal(index);
+        if (comp != null)
+            comp.focusTextBox();
     }
 
+    /**
+     * Gets the find/replace target of this page, searching values of all
+     * keys and locales.
+     * @return find/replace target
+     */
     public IFindReplaceTarget getReplaceTarget() {
-        return new FindReplaceTarget();
+        if (findReplaceTarget == null) {
+            findReplaceTarget = new FindReplaceTarget();
+        }
+        return findReplaceTarget;
+    }
+
+    /**
+     * Selects the key of a search match and, unless the key itself
+     * matched, focusses the matching locale.  The matching text is
+     * selected for value matches.
+     * @param match search match
+     */
+    public void selectMatch(SearchMatch match) {
+        if (keysComposite != null) {
+            keysComposite.selectKeyTreeItem(match.getKey());
+        } else {
+            resourceMediator.getKeyTree().selectKey(match.getKey());
+        }
+        if (match.getField() != SearchQuery.KEYS) {
+            focusBundleEntryComposite(match.getLocale());
+            if (match.getField() == SearchQuery.VALUES && activeEntry != null) {
+                activeEntry.setTextSelection(match.getOffset(),
+                        match.getOffset() + match.getLength());
+            }
+        }
     }
 
     /**
@@ -316,12 +310,7 @@ public class I18nPage extends ScrolledComposite {
      * Refreshes all value-holding text boxes in this page.
      */
     public void refreshTextBoxes() {
-        String key = getSelectedKey();
-        for (Iterator<BundleEntryComposite> iter = entryComposites.iterator(); 
-                iter.hasNext();) {
-            BundleEntryComposite entryComposite = iter.next();
-            entryComposite.refresh(key);
-        }
+        entryPane.refresh(getSelectedKey());
     }
 
     /**
@@ -341,10 +330,7 @@ public class I18nPage extends ScrolledComposite {
         if (keysComposite != null) {
             keysComposite.dispose();
         }
-        for (Iterator<BundleEntryComposite> iter = entryComposites.iterator(); 
-                iter.hasNext();) {
-            iter.next().dispose();
-        }
+        entryPane.dispose();
         _autoMouseWheelAdapter.dispose();
         super.dispose();
     }
@@ -354,7 +340,7 @@ public class I18nPage extends ScrolledComposite {
 //    }
 //
     void findActionStart() {
-        if (!keysComposite.getFilter().isEmpty()) {
+        if (keysComposite != null && !keysComposite.getFilter().isEmpty()) {
             keysComposite.setFilter("");
         }
     }
@@ -426,122 +412,161 @@ public class I18nPage extends ScrolledComposite {
 
     } /* ENDCLASS */
 
+    /**
+     * Find/replace target searching the values of all keys and locales,
+     * from the last focussed value.  Replacing all matches is done in a
+     * single batch of bundle modifications, without updating the page
+     * until done.
+     */
     private class FindReplaceTarget implements IFindReplaceTarget,
-            IFindReplaceTargetExtension3 {
+            IFindReplaceTargetExtension, IFindReplaceTargetExtension3 {
+
+        private final BundleGroupSearcher searcher = new BundleGroupSearcher(
+                resourceMediator.getBundleGroup());
+        /** Query of the last search. */
+        private SearchQuery query;
+        /** Last match found, or replaced. */
+        private SearchMatch lastMatch;
+        /** Whether all matches are being replaced. */
+        private boolean replaceAllMode;
 
         @Override
         public int findAndSelect(int widgetOffset, String findString,
                 boolean searchForward, 
                 boolean caseSensitive, boolean wholeWord) {
-            // replaced by findAndSelect(.,.)
-            return -1;
+            return findAndSelect(widgetOffset, findString, searchForward,
+                    caseSensitive, wholeWord, false);
         }
 
         @Override
         public int findAndSelect(int offset, String findString,
                 boolean searchForward, boolean caseSensitive,
                 boolean wholeWord, boolean regExSearch) {
-            if (lastActiveEntry != null) {
-                StyledText textWidget = lastActiveEntry.getTextViewer()
-                        .getTextWidget();
-                String text = textWidget.getText();
-                IRegion region = find(text, findString,
-                        textWidget.getSelection().x + (searchForward ? 1 : -1),
-                        searchForward, caseSensitive, wholeWord, regExSearch);
-                if (region != null) {
-                    focusBundleEntryComposite(lastActiveEntry.locale);
-                    textWidget.setSelection(region.getOffset(),
-                            region.getOffset() + region.getLength());
-                    return region.getOffset();
+            query = getQuery(findString, caseSensitive, wholeWord, regExSearch);
+            List<Locale> locales = resourceMediator.getLocales();
+            String key = null;
+            int localeIndex = 0;
+            int from = 0;
+            if (replaceAllMode) {
+                // continue after the last replacement
+                if (lastMatch != null) {
+                    key = lastMatch.getKey();
+                    localeIndex = locales.indexOf(lastMatch.getLocale());
+                    from = searchForward ? lastMatch.getOffset()
+                            + Math.max(lastMatch.getLength(), 1)
+                            : lastMatch.getOffset() - 1;
                 }
+            } else if (offset != -1 && getEntry() != null
+                    && getEntry().activeKey != null) {
+                BundleEntryComposite entry = getEntry();
+                entry.updateBundleOnChanges();
+                key = entry.activeKey;
+                localeIndex = locales.indexOf(entry.getLocale());
+                Point selection = entry.getTextViewer().getSelectedRange();
+                from = searchForward
+                        ? selection.x + selection.y : selection.x - 1;
             }
-            BundleGroup bundleGroup = resourceMediator.getBundleGroup();
-            ArrayList<String> keys = new ArrayList<String>(
-                    bundleGroup.getKeys());
-            String activeKey = lastActiveEntry != null ? 
-                    lastActiveEntry.activeKey : keys.get(0);
-            int activeKeyIndex = Math.max(keys.indexOf(activeKey), 0);
-
-            List<Locale> locales = resourceMediator.getLocales();
-            Locale activeLocale = lastActiveEntry != null 
-                    ? lastActiveEntry.locale
-                    : locales.get(0);
-            int activeLocaleIndex = locales.indexOf(activeLocale)
-                    + (searchForward ? 1 : -1);
-
-            for (int i = 0, length = keys.size(); i < length; i++) {
-                String key = keys
-                        .get((activeKeyIndex + (searchForward ? i : -i))
-                                % length);
-                int j = (i == 0 ? activeLocaleIndex : (searchForward ? 0
-                        : locales.size() - 1));
-                while (j < locales.size() && j >= 0) {
-                    Locale locale = locales.get(j);
-                    Bundle bundle = bundleGroup.getBundle(locale);
-                    BundleEntry value = bundle.getEntry(key);
-                    if (value != null && value.getValue() != null) {
-                        IRegion region = find(value.getValue(), findString,
-                                searchForward ? 0
-                                        : value.getValue().length() - 1,
-                                searchForward, caseSensitive, wholeWord,
-                                regExSearch);
-                        if (region != null) {
-                            keysComposite.selectKeyTreeItem(key);
-                            focusBundleEntryComposite(locale);
-                            StyledText textWidget = activeEntry.getTextViewer()
-                                    .getTextWidget();
-                            textWidget.setSelection(region.getOffset(),
-                                    region.getOffset() + region.getLength());
-                            return region.getOffset();
-                        }
-                    }
-                    if (searchForward)
-                        ++j;
-                    else
-                        --j;
+            SearchMatch match = searcher.findNext(
+                    query, locales, key, localeIndex, from, searchForward);
+            if (match == null) {
+                if (!replaceAllMode) {
+                    lastMatch = null;
                 }
+                return -1;
+            }
+            lastMatch = match;
+            if (!replaceAllMode) {
+                selectMatch(match);
             }
-            return -1;
+            return match.getOffset();
         }
 
-        private IRegion find(String text, String findString, int offset,
-                boolean searchForward, boolean caseSensitive,
+        /**
+         * Gets a query, reusing the last one if it is the same.
+         */
+        private SearchQuery getQuery(String findString, boolean caseSensitive,
                 boolean wholeWord, boolean regExSearch) {
-            Document document = new Document(text);
-            FindReplaceDocumentAdapter documentAdapter = 
-                    new FindReplaceDocumentAdapter(document);
-            try {
-                return documentAdapter.find(offset, findString, searchForward,
-                        caseSensitive, wholeWord, regExSearch);
-            } catch (BadLocationException argh) {
+            SearchQuery newQuery = query;
+            if (newQuery == null
+                    || !newQuery.getFindString().equals(findString)
+                    || newQuery.isCaseSensitive() != caseSensitive
+                    || newQuery.isWholeWord() != wholeWord
+                    || newQuery.isRegex() != regExSearch) {
+                newQuery = new SearchQuery(findString, caseSensitive,
+                        wholeWord, regExSearch, SearchQuery.VALUES);
+            }
+            return newQuery;
+        }
+
+        /**
+         * Gets the bundle entry section last focussed, if still shown.
+         */
+        private BundleEntryComposite getEntry() {
+            if (lastActiveEntry == null || lastActiveEntry.isDisposed()) {
                 return null;
             }
+            return lastActiveEntry;
         }
 
         @Override
         public void replaceSelection(String text) {
-            // replaced by replaceSelection(.,.)
+            replaceSelection(text, false);
         }
 
         @Override
         public void replaceSelection(String text, boolean regExReplace) {
-
+            if (lastMatch == null || resourceMediator.getSourceEditor(
+                    lastMatch.getLocale()).isReadOnly()) {
+                return;
+            }
+            if (!replaceAllMode && getEntry() != null) {
+                getEntry().updateBundleOnChanges();
+            }
+            int length = searcher.replace(lastMatch, query, text, regExReplace);
+            if (length == -1) {
+                return;
+            }
+            lastMatch = new SearchMatch(lastMatch.getKey(),
+                    lastMatch.getLocale(), lastMatch.getField(),
+                    lastMatch.getOffset(), length);
+            if (!replaceAllMode) {
+                refreshTextBoxes();
+                selectMatch(lastMatch);
+            }
         }
 
         @Override
         public boolean isEditable() {
-            return false;
+            return true;
         }
 
         @Override
         public String getSelectionText() {
-            return activeEntry != null ? activeEntry.getTextViewer()
+            if (replaceAllMode) {
+                if (lastMatch == null) {
+                    return "";
+                }
+                BundleEntry entry = resourceMediator.getBundleGroup()
+                        .getBundleEntry(lastMatch.getLocale(),
+                                lastMatch.getKey());
+                if (entry == null || lastMatch.getOffset()
+                        + lastMatch.getLength() > entry.getValue().length()) {
+                    return "";
+                }
+                return entry.getValue().substring(lastMatch.getOffset(),
+                        lastMatch.getOffset() + lastMatch.getLength());
+            }
+            return getEntry() != null ? getEntry().getTextViewer()
                     .getTextWidget().getSelectionText() : "";
         }
 
         @Override
         public Point getSelection() {
-            return activeEntry != null ? activeEntry.getTextViewer()
+            if (replaceAllMode) {
+                return lastMatch == null ? new Point(0, 0) : new Point(
+                        lastMatch.getOffset(), lastMatch.getLength());
+            }
+            return getEntry() != null ? getEntry().getTextViewer()
                     .getSelectedRange() : new Point(0, 0);
         }
 
@@ -550,5 +575,59 @@ public class I18nPage extends ScrolledComposite {
             return true;
         }
 
+        @Override
+        public void beginSession() {
+            lastMatch = null;
+        }
+
+        @Override
+        public void endSession() {
+            lastMatch = null;
+        }
+
+        @Override
+        public IRegion getScope() {
+            return null;
+        }
+
+        @Override
+        public void setScope(IRegion scope) {
+            // searching a range of values is not supported
+        }
+
+        @Override
+        public Point getLineSelection() {
+            return getSelection();
+        }
+
+        @Override
+        public void setSelection(int offset, int length) {
+            if (getEntry() != null) {
+                getEntry().setTextSelection(offset, offset + length);
+            }
+        }
+
+        @Override
+        public void setScopeHighlightColor(Color color) {
+            // searching a range of values is not supported
+        }
+
+        @Override
+        public void setReplaceAllMode(boolean replaceAll) {
+            if (replaceAll == replaceAllMode) {
+                return;
+            }
+            replaceAllMode = replaceAll;
+            lastMatch = null;
+            if (replaceAll) {
+                if (getEntry() != null) {
+                    getEntry().updateBundleOnChanges();
+                }
+                resourceMediator.getBundleGroup().beginBatch();
+            } else {
+                resourceMediator.getBundleGroup().endBatch();
+                refreshTextBoxes();
+            }
+        }
     }
 }
@@ -15,18 +15,30 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor.i18n;
 
+import java.util.List;
+
 import org.eclipse.core.runtime.Status;
+import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.text.IFindReplaceTarget;
+import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.ui.PartInitException;
+import org.eclipse.ui.part.MultiPageEditorSite;
 import org.eclipse.ui.texteditor.AbstractTextEditor;
 import org.eclipse.ui.texteditor.FindNextAction;
 import org.eclipse.ui.texteditor.FindReplaceAction;
 import org.eclipse.ui.texteditor.IWorkbenchActionDefinitionIds;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.search.BundleGroupSearcher;
+import com.essiembre.eclipse.rbe.model.search.SearchMatch;
+import com.essiembre.eclipse.rbe.model.search.SearchQuery;
+import com.essiembre.eclipse.rbe.ui.UIUtils;
+import com.essiembre.eclipse.rbe.ui.editor.ResourceBundleEditor;
 import com.essiembre.eclipse.rbe.ui.editor.resources.ResourceManager;
+import com.essiembre.eclipse.rbe.ui.views.SearchResultsView;
 
 public class I18nPageEditor extends AbstractTextEditor {
 
@@ -36,6 +48,9 @@ public class I18nPageEditor extends AbstractTextEditor {
     private FindReplaceAction findReplaceAction;
     private FindNextAction findNextAction;
     private FindNextAction findPreviousAction;
+    private IAction findAllAction;
+    /** Last query of "find all". */
+    private SearchQuery findAllQuery;
 
     public I18nPageEditor(ResourceManager resourceMediator) {
         this.resourceMediator = resourceMediator;
@@ -80,6 +95,38 @@ public class I18nPageEditor extends AbstractTextEditor {
         };
         findPreviousAction.setActionDefinitionId(
                 IWorkbenchActionDefinitionIds.FIND_PREVIOUS);
+
+        findAllAction = new Action(RBEPlugin.getString("search.findAll")) {
+            @Override
+            public void run() {
+                findAll();
+            }
+        };
+    }
+
+    /**
+     * Asks what to find, then lists all matches in keys, values and
+     * comments in the search results view.
+     */
+    private void findAll() {
+        i18nPage.refreshEditorOnChanges();
+        FindAllDialog dialog = new FindAllDialog(
+                i18nPage.getShell(), findAllQuery);
+        if (dialog.open() != Window.OK) {
+            return;
+        }
+        findAllQuery = dialog.getQuery();
+        List<SearchMatch> matches = new BundleGroupSearcher(
+                resourceMediator.getBundleGroup()).findAll(
+                        findAllQuery, resourceMediator.getLocales());
+        try {
+            SearchResultsView view = (SearchResultsView) getSite().getPage()
+                    .showView(SearchResultsView.ID);
+            view.setResults((ResourceBundleEditor) ((MultiPageEditorSite)
+                    getSite()).getMultiPageEditor(), findAllQuery, matches);
+        } catch (PartInitException e) {
+            UIUtils.showErrorDialog(i18nPage.getShell(), e, "error.view");
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -110,4 +157,8 @@ public class I18nPageEditor extends AbstractTextEditor {
     public IAction getFindPreviousAction() {
         return findPreviousAction;
     }
+
+    public IAction getFindAllAction() {
+        return findAllAction;
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.tree.KeyMatcher;
+
+/**
+ * Matches keys against a filter in the background, and hands the matching
+ * keys, best ranked first, to the key tree composite.
+ */
+/*default*/ class KeyFilterJob extends Job {
+
+    /** Number of keys matched between cancellation checks. */
+    private static final int CHECK_INTERVAL = 1000;
+
+    /** Composite to publish results to. */
+    private final KeyTreeComposite composite;
+    /** Display of the composite. */
+    private final Display display;
+    /** Keys to match. */
+    private final List<String> keys;
+    /** Matcher to use. */
+    private final KeyMatcher matcher;
+    /** Filter text. */
+    private final String filter;
+
+    /**
+     * Constructor.
+     * @param composite key tree composite to publish results to
+     * @param keys keys to match (not modified by the caller afterwards)
+     * @param matcher key matcher
+     * @param filter filter text the matcher was created with
+     */
+    /*default*/ KeyFilterJob(KeyTreeComposite composite, List<String> keys,
+            KeyMatcher matcher, String filter) {
+        super(RBEPlugin.getString("key.filter.job"));
+        this.composite = composite;
+        this.display = composite.getDisplay();
+        this.keys = keys;
+        this.matcher = matcher;
+        this.filter = filter;
+        setSystem(true);
+    }
+
+    /**
+     * Gets the matcher used by this job.
+     * @return key matcher
+     */
+    /*default*/ KeyMatcher getMatcher() {
+        return matcher;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        // score in upper bits, key index in lower bits: sorts by rank
+        long[] ranks = new long[keys.size()];
+        int count = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (i % CHECK_INTERVAL == 0 && monitor.isCanceled()) {
+                return Status.CANCEL_STATUS;
+            }
+            int score = matcher.score(keys.get(i));
+            if (score != KeyMatcher.NO_MATCH) {
+                ranks[count++] = ((long) score << 32) | i;
+            }
+        }
+        Arrays.sort(ranks, 0, count);
+        final List<String> rankedKeys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rankedKeys.add(keys.get((int) ranks[i]));
+        }
+        if (monitor.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
+        display.asyncExec(new Runnable() {
+            public void run() {
+                composite.filterKeyItems(KeyFilterJob.this, filter, rankedKeys);
+            }
+        });
+        return Status.OK_STATUS;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
+
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
+
+/**
+ * Sorts key tree items the way the key tree does, so items added to a
+ * (non-virtual) viewer one at a time are inserted at their place.
+ */
+public class KeyTreeComparator extends ViewerComparator {
+
+    @Override
+    public int compare(Viewer viewer, Object e1, Object e2) {
+        if (e1 instanceof KeyTreeItem && e2 instanceof KeyTreeItem) {
+            return ((KeyTreeItem) e1).compareTo((KeyTreeItem) e2);
+        }
+        return super.compare(viewer, e1, e2);
+    }
+}
@@ -18,6 +18,8 @@ package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
@@ -40,17 +42,20 @@ import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.Text;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.DeltaEvent;
+import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.tree.KeyMatcher;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
 import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
-import com.essiembre.eclipse.rbe.model.tree.visitors.KeysStartingWithVisitor;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
 
@@ -91,6 +96,24 @@ public class KeyTreeComposite extends Composite {
     private TreeViewerContributor  treeviewerContributor;
     
     private Text filterTextBox;
+    /** Filter mode (one of the <code>KeyMatcher.MODE_???</code>). */
+    private Combo filterModeCombo;
+    /** Filter being applied in the background, if any. */
+    private KeyFilterJob filterJob;
+    /** Applies the filter again when the key tree is rebuilt. */
+    private final IDeltaListener keyTreeListener = new IDeltaListener() {
+        public void add(DeltaEvent event) {
+            if (event.receiver() == keyTree && keyTree.isFilterStale()) {
+                filterKeyItems();
+            }
+        }
+        public void remove(DeltaEvent event) {
+        }
+        public void modify(DeltaEvent event) {
+        }
+        public void select(DeltaEvent event) {
+        }
+    };
     
     /**
      * Constructor.
@@ -110,6 +133,7 @@ public class KeyTreeComposite extends Composite {
         createTopSection();
         createMiddleSection();
         createBottomSection();
+        keyTree.addListener(keyTreeListener);
     }
 
     /**
@@ -156,6 +180,10 @@ public class KeyTreeComposite extends Composite {
     public void dispose() {
        super.dispose();
 
+       if (filterJob != null) {
+           filterJob.cancel();
+       }
+       keyTree.removeListener(keyTreeListener);
        waitCursor.dispose();
        defaultCursor.dispose();
        //        treeviewerContributor.dispose();
@@ -194,7 +222,7 @@ public class KeyTreeComposite extends Composite {
             BundleGroup bundleGroup = keyTree.getBundleGroup();
             Collection<KeyTreeItem> items = new ArrayList<>();
             items.add(selectedItem);
-            items.addAll(selectedItem.getNestedChildren());
+            items.addAll(keyTree.getNestedKeyTreeItems(selectedItem));
             for (Iterator<KeyTreeItem> iter = 
                     items.iterator(); iter.hasNext();) {
                 KeyTreeItem item = (KeyTreeItem) iter.next();
@@ -209,7 +237,7 @@ public class KeyTreeComposite extends Composite {
      */
     private void createTopSection() {
         Composite topComposite = new Composite(this, SWT.NONE);
-        GridLayout gridLayout = new GridLayout(2, false);
+        GridLayout gridLayout = new GridLayout(3, false);
         gridLayout.horizontalSpacing = 0;
         gridLayout.verticalSpacing = 0;
         gridLayout.marginWidth = 0;
@@ -222,12 +250,23 @@ public class KeyTreeComposite extends Composite {
         filterTextBox.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
         filterTextBox.addModifyListener(new ModifyListener() {
             public void modifyText(ModifyEvent e) {
-                keyTree.filterKeyItems(filterTextBox.getText());
-                treeViewer.getControl().setRedraw(false);
-                treeViewer.refresh();
-                if(!filterTextBox.getText().isEmpty())
-                   treeViewer.expandAll();
-                treeViewer.getControl().setRedraw(true);
+                filterKeyItems();
+            }
+        });
+
+        filterModeCombo = new Combo(topComposite, SWT.READ_ONLY);
+        filterModeCombo.setToolTipText(RBEPlugin.getString("key.filter.mode"));
+        // same order as KeyMatcher.MODE_??? constants
+        filterModeCombo.setItems(new String[] {
+                RBEPlugin.getString("key.filter.mode.contains"),
+                RBEPlugin.getString("key.filter.mode.regex"),
+                RBEPlugin.getString("key.filter.mode.initials"),
+                RBEPlugin.getString("key.filter.mode.fuzzy"),
+        });
+        filterModeCombo.select(KeyMatcher.MODE_CONTAINS);
+        filterModeCombo.addSelectionListener(new SelectionAdapter() {
+            public void widgetSelected(SelectionEvent event) {
+                filterKeyItems();
             }
         });
         
@@ -270,13 +309,14 @@ public class KeyTreeComposite extends Composite {
                     setVisible(false);
                     keyTree.setUpdater(new GroupedKeyTreeUpdater(
                             RBEPreferences.getKeyGroupSeparator()));
+                    KeyTreeRefreshScheduler.getScheduler(keyTree).flush();
 //                    treeviewerContributor.getMenuItem(
 //                          TreeViewerContributor.MENU_EXPAND).setEnabled(true);
 //                    treeviewerContributor.getMenuItem(
 //                        TreeViewerContributor.MENU_COLLAPSE).setEnabled(true);
                     if (RBEPreferences.getKeyTreeExpanded()) {
                        treeViewer.getControl().setRedraw(false);
-                       treeViewer.expandAll();
+                       TreeViewerContributor.expandAll(treeViewer, keyTree);
                        treeViewer.getControl().setRedraw(true);    
                     }
                     selectKeyTreeItem(addTextBox.getText());
@@ -306,6 +346,70 @@ public class KeyTreeComposite extends Composite {
         });
     }
     
+    /**
+     * Filters the tree with the filter text box content, according to the
+     * selected filter mode.  "Contains" filtering is done right away using
+     * the key tree index, while other modes are done in the background.
+     */
+    /*default*/ void filterKeyItems() {
+        String filter = filterTextBox.getText();
+        int mode = filterModeCombo.getSelectionIndex();
+        if (filterJob != null) {
+            filterJob.cancel();
+            filterJob = null;
+        }
+        filterTextBox.setForeground(null);
+        if (filter.length() == 0 || mode == KeyMatcher.MODE_CONTAINS) {
+            keyTree.filterKeyItems(filter);
+            refreshFilteredTree(null);
+            return;
+        }
+        KeyMatcher matcher = null;
+        try {
+            matcher = KeyMatcher.create(mode, filter);
+        } catch (PatternSyntaxException e) {
+            filterTextBox.setForeground(
+                    getDisplay().getSystemColor(SWT.COLOR_RED));
+            return;
+        }
+        filterJob = new KeyFilterJob(this,
+                keyTree.getFilterIndex().getKeys(), matcher, filter);
+        filterJob.schedule();
+    }
+
+    /**
+     * Shows only the given keys in the tree, unless a newer filter has been
+     * applied since the given job started.
+     * @param job job that matched the keys
+     * @param filter filter text used to match the keys
+     * @param rankedKeys matching keys, best ranked first
+     */
+    /*default*/ void filterKeyItems(
+            KeyFilterJob job, String filter, List<String> rankedKeys) {
+        if (job != filterJob || isDisposed()) {
+            return;
+        }
+        filterJob = null;
+        keyTree.filterKeyItems(filter, job.getMatcher(), rankedKeys);
+        refreshFilteredTree(rankedKeys.isEmpty() ? null : rankedKeys.get(0));
+    }
+
+    /**
+     * Refreshes the tree after the filter changed.
+     * @param bestKey key to reveal, or <code>null</code>
+     */
+    private void refreshFilteredTree(String bestKey) {
+        treeViewer.getControl().setRedraw(false);
+        treeViewer.refresh();
+        if (!filterTextBox.getText().isEmpty()) {
+            TreeViewerContributor.expandAll(treeViewer, keyTree);
+        }
+        if (bestKey != null && keyTree.getKeyTreeItem(bestKey) != null) {
+            treeViewer.reveal(keyTree.getKeyTreeItem(bestKey));
+        }
+        treeViewer.getControl().setRedraw(true);
+    }
+
     /**
      * Creates the middle (tree) section of this composite.
      */
@@ -317,15 +421,22 @@ public class KeyTreeComposite extends Composite {
         gridData.horizontalAlignment = GridData.FILL;
         gridData.grabExcessHorizontalSpace = true;
 
-        treeViewer = new TreeViewer(
-                this, SWT.SINGLE | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL);
-        treeViewer.setContentProvider(new KeyTreeContentProvider());
+        boolean virtual = RBEPreferences.getKeyTreeVirtual();
+        int style = SWT.SINGLE | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL;
+        if (virtual) {
+            treeViewer = new TreeViewer(this, style | SWT.VIRTUAL);
+            treeViewer.setContentProvider(new KeyTreeLazyContentProvider());
+        } else {
+            treeViewer = new TreeViewer(this, style);
+            treeViewer.setContentProvider(new KeyTreeContentProvider());
+            treeViewer.setComparator(new KeyTreeComparator());
+        }
         labelProvider = new KeyTreeLabelProvider();
         treeViewer.setLabelProvider(labelProvider);
         treeViewer.setUseHashlookup(true);
         treeViewer.setInput(keyTree);
         if (RBEPreferences.getKeyTreeExpanded()) {
-            treeViewer.expandAll();
+            TreeViewerContributor.expandAll(treeViewer, keyTree);
         }
         treeViewer.getTree().setLayoutData(gridData);      
         treeViewer.getTree().addKeyListener(new KeyAdapter() {
@@ -381,7 +492,10 @@ public class KeyTreeComposite extends Composite {
 //                return true;
             }
         };
-        treeViewer.addFilter(filter);
+        // lazy content provider takes care of filtering
+        if (!virtual) {
+            treeViewer.addFilter(filter);
+        }
         
         treeviewerContributor = new TreeViewerContributor(keyTree, treeViewer);
         treeviewerContributor.createControl(this);
@@ -440,10 +554,9 @@ public class KeyTreeComposite extends Composite {
                     addButton.setEnabled(true);
                 }
                 if ( key.length() > 0 && !key.equals(getSelectedKey()) ) {
-                   KeysStartingWithVisitor visitor = 
-                           new KeysStartingWithVisitor();
-                   keyTree.accept(visitor, key);
-                   KeyTreeItem item = visitor.getKeyTreeItem();
+                   Iterator<KeyTreeItem> items =
+                           keyTree.getKeyTreeItems(key).iterator();
+                   KeyTreeItem item = items.hasNext() ? items.next() : null;
                    if ( item != null ) {
                       syncAddTextBox = false;
                       selectKeyTreeItem(item);
@@ -480,6 +593,7 @@ public class KeyTreeComposite extends Composite {
      */
     /*default*/ void selectKeyTreeItem(KeyTreeItem item) {
         if (item != null) {
+            KeyTreeRefreshScheduler.getScheduler(keyTree).flush();
             treeViewer.setSelection(new StructuredSelection(item), true);
         }
     }
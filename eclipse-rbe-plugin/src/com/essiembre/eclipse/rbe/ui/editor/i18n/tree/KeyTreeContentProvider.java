@@ -15,6 +15,8 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
 
+import java.util.Collection;
+
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.StructuredSelection;
@@ -38,6 +40,8 @@ public class KeyTreeContentProvider implements
     private static Object[] EMPTY_ARRAY = new Object[0];
     /** Viewer this provided act upon. */
     protected TreeViewer treeViewer;
+    /** Applies tree changes to the viewer. */
+    private KeyTreeRefreshScheduler refreshScheduler;
 
     @Override
     public void dispose() {}
@@ -48,9 +52,14 @@ public class KeyTreeContentProvider implements
         this.treeViewer = (TreeViewer) viewer;
         if(oldInput != null) {
             ((KeyTree) oldInput).removeListener(this);
+            refreshScheduler.removeViewer(treeViewer);
+            refreshScheduler = null;
         }
         if(newInput != null) {
             ((KeyTree) newInput).addListener(this);
+            refreshScheduler =
+                    KeyTreeRefreshScheduler.getScheduler((KeyTree) newInput);
+            refreshScheduler.addViewer(treeViewer);
         }
     }
 
@@ -84,12 +93,12 @@ public class KeyTreeContentProvider implements
 
     @Override
     public void add(DeltaEvent event) {
-        treeViewer.refresh(true);
+        // refreshed by scheduler
     }
 
     @Override
     public void remove(DeltaEvent event) {
-        treeViewer.refresh(true);
+        // refreshed by scheduler
     }
 
     @Override
@@ -99,6 +108,8 @@ public class KeyTreeContentProvider implements
             KeyTreeItem currentSelection = getTreeSelection();
             if ((currentSelection == null) || (!treeItem.getId().endsWith(
                     currentSelection.getId()))) {
+                // the item must exist in the viewer to be selected
+                refreshScheduler.flush();
                 StructuredSelection selection = 
                         new StructuredSelection(treeItem);
                 treeViewer.setSelection(selection);
@@ -120,9 +131,26 @@ public class KeyTreeContentProvider implements
     
     @Override
     public void modify(DeltaEvent event) {
-        //TODO how to make sure many changes could do a "batch" refresh on tree?
-        KeyTreeItem treeItem = (KeyTreeItem) event.receiver();
-        Object parentTreeItem = treeItem.getParent();
-        treeViewer.refresh(parentTreeItem, true);
+        // refreshed by scheduler
+    }
+
+    /**
+     * Updates the viewer after items were added to or removed from the
+     * root of the given tree, without refreshing the other root items.
+     * Items are added through the viewer, which sorts and filters them.
+     * @param keyTree key tree shown by the viewer
+     * @param items root items added or removed (or equal to those)
+     */
+    /*default*/ void updateRootItems(
+            KeyTree keyTree, Collection<KeyTreeItem> items) {
+        for (KeyTreeItem item : items) {
+            if (treeViewer.testFindItem(item) != null) {
+                treeViewer.remove(item);
+            }
+            KeyTreeItem current = keyTree.getKeyTreeItem(item.getId());
+            if (current != null && current.getParent() == keyTree) {
+                treeViewer.add(keyTree, current);
+            }
+        }
     }
 }
@@ -15,6 +15,9 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.jface.resource.ImageRegistry;
 import org.eclipse.jface.viewers.IColorProvider;
 import org.eclipse.jface.viewers.IFontProvider;
@@ -26,6 +29,9 @@ import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.Image;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.DeltaEvent;
+import com.essiembre.eclipse.rbe.model.IDeltaListener;
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 import com.essiembre.eclipse.rbe.model.tree.visitors.IsCommentedVisitor;
 import com.essiembre.eclipse.rbe.model.tree.visitors.IsMissingValueVisitor;
@@ -59,39 +65,14 @@ public class KeyTreeLabelProvider
     private Font groupFontNoKey = UIUtils.createFont(SWT.NORMAL);
 
     
+    /** Decoration cache (key=KeyTreeItem; value=Decoration). */
+    private final DecorationCache decorations = new DecorationCache();
+    
     /**
      * @see ILabelProvider#getImage(Object)
      */
     public Image getImage(Object element) {
-        KeyTreeItem treeItem = ((KeyTreeItem) element);
-        
-        int iconFlags = 0;
-
-        // Figure out background icon
-        if (treeItem.getKeyTree().getBundleGroup().isKey(treeItem.getId())) {
-            IsCommentedVisitor commentedVisitor = new IsCommentedVisitor();
-            treeItem.accept(commentedVisitor, null);
-            if (commentedVisitor.hasOneCommented()) {
-                iconFlags += KEY_COMMENTED;
-            } else {
-                iconFlags += KEY_DEFAULT;
-            }
-        } else {
-            iconFlags += KEY_NOT;
-        }
-        
-        // Maybe add warning icon        
-        if (RBEPreferences.getReportMissingValues()) {
-            IsMissingValueVisitor misValVisitor = new IsMissingValueVisitor();
-            treeItem.accept(misValVisitor, null);
-            if (misValVisitor.isMissingValue()) {
-                iconFlags += WARNING;
-            } else if (misValVisitor.isMissingChildValueOnly()) {
-                iconFlags += WARNING_GREY;
-            }
-        }
-
-        return generateImage(iconFlags);
+        return decorations.get((KeyTreeItem) element).image;
     }
 
     @Override
@@ -101,6 +82,7 @@ public class KeyTreeLabelProvider
 
     @Override
     public void dispose() {
+        decorations.dispose();
         groupFontKey.dispose();
         groupFontNoKey.dispose();
         keyFont.dispose();
@@ -109,32 +91,12 @@ public class KeyTreeLabelProvider
 
     @Override
     public Font getFont(Object element) {
-        KeyTreeItem item = (KeyTreeItem) element; 
-        if (item.getChildren().size() > 0) {
-            if (item.getKeyTree().getBundleGroup().isKey(item.getId())) {
-                return groupFontKey;
-            }
-            return groupFontNoKey;
-        }
-        return keyFont;
+        return decorations.get((KeyTreeItem) element).font;
     }
 
     @Override
     public Color getForeground(Object element) {
-        KeyTreeItem treeItem = (KeyTreeItem) element; 
-//        // No key
-//        if (!treeItem.getKeyTree().getBundleGroup().isKey(treeItem.getId())) {
-//            return colorInactive;
-//        }
-
-        // Commented
-        IsCommentedVisitor commentedVisitor = new IsCommentedVisitor();
-        treeItem.accept(commentedVisitor, null);
-        if (commentedVisitor.hasOneCommented()) {
-            return colorCommented;
-        }
-
-        return null;
+        return decorations.get((KeyTreeItem) element).foreground;
     }
 
     @Override
@@ -143,6 +105,61 @@ public class KeyTreeLabelProvider
         return null;
     }
     
+    /**
+     * Computes the decoration of a key tree item.  This is where the
+     * (potentially expensive) group-wide lookups happen, so it should only
+     * be invoked by the decoration cache.
+     * @param treeItem the item to decorate
+     * @return item decoration
+     */
+    private Decoration computeDecoration(KeyTreeItem treeItem) {
+        Decoration decoration = new Decoration();
+        boolean isKey = treeItem.getKeyTree().getBundleGroup().isKey(
+                treeItem.getId());
+        IsCommentedVisitor commentedVisitor = new IsCommentedVisitor();
+        treeItem.accept(commentedVisitor, null);
+
+        // Figure out background icon
+        int iconFlags = 0;
+        if (isKey) {
+            if (commentedVisitor.hasOneCommented()) {
+                iconFlags += KEY_COMMENTED;
+            } else {
+                iconFlags += KEY_DEFAULT;
+            }
+        } else {
+            iconFlags += KEY_NOT;
+        }
+        
+        // Maybe add warning icon        
+        decoration.reportMissingValues = 
+                RBEPreferences.getReportMissingValues();
+        if (decoration.reportMissingValues) {
+            IsMissingValueVisitor misValVisitor = new IsMissingValueVisitor();
+            treeItem.accept(misValVisitor, null);
+            if (misValVisitor.isMissingValue()) {
+                iconFlags += WARNING;
+            } else if (misValVisitor.isMissingChildValueOnly()) {
+                iconFlags += WARNING_GREY;
+            }
+        }
+        decoration.iconFlags = iconFlags;
+        decoration.image = generateImage(iconFlags);
+
+        // Font
+        if (treeItem.getChildren().size() > 0) {
+            decoration.font = isKey ? groupFontKey : groupFontNoKey;
+        } else {
+            decoration.font = keyFont;
+        }
+
+        // Commented
+        if (commentedVisitor.hasOneCommented()) {
+            decoration.foreground = colorCommented;
+        }
+        return decoration;
+    }
+
     /**
      * Generates an image based on icon flags. 
      * @param iconFlags
@@ -196,4 +213,121 @@ public class KeyTreeLabelProvider
         }
         return image;
     }
+
+    /**
+     * Computed decoration state of a key tree item.
+     */
+    private static class Decoration {
+        /** Icon flags used to generate the image. */
+        private int iconFlags;
+        /** Whether missing values were reported when computed. */
+        private boolean reportMissingValues;
+        private Image image;
+        private Font font;
+        private Color foreground;
+    }
+
+    /**
+     * Caches item decorations until the key tree reports a change affecting
+     * them.  A change to an item invalidates the item and all its ancestors,
+     * since group decorations depend on their children.
+     */
+    private class DecorationCache implements IDeltaListener {
+
+        private final Map<KeyTreeItem, Decoration> cache = new HashMap<>();
+        /** Key tree we are listening to. */
+        private KeyTree keyTree;
+
+        /**
+         * Gets the decoration for the given item, computing it if needed.
+         * @param item key tree item
+         * @return item decoration
+         */
+        private Decoration get(KeyTreeItem item) {
+            attach(item.getKeyTree());
+            Decoration decoration = cache.get(item);
+            if (decoration == null || decoration.reportMissingValues 
+                    != RBEPreferences.getReportMissingValues()) {
+                decoration = computeDecoration(item);
+                cache.put(item, decoration);
+            }
+            return decoration;
+        }
+
+        /**
+         * Starts listening to the given tree.  This is done on first read
+         * rather than on creation so we are registered after the viewer
+         * content provider, and therefore notified before it refreshes
+         * (listeners are notified in reverse registration order).
+         * @param tree key tree
+         */
+        private void attach(KeyTree tree) {
+            if (tree == keyTree) {
+                return;
+            }
+            dispose();
+            keyTree = tree;
+            keyTree.addListener(this);
+            keyTree.getBundleGroup().addListener(bundleGroupListener);
+        }
+
+        private void dispose() {
+            if (keyTree != null) {
+                keyTree.removeListener(this);
+                keyTree.getBundleGroup().removeListener(bundleGroupListener);
+                keyTree = null;
+            }
+            cache.clear();
+        }
+
+        /**
+         * Removes the given item and its ancestors from the cache.
+         * @param changed the item that changed
+         */
+        private void invalidate(Object changed) {
+            if (changed instanceof KeyTree) {
+                cache.clear();
+                return;
+            }
+            Object item = changed;
+            while (item instanceof KeyTreeItem) {
+                cache.remove(item);
+                item = ((KeyTreeItem) item).getParent();
+            }
+        }
+
+        @Override
+        public void add(DeltaEvent event) {
+            invalidate(event.receiver());
+        }
+        @Override
+        public void remove(DeltaEvent event) {
+            invalidate(event.receiver());
+        }
+        @Override
+        public void modify(DeltaEvent event) {
+            invalidate(event.receiver());
+        }
+        @Override
+        public void select(DeltaEvent event) {
+            // do nothing
+        }
+
+        /** New bundles may leave any key with missing values. */
+        private final IDeltaListener bundleGroupListener = 
+                new IDeltaListener() {
+            public void add(DeltaEvent event) {
+                cache.clear();
+            }
+            public void remove(DeltaEvent event) {
+                // do nothing
+            }
+            public void modify(DeltaEvent event) {
+                // do nothing
+            }
+            public void select(DeltaEvent event) {
+                // do nothing
+            }
+        };
+    }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Tree;
+
+import com.essiembre.eclipse.rbe.model.DeltaEvent;
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
+
+/**
+ * Content provider for key tree viewers created with the
+ * <code>SWT.VIRTUAL</code> style.  Only the children of visible rows are
+ * ever asked for, and they are looked up by index.  Since viewer filters
+ * are not supported on lazy viewers, items hidden by the key tree filter
+ * are skipped here.
+ */
+public class KeyTreeLazyContentProvider extends KeyTreeContentProvider
+        implements ILazyTreeContentProvider {
+
+    /** Visible children of filtered parents (key=parent). */
+    private final Map<Object, KeyTreeItem[]> filteredChildren =
+            new HashMap<>();
+    /** Stamp of the filter used to compute the visible children. */
+    private int filterStamp = -1;
+
+    @Override
+    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+        super.inputChanged(viewer, oldInput, newInput);
+        filteredChildren.clear();
+    }
+
+    @Override
+    public void updateElement(Object parent, int index) {
+        KeyTreeItem child = getChild(parent, index);
+        if (child != null) {
+            treeViewer.replace(parent, index, child);
+            /* A visible group always has visible children: its descendants
+             * contain its id, so they match any filter it matches. */
+            treeViewer.setHasChildren(child, !child.isLeaf());
+        }
+    }
+
+    @Override
+    public void updateChildCount(Object element, int currentChildCount) {
+        int count = getChildCount(element);
+        if (count != currentChildCount) {
+            treeViewer.setChildCount(element, count);
+        }
+    }
+
+    @Override
+    public void add(DeltaEvent event) {
+        filteredChildren.clear();
+        super.add(event);
+    }
+
+    @Override
+    public void remove(DeltaEvent event) {
+        filteredChildren.clear();
+        super.remove(event);
+    }
+
+    /**
+     * Removes the items shown for removed root items, updates the number
+     * of root items, and clears those from the first changed one on, for
+     * the viewer to ask for them again when shown.  Items before it are
+     * left as they are.
+     * @param keyTree key tree shown by the viewer
+     * @param items root items added or removed (or equal to those)
+     */
+    @Override
+    /*default*/ void updateRootItems(
+            KeyTree keyTree, Collection<KeyTreeItem> items) {
+        for (KeyTreeItem item : items) {
+            if (treeViewer.testFindItem(item) != null) {
+                treeViewer.remove(item);
+            }
+        }
+        filteredChildren.remove(keyTree);
+        int count = getChildCount(keyTree);
+        int first = count;
+        for (KeyTreeItem item : items) {
+            first = Math.min(first, indexOf(keyTree, item));
+        }
+        treeViewer.setChildCount(keyTree, count);
+        Tree tree = treeViewer.getTree();
+        int last = Math.min(count, tree.getItemCount());
+        for (int i = first; i < last; i++) {
+            tree.clear(i, true);
+        }
+    }
+
+    /**
+     * Gets the index of a visible child, or the index it would have.
+     * @param parent tree or tree item
+     * @param item child item
+     * @return child index
+     */
+    private int indexOf(Object parent, KeyTreeItem item) {
+        int low = 0;
+        int high = getChildCount(parent) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = getChild(parent, mid).compareTo(item);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the number of visible children of an element.
+     * @param element tree or tree item
+     * @return number of children
+     */
+    private int getChildCount(Object element) {
+        if (isFiltered(element)) {
+            return getFilteredChildren(element).length;
+        } else if (element instanceof KeyTree) {
+            return ((KeyTree) element).getRootKeyItemCount();
+        } else if (element instanceof KeyTreeItem) {
+            return ((KeyTreeItem) element).getChildCount();
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the visible child of an element found at the given index.
+     * @param parent tree or tree item
+     * @param index child index
+     * @return child, or <code>null</code> if there are none at that index
+     */
+    private KeyTreeItem getChild(Object parent, int index) {
+        if (index >= getChildCount(parent)) {
+            return null;
+        }
+        if (isFiltered(parent)) {
+            return getFilteredChildren(parent)[index];
+        } else if (parent instanceof KeyTree) {
+            return ((KeyTree) parent).getRootKeyItem(index);
+        }
+        return ((KeyTreeItem) parent).getChild(index);
+    }
+
+    /**
+     * Checks whether the key tree an element belongs to is currently
+     * filtered, resetting the visible children when the filter changed.
+     * @param element tree or tree item
+     * @return <code>true</code> if filtered
+     */
+    private boolean isFiltered(Object element) {
+        KeyTree keyTree = null;
+        if (element instanceof KeyTree) {
+            keyTree = (KeyTree) element;
+        } else if (element instanceof KeyTreeItem) {
+            keyTree = ((KeyTreeItem) element).getKeyTree();
+        } else {
+            return false;
+        }
+        if (keyTree.getFilterStamp() != filterStamp) {
+            filterStamp = keyTree.getFilterStamp();
+            filteredChildren.clear();
+        }
+        String filter = keyTree.getFilter();
+        return filter != null && filter.length() > 0;
+    }
+
+    /**
+     * Gets (and caches) the visible children of a parent element.
+     * @param parent tree or tree item
+     * @return visible children
+     */
+    private KeyTreeItem[] getFilteredChildren(Object parent) {
+        KeyTreeItem[] visibleChildren = filteredChildren.get(parent);
+        if (visibleChildren == null) {
+            List<KeyTreeItem> visible = new ArrayList<>();
+            Iterable<KeyTreeItem> children = null;
+            if (parent instanceof KeyTree) {
+                children = ((KeyTree) parent).getRootKeyItems();
+            } else {
+                children = ((KeyTreeItem) parent).getChildren();
+            }
+            for (KeyTreeItem child : children) {
+                if (child.isVisible()) {
+                    visible.add(child);
+                }
+            }
+            visibleChildren = visible.toArray(new KeyTreeItem[visible.size()]);
+            filteredChildren.put(parent, visibleChildren);
+        }
+        return visibleChildren;
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.swt.widgets.Display;
+
+import com.essiembre.eclipse.rbe.model.DeltaEvent;
+import com.essiembre.eclipse.rbe.model.IDeltaListener;
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
+
+/**
+ * Collects key tree changes and applies them to all viewers showing the
+ * tree (editor tree and outline) in batches.  Changes are merged into as
+ * few subtree refreshes and label updates as possible, and applied on the
+ * next UI event loop tick, within a time budget.  Work left when the
+ * budget is exhausted is carried over to the following tick.  Items
+ * added to or removed from the tree root are added to or removed from
+ * viewers one by one, the whole tree being refreshed only when its
+ * layout changes.
+ */
+public class KeyTreeRefreshScheduler implements IDeltaListener {
+
+    /** Maximum time spent refreshing viewers per tick (milliseconds). */
+    private static final long TIME_BUDGET = 20;
+    /** Above this number of subtrees or root items to refresh, the whole
+     *  tree is. */
+    private static final int MAX_SUBTREE_REFRESHES = 100;
+
+    /** Schedulers (key=KeyTree; value=KeyTreeRefreshScheduler). */
+    private static final Map<KeyTree, KeyTreeRefreshScheduler> SCHEDULERS =
+            new HashMap<>();
+
+    /** Tree we are listening to. */
+    private final KeyTree keyTree;
+    /** Pending changes (key=TreeViewer; value=PendingChanges). */
+    private final Map<TreeViewer, PendingChanges> viewers =
+            new LinkedHashMap<>();
+    /** Whether a refresh is already queued on the display. */
+    private boolean scheduled;
+
+    private final Runnable refreshRunnable = new Runnable() {
+        public void run() {
+            scheduled = false;
+            refresh(System.currentTimeMillis() + TIME_BUDGET);
+        }
+    };
+
+    /**
+     * Constructor.
+     * @param keyTree key tree for which to schedule refreshes
+     */
+    private KeyTreeRefreshScheduler(KeyTree keyTree) {
+        super();
+        this.keyTree = keyTree;
+    }
+
+    /**
+     * Gets the scheduler shared by all viewers of the given tree.
+     * @param keyTree a key tree
+     * @return refresh scheduler
+     */
+    public static KeyTreeRefreshScheduler getScheduler(KeyTree keyTree) {
+        synchronized (SCHEDULERS) {
+            KeyTreeRefreshScheduler scheduler = SCHEDULERS.get(keyTree);
+            if (scheduler == null) {
+                scheduler = new KeyTreeRefreshScheduler(keyTree);
+                SCHEDULERS.put(keyTree, scheduler);
+            }
+            return scheduler;
+        }
+    }
+
+    /**
+     * Adds a viewer to be refreshed by this scheduler.
+     * @param viewer tree viewer
+     */
+    public void addViewer(TreeViewer viewer) {
+        if (viewers.isEmpty()) {
+            keyTree.addListener(this);
+        }
+        PendingChanges pending = new PendingChanges();
+        pending.layoutId = keyTree.getUpdater().getLayoutId();
+        viewers.put(viewer, pending);
+    }
+
+    /**
+     * Removes a viewer from this scheduler.  The scheduler is discarded
+     * once it has no more viewers.
+     * @param viewer tree viewer
+     */
+    public void removeViewer(TreeViewer viewer) {
+        viewers.remove(viewer);
+        if (viewers.isEmpty()) {
+            keyTree.removeListener(this);
+            synchronized (SCHEDULERS) {
+                SCHEDULERS.remove(keyTree);
+            }
+        }
+    }
+
+    /**
+     * Applies all pending changes right away, regardless of the time
+     * budget.  To be invoked before acting on viewer items that may not
+     * exist yet (e.g. selecting a newly added key).
+     */
+    public void flush() {
+        refresh(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void add(DeltaEvent event) {
+        Object added = event.receiver();
+        if (added instanceof KeyTreeItem) {
+            markStructureDirty((KeyTreeItem) added);
+        } else if (added != null) {
+            markAllDirty();
+        }
+    }
+
+    @Override
+    public void remove(DeltaEvent event) {
+        Object removed = event.receiver();
+        if (removed instanceof KeyTreeItem) {
+            markStructureDirty((KeyTreeItem) removed);
+        }
+    }
+
+    @Override
+    public void modify(DeltaEvent event) {
+        Object item = event.receiver();
+        // ancestors decorations depend on their children
+        while (item instanceof KeyTreeItem) {
+            for (PendingChanges pending : viewers.values()) {
+                pending.labels.add(item);
+            }
+            item = ((KeyTreeItem) item).getParent();
+        }
+        schedule();
+    }
+
+    @Override
+    public void select(DeltaEvent event) {
+        // do nothing
+    }
+
+    private void markStructureDirty(KeyTreeItem item) {
+        Object parent = item.getParent();
+        for (PendingChanges pending : viewers.values()) {
+            if (parent == keyTree) {
+                pending.rootItems.put(item.getId(), item);
+            } else {
+                pending.structures.add(parent);
+            }
+        }
+        schedule();
+    }
+
+    private void markAllDirty() {
+        for (PendingChanges pending : viewers.values()) {
+            pending.all = true;
+            pending.structures.clear();
+            pending.rootItems.clear();
+            pending.labels.clear();
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            Display.getDefault().asyncExec(refreshRunnable);
+        }
+    }
+
+    /**
+     * Applies pending changes to each viewer until the given deadline.
+     * @param deadline time after which remaining changes are rescheduled
+     */
+    private void refresh(long deadline) {
+        boolean done = true;
+        for (Iterator<Map.Entry<TreeViewer, PendingChanges>> iter =
+                viewers.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<TreeViewer, PendingChanges> entry = iter.next();
+            TreeViewer viewer = entry.getKey();
+            if (viewer.getControl() == null
+                    || viewer.getControl().isDisposed()) {
+                continue;
+            }
+            if (!refresh(viewer, entry.getValue(), deadline)) {
+                done = false;
+            }
+        }
+        if (!done) {
+            schedule();
+        }
+    }
+
+    /**
+     * Applies pending changes to a viewer until the given deadline.
+     * @param viewer tree viewer
+     * @param pending changes pending for that viewer
+     * @param deadline time after which remaining changes are left pending
+     * @return <code>true</code> if all changes were applied
+     */
+    private boolean refresh(
+            TreeViewer viewer, PendingChanges pending, long deadline) {
+        if (pending.isEmpty()) {
+            return true;
+        }
+        viewer.getControl().setRedraw(false);
+        try {
+            // Structural changes
+            Set<Object> targets = getRefreshTargets(viewer, pending);
+            if (pending.all || targets.size() > MAX_SUBTREE_REFRESHES
+                    || pending.rootItems.size() > MAX_SUBTREE_REFRESHES) {
+                refreshAll(viewer, pending);
+                pending.clear();
+                return true;
+            }
+            pending.structures.clear();
+            if (!pending.rootItems.isEmpty()) {
+                ((KeyTreeContentProvider) viewer.getContentProvider())
+                        .updateRootItems(keyTree, pending.rootItems.values());
+                pending.rootItems.clear();
+            }
+            for (Iterator<Object> iter = targets.iterator(); iter.hasNext();) {
+                viewer.refresh(iter.next(), true);
+                iter.remove();
+                if (System.currentTimeMillis() > deadline) {
+                    pending.structures.addAll(targets);
+                    return false;
+                }
+            }
+
+            // Label changes
+            List<Object> labels = new ArrayList<>(pending.labels.size());
+            for (Object element : pending.labels) {
+                if (isAttached(element)) {
+                    labels.add(element);
+                }
+            }
+            pending.labels.clear();
+            viewer.update(labels.toArray(), null);
+            return true;
+        } finally {
+            viewer.getControl().setRedraw(true);
+        }
+    }
+
+    /**
+     * Refreshes a whole viewer.  If the tree layout changed, the expanded
+     * items of the previous layout are remembered, and those of the new
+     * one restored if it was shown before.
+     * @param viewer tree viewer
+     * @param pending changes pending for that viewer
+     */
+    private void refreshAll(TreeViewer viewer, PendingChanges pending) {
+        String layoutId = keyTree.getUpdater().getLayoutId();
+        Object[] expandedElements = null;
+        if (layoutId == null ? pending.layoutId != null
+                : !layoutId.equals(pending.layoutId)) {
+            if (pending.layoutId != null) {
+                pending.expandedElements.put(
+                        pending.layoutId, viewer.getExpandedElements());
+            }
+            expandedElements = pending.expandedElements.remove(layoutId);
+            pending.layoutId = layoutId;
+        }
+        viewer.refresh(true);
+        if (expandedElements != null) {
+            viewer.setExpandedElements(expandedElements);
+        }
+    }
+
+    /**
+     * Gets the smallest set of elements whose refresh covers all pending
+     * structural changes of a viewer.  Elements no longer part of the tree
+     * or not yet known to the viewer are replaced by their closest
+     * ancestor that is, and elements having an ancestor in the set are
+     * dropped.  Elements with no such ancestor are under a root item
+     * added or removed, which is added to the pending root items.
+     * @param viewer tree viewer
+     * @param pending pending changes
+     * @return elements to refresh
+     */
+    private Set<Object> getRefreshTargets(
+            TreeViewer viewer, PendingChanges pending) {
+        Set<Object> targets = new LinkedHashSet<>();
+        if (pending.all) {
+            return targets;
+        }
+        for (Object element : pending.structures) {
+            Object target = element;
+            Object rootItem = null;
+            while (target instanceof KeyTreeItem && (!isAttached(target)
+                    || viewer.testFindItem(target) == null)) {
+                rootItem = target;
+                target = ((KeyTreeItem) target).getParent();
+            }
+            if (target instanceof KeyTreeItem) {
+                targets.add(target);
+            } else if (rootItem != null) {
+                KeyTreeItem item = (KeyTreeItem) rootItem;
+                pending.rootItems.put(item.getId(), item);
+            }
+        }
+        for (Iterator<Object> iter = targets.iterator(); iter.hasNext();) {
+            Object parent = ((KeyTreeItem) iter.next()).getParent();
+            while (parent instanceof KeyTreeItem) {
+                if (targets.contains(parent)) {
+                    iter.remove();
+                    break;
+                }
+                parent = ((KeyTreeItem) parent).getParent();
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Checks whether an element is (still) part of the key tree.
+     * @param element element to check
+     * @return <code>true</code> if part of the tree
+     */
+    private boolean isAttached(Object element) {
+        if (element instanceof KeyTreeItem) {
+            KeyTreeItem item = (KeyTreeItem) element;
+            return keyTree.getKeyTreeItem(item.getId()) == item;
+        }
+        return element == keyTree;
+    }
+
+    /**
+     * Changes waiting to be applied to a viewer, and its layout state.
+     */
+    private static class PendingChanges {
+        /** Whether the whole tree needs refreshing. */
+        private boolean all;
+        /** Elements whose children changed. */
+        private final Set<Object> structures = new LinkedHashSet<>();
+        /** Root items added or removed (key=item id). */
+        private final Map<String, KeyTreeItem> rootItems =
+                new LinkedHashMap<>();
+        /** Elements whose labels changed. */
+        private final Set<Object> labels = new LinkedHashSet<>();
+        /** Layout shown by the viewer. */
+        private String layoutId;
+        /** Expanded elements of layouts no longer shown (key=layout id). */
+        private final Map<String, Object[]> expandedElements =
+                new HashMap<>();
+
+        private boolean isEmpty() {
+            return !all && structures.isEmpty() && rootItems.isEmpty()
+                    && labels.isEmpty();
+        }
+        private void clear() {
+            all = false;
+            structures.clear();
+            rootItems.clear();
+            labels.clear();
+        }
+    }
+}
@@ -72,6 +72,9 @@ public class TreeViewerContributor {
     public  static final int MENU_COLLAPSE  = 7 ;
     public  static final int MENU_GETKEY    = 8 ;
     private static final int MENU_COUNT     = 9 ;
+
+    /** Most items shown at once when expanding a virtual tree. */
+    private static final int MAX_VIRTUAL_EXPANDED = 200;
    
 
 
@@ -174,7 +177,7 @@ public class TreeViewerContributor {
         actions[MENU_EXPAND] = new Action () {
             @Override
             public void run() {
-                treeviewer.expandAll();
+                expandAll(treeviewer, tree);
             }
         };
         actions[MENU_EXPAND].setText(RBEPlugin.getString("key.expandAll"));
@@ -303,7 +306,7 @@ public class TreeViewerContributor {
             BundleGroup bundleGroup = tree.getBundleGroup();
             Collection<KeyTreeItem> items = new ArrayList<>();
             items.add(selectedItem);
-            items.addAll(selectedItem.getNestedChildren());
+            items.addAll(tree.getNestedKeyTreeItems(selectedItem));
             for (Iterator<KeyTreeItem> iter = items.iterator(); 
                     iter.hasNext();) {
                 KeyTreeItem item = (KeyTreeItem) iter.next();
@@ -326,7 +329,7 @@ public class TreeViewerContributor {
         BundleGroup bundleGroup = tree.getBundleGroup();
         Collection<KeyTreeItem> items = new ArrayList<>();
         items.add(selectedItem);
-        items.addAll(selectedItem.getNestedChildren());
+        items.addAll(tree.getNestedKeyTreeItems(selectedItem));
         for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
             KeyTreeItem item = (KeyTreeItem) iter.next();
             bundleGroup.uncommentKey(item.getId());
@@ -362,7 +365,7 @@ public class TreeViewerContributor {
             BundleGroup bundleGroup = tree.getBundleGroup();
             Collection<KeyTreeItem> items = new ArrayList<>();
             items.add(selectedItem);
-            items.addAll(selectedItem.getNestedChildren());
+            items.addAll(tree.getNestedKeyTreeItems(selectedItem));
             for (Iterator<KeyTreeItem> iter = items.iterator();
                     iter.hasNext();) {
                 KeyTreeItem item = iter.next();
@@ -380,7 +383,7 @@ public class TreeViewerContributor {
         BundleGroup bundleGroup = tree.getBundleGroup();
         Collection<KeyTreeItem> items = new ArrayList<>();
         items.add(selectedItem);
-        items.addAll(selectedItem.getNestedChildren());
+        items.addAll(tree.getNestedKeyTreeItems(selectedItem));
         for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
             KeyTreeItem item = (KeyTreeItem) iter.next();
             bundleGroup.commentKey(item.getId());
@@ -418,7 +421,7 @@ public class TreeViewerContributor {
             BundleGroup bundleGroup = tree.getBundleGroup();
             Collection<KeyTreeItem> items = new ArrayList<>();
             items.add(selectedItem);
-            items.addAll(selectedItem.getNestedChildren());
+            items.addAll(tree.getNestedKeyTreeItems(selectedItem));
             for (Iterator<KeyTreeItem> iter =
                     items.iterator(); iter.hasNext();) {
                 KeyTreeItem item = (KeyTreeItem) iter.next();
@@ -483,7 +486,8 @@ public class TreeViewerContributor {
             }
             if(structuralupdater instanceof GroupedKeyTreeUpdater) {
                 if(RBEPreferences.getKeyTreeExpanded()) {
-                    treeviewer.expandAll();
+                    KeyTreeRefreshScheduler.getScheduler(tree).flush();
+                    expandAll(treeviewer, tree);
                 }            
             }
         } else if(action == KT_FLAT) {
@@ -509,7 +513,8 @@ public class TreeViewerContributor {
                 tree.setUpdater(structuralupdater);
             }
             if(RBEPreferences.getKeyTreeExpanded()) {
-                treeviewer.expandAll();
+                KeyTreeRefreshScheduler.getScheduler(tree).flush();
+                expandAll(treeviewer, tree);
             }            
             mode = mode | KT_HIERARCHICAL;
         }
@@ -517,6 +522,58 @@ public class TreeViewerContributor {
     }
     
 
+    /**
+     * Gets whether the given viewer creates its items as they are shown
+     * (<code>SWT.VIRTUAL</code> style).
+     * @param viewer tree viewer
+     * @return <code>true</code> if virtual
+     */
+    public static boolean isVirtual(TreeViewer viewer) {
+        return (viewer.getTree().getStyle() & SWT.VIRTUAL) != 0;
+    }
+
+    /**
+     * Expands all visible items of the given viewer.  Expanding all items
+     * of a virtual viewer would create and label every item, so only
+     * the groups holding the first visible items are expanded then.
+     * @param viewer tree viewer
+     * @param keyTree key tree shown by the viewer
+     */
+    public static void expandAll(TreeViewer viewer, KeyTree keyTree) {
+        if (isVirtual(viewer)) {
+            expandVisible(viewer, keyTree.getRootKeyItems(),
+                    MAX_VIRTUAL_EXPANDED);
+        } else {
+            viewer.expandAll();
+        }
+    }
+
+    /**
+     * Expands the visible groups among the given items and their
+     * descendants, in tree order, until enough items are shown.
+     * @param viewer tree viewer
+     * @param items items to expand
+     * @param max most items to show
+     * @return number of items that can still be shown
+     */
+    private static int expandVisible(
+            TreeViewer viewer, Collection<KeyTreeItem> items, int max) {
+        int left = max;
+        for (KeyTreeItem item : items) {
+            if (left <= 0) {
+                break;
+            }
+            if (item.isVisible()) {
+                left--;
+                if (!item.isLeaf()) {
+                    viewer.expandToLevel(item, 1);
+                    left = expandVisible(viewer, item.getChildren(), left);
+                }
+            }
+        }
+        return left;
+    }
+
     /**
      * Returns the currently used mode.
      * @return   The currently used mode.
@@ -16,28 +16,50 @@
 package com.essiembre.eclipse.rbe.ui.editor.resources;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.PartInitException;
 
+import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.bundle.Bundle;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.ParseOptions;
 import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
 import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
 import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
 import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
+import com.essiembre.eclipse.rbe.model.utils.HashUtils;
+import com.essiembre.eclipse.rbe.model.workbench.BundleGroupRegistry;
+import com.essiembre.eclipse.rbe.model.workbench.ParseCache;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 
 /**
@@ -49,11 +71,22 @@ import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 public class ResourceManager {
 
     private IResourceFactory resourcesFactory;
+    /** Handle on the bundle group, shared with other editors. */
+    private final BundleGroupRegistry.Handle bundleGroupHandle;
     private final BundleGroup bundleGroup;
+    private final IDeltaListener bundleGroupListener;
     private final KeyTree keyTree;
     /** key=Locale;value=SourceEditor */
     /*default*/ final Map<Locale, SourceEditor> sourceEditors = new HashMap<>();
     private final List<Locale> locales = new ArrayList<>();
+    /** Source editor whose content is being loaded into the model. */
+    private SourceEditor loadingEditor;
+    /** Files changed on disk, waiting to be reloaded. */
+    private final Set<IFile> changedFiles = new LinkedHashSet<>();
+    /** Invoked after changed files are reloaded. */
+    private volatile Runnable reloadListener;
+    private final Job reloadJob = new ReloadJob();
+    private volatile boolean disposed;
     
     /**
      * Constructor.
@@ -65,29 +98,43 @@ public class ResourceManager {
             throws CoreException {
         super();
         resourcesFactory = ResourceFactory.createFactory(site, file);
-        bundleGroup = new BundleGroup();
         SourceEditor[] editors = resourcesFactory.getSourceEditors();
+        IFile[] files = new IFile[editors.length];
+        for (int i = 0; i < editors.length; i++) {
+            files[i] = editors[i].getFile();
+        }
+        // files unchanged since the bundle group was loaded are not parsed
+        bundleGroupHandle = BundleGroupRegistry.getInstance().acquire(files);
+        bundleGroup = bundleGroupHandle.getBundleGroup();
         for (int i = 0; i < editors.length; i++) {
             SourceEditor sourceEditor = editors[i];
             Locale locale = sourceEditor.getLocale();
             sourceEditors.put(locale, sourceEditor);
             locales.add(locale);
-            bundleGroup.addBundle(
-                    locale, PropertiesParser.parse(sourceEditor.getContent()));            
+            loadBundle(sourceEditor, sourceEditor.getContent());
         }
-        bundleGroup.addListener(new IDeltaListener() {
+        // large groups keep their entries in columns until edited
+        bundleGroup.compact();
+        bundleGroupListener = new IDeltaListener() {
             public void add(DeltaEvent event) {}    // do nothing
             public void remove(DeltaEvent event) {} // do nothing
             public void modify(DeltaEvent event) {
                 final Bundle bundle = (Bundle) event.receiver();
                 final SourceEditor editor = 
                         (SourceEditor) sourceEditors.get(bundle.getLocale());
-                String editorContent = PropertiesGenerator.generate(bundle);
+                if (editor == loadingEditor) {
+                    // the editor content is what the bundle comes from
+                    return;
+                }
+                String editorContent = PropertiesGenerator.generate(
+                        bundle, RBEPreferences.getFormatOptions());
                 editor.setContent(editorContent);
+                setLoaded(editor, HashUtils.fnv1a(editorContent));
             }
             public void select(DeltaEvent event) {
             }
-        });
+        };
+        bundleGroup.addListener(bundleGroupListener);
         
         KeyTreeUpdater treeUpdater = null;
         if (RBEPreferences.getKeyTreeHierarchical()) {
@@ -129,13 +176,43 @@ public class ResourceManager {
     }
     
     /**
-     * Save all dirty editors.
+     * Save all dirty editors.  Files are written in a single workspace
+     * operation, so resource listeners get notified once for all of them.
      * @param monitor progress monitor
      */
     public void save(IProgressMonitor monitor) {
+        final List<SourceEditor> dirtyEditors = new ArrayList<>();
+        ISchedulingRule rule = null;
+        IResourceRuleFactory ruleFactory =
+                ResourcesPlugin.getWorkspace().getRuleFactory();
         SourceEditor[] editors = resourcesFactory.getSourceEditors();
         for (int i = 0; i < editors.length; i++) {
-            editors[i].getEditor().doSave(monitor);
+            SourceEditor editor = editors[i];
+            if (editor.getEditor().isDirty()) {
+                dirtyEditors.add(editor);
+                IFile file = editor.getFile();
+                rule = MultiRule.combine(rule, file.exists()
+                        ? ruleFactory.modifyRule(file)
+                        : ruleFactory.createRule(file));
+            }
+        }
+        if (dirtyEditors.isEmpty()) {
+            return;
+        }
+        IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+            public void run(IProgressMonitor saveMonitor) {
+                SubMonitor subMonitor = SubMonitor.convert(
+                        saveMonitor, dirtyEditors.size());
+                for (SourceEditor editor : dirtyEditors) {
+                    editor.getEditor().doSave(subMonitor.newChild(1));
+                }
+            }
+        };
+        try {
+            ResourcesPlugin.getWorkspace().run(
+                    runnable, rule, IWorkspace.AVOID_UPDATE, monitor);
+        } catch (CoreException e) {
+            RBEPlugin.getDefault().getLog().log(e.getStatus());
         }
     }
         
@@ -191,24 +268,224 @@ public class ResourceManager {
                 resource, locale);
         sourceEditors.put(sourceEditor.getLocale(), sourceEditor);
         locales.add(locale);
-        bundleGroup.addBundle(
-                locale, PropertiesParser.parse(sourceEditor.getContent())); 
+        loadBundle(sourceEditor, sourceEditor.getContent());
         return sourceEditor;
     }
     /**
-     * Reloads the properties files (parse them).
+     * Reloads the properties files (parse them).  Only editors changed
+     * since last parsed are parsed, unless their content is the same as
+     * the content last loaded.
      */
     public void reloadProperties() {
         SourceEditor[] editors = resourcesFactory.getSourceEditors();
         for (int i = 0; i < editors.length; i++) {
             SourceEditor editor = editors[i];
             if (editor.isCacheDirty()) {
-                bundleGroup.addBundle(
-                        editor.getLocale(),
-                        PropertiesParser.parse(editor.getContent()));
+                loadBundle(editor, editor.getContent());
                 editor.resetCache();
             }
         }
     }
 
+    /**
+     * Reloads files changed on disk.  Files are read and parsed in the
+     * background, skipping files with the same content as last loaded, and
+     * the model is then updated in the UI thread.  Files with unsaved
+     * changes in their editor are left as is.
+     * @param files changed files
+     * @param listener invoked in the UI thread if the model was updated
+     */
+    public void reloadFiles(Collection<IFile> files, Runnable listener) {
+        synchronized (changedFiles) {
+            changedFiles.addAll(files);
+        }
+        reloadListener = listener;
+        reloadJob.schedule();
+    }
+
+    /**
+     * Stops reloading changed files, and releases the bundle group.
+     */
+    public void dispose() {
+        if (disposed) {
+            return;
+        }
+        disposed = true;
+        reloadJob.cancel();
+        bundleGroup.removeListener(bundleGroupListener);
+        keyTree.dispose();
+        BundleGroupRegistry.getInstance().release(bundleGroupHandle);
+    }
+
+    /**
+     * Loads source editor content into the model, unless it is the same
+     * as the content last loaded.
+     * @param editor source editor
+     * @param content editor content
+     */
+    private void loadBundle(SourceEditor editor, String content) {
+        long hash = HashUtils.fnv1a(content);
+        if (bundleGroupHandle.isLoaded(editor.getFile(), hash)
+                && bundleGroup.getBundle(editor.getLocale()) != null) {
+            setLoaded(editor, hash);
+        } else if (!editor.isParsed(hash)) {
+            loadBundle(editor, parse(editor.getFile(), content, hash,
+                    RBEPreferences.getParseOptions()), hash);
+        }
+    }
+
+    /**
+     * Parses the content of a properties file, or reads it from the parse
+     * cache if the same content was parsed before.
+     * @param file properties file
+     * @param content content to parse
+     * @param hash hash of the content
+     * @param options parsing options
+     * @return bundle
+     */
+    private static Bundle parse(IFile file, String content, long hash,
+            ParseOptions options) {
+        ParseCache cache = ParseCache.getInstance();
+        Bundle bundle = cache.get(file, hash, options);
+        if (bundle == null) {
+            bundle = PropertiesParser.parse(content, options);
+            cache.put(file, hash, options, bundle);
+        }
+        return bundle;
+    }
+
+    /**
+     * Loads a bundle parsed from source editor content into the model,
+     * without generating the content back.
+     * @param editor source editor
+     * @param bundle parsed bundle
+     * @param hash hash of the content parsed
+     */
+    private void loadBundle(SourceEditor editor, Bundle bundle, long hash) {
+        loadingEditor = editor;
+        try {
+            bundleGroup.addBundle(editor.getLocale(), bundle);
+        } finally {
+            loadingEditor = null;
+        }
+        setLoaded(editor, hash);
+    }
+
+    /**
+     * Records the content the model now holds for a source editor.
+     * @param editor source editor
+     * @param hash hash of the content
+     */
+    private void setLoaded(SourceEditor editor, long hash) {
+        editor.setParsed(hash);
+        bundleGroupHandle.setLoaded(editor.getFile(), hash);
+    }
+
+    /**
+     * Gets the source editor of a file.
+     * @param file properties file
+     * @return source editor, or <code>null</code>
+     */
+    private SourceEditor getSourceEditor(IFile file) {
+        SourceEditor[] editors = resourcesFactory.getSourceEditors();
+        for (int i = 0; i < editors.length; i++) {
+            if (editors[i].getFile().equals(file)) {
+                return editors[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a file.
+     * @param file file to read
+     * @return file content
+     * @throws CoreException problem reading file
+     * @throws IOException problem reading file
+     */
+    private static String readFile(IFile file)
+            throws CoreException, IOException {
+        StringBuilder content = new StringBuilder();
+        try (InputStream in = file.getContents(true);
+                Reader reader = new InputStreamReader(in, file.getCharset())) {
+            char[] buf = new char[8192];
+            for (int read; (read = reader.read(buf)) != -1;) {
+                content.append(buf, 0, read);
+            }
+        }
+        return content.toString();
+    }
+
+    /**
+     * Reads and parses changed files, then loads them in the model.
+     */
+    private class ReloadJob extends Job {
+        private ReloadJob() {
+            super(RBEPlugin.getString("editor.reload.job"));
+            setSystem(true);
+        }
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            List<IFile> files;
+            synchronized (changedFiles) {
+                files = new ArrayList<>(changedFiles);
+                changedFiles.clear();
+            }
+            final List<SourceEditor> editors = new ArrayList<>();
+            final List<Bundle> bundles = new ArrayList<>();
+            final List<Long> hashes = new ArrayList<>();
+            ParseOptions options = RBEPreferences.getParseOptions();
+            for (IFile file : files) {
+                if (monitor.isCanceled()) {
+                    return Status.CANCEL_STATUS;
+                }
+                SourceEditor editor = getSourceEditor(file);
+                if (editor == null || !file.exists()) {
+                    continue;
+                }
+                String content;
+                try {
+                    content = readFile(file);
+                } catch (CoreException | IOException e) {
+                    RBEPlugin.getDefault().getLog().log(new Status(
+                            IStatus.ERROR, RBEPlugin.ID,
+                            "Cannot reload " + file.getFullPath(), e));
+                    continue;
+                }
+                long hash = HashUtils.fnv1a(content);
+                if (!editor.isParsed(hash)) {
+                    editors.add(editor);
+                    bundles.add(parse(file, content, hash, options));
+                    hashes.add(hash);
+                }
+            }
+            if (!editors.isEmpty()) {
+                Display.getDefault().asyncExec(new Runnable() {
+                    public void run() {
+                        loadBundles(editors, bundles, hashes);
+                    }
+                });
+            }
+            return Status.OK_STATUS;
+        }
+        private void loadBundles(List<SourceEditor> editors,
+                List<Bundle> bundles, List<Long> hashes) {
+            if (disposed) {
+                return;
+            }
+            boolean loaded = false;
+            for (int i = 0; i < editors.size(); i++) {
+                SourceEditor editor = editors.get(i);
+                long hash = hashes.get(i);
+                if (!editor.getEditor().isDirty() && !editor.isParsed(hash)) {
+                    loadBundle(editor, bundles.get(i), hash);
+                    loaded = true;
+                }
+            }
+            Runnable listener = reloadListener;
+            if (loaded && listener != null) {
+                listener.run();
+            }
+        }
+    }
 }
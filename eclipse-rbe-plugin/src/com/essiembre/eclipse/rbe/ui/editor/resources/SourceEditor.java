@@ -16,14 +16,21 @@
 package com.essiembre.eclipse.rbe.ui.editor.resources;
 
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.TextSelection;
 import org.eclipse.ui.editors.text.TextEditor;
 import org.eclipse.ui.texteditor.ITextEditor;
 
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesIndex;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.utils.HashUtils;
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
 /**
  * Wrapper around a properties file text editor providing extra founctionality.
  * @author Pascal Essiembre
@@ -34,7 +41,28 @@ public class SourceEditor {
     private final Locale locale;
     private final IFile file;
     private final ITextEditor editor;
-    private String contentCache;
+    /** Where entries are in the document, once needed. */
+    private PropertiesIndex index;
+    /** Document listened to. */
+    private IDocument document;
+    /** Whether the document changed since last parsed. */
+    private boolean cacheDirty;
+    /** Hash of the content the model was last loaded from, or saved as. */
+    private volatile long parsedHash;
+    private final IDocumentListener documentListener = new IDocumentListener() {
+        public void documentAboutToBeChanged(DocumentEvent event) {
+            // nothing to do
+        }
+        public void documentChanged(DocumentEvent event) {
+            cacheDirty = true;
+            if (index != null) {
+                index.update(new DocumentText(event.getDocument()),
+                        event.getOffset(), event.getLength(),
+                        event.getText() == null
+                                ? 0 : event.getText().length());
+            }
+        }
+    };
     
     /**
      * Constructor.
@@ -47,7 +75,8 @@ public class SourceEditor {
         this.editor = editor;
         this.locale = locale;
         this.file = file;
-        contentCache = getContent();
+        getDocument();
+        cacheDirty = false;
     }
 
     /**
@@ -73,28 +102,49 @@ public class SourceEditor {
     }
     
     /**
-     * Checks whether the underlying file content differs from the cached
-     * source editor content.
+     * Checks whether the underlying document changed since the cache was
+     * last reset, meaning its content needs to be parsed again.
      * @return <code>true</code> if dirty
      */
     public boolean isCacheDirty() {
-        return !getContent().equals(contentCache);
+        getDocument();
+        return cacheDirty;
     }
     
     /**
-     * Resets the source editor cache.
+     * Resets the source editor cache, once the document content is parsed.
      */
     public void resetCache() {
-        contentCache = getContent();
+        getDocument();
+        cacheDirty = false;
     }
     
+    /**
+     * Checks whether content is the same as the content the model was last
+     * loaded from, or generated as.
+     * @param hash hash of the content, as computed by
+     *        {@link HashUtils#fnv1a(CharSequence)}
+     * @return <code>true</code> if the same
+     */
+    /*default*/ boolean isParsed(long hash) {
+        return hash == parsedHash;
+    }
+
+    /**
+     * Records the content the model was loaded from, or generated as.
+     * @param hash hash of the content, as computed by
+     *        {@link HashUtils#fnv1a(CharSequence)}
+     */
+    /*default*/ void setParsed(long hash) {
+        parsedHash = hash;
+    }
+
     /**
      * Gets the content of this source editor.
      * @return content
      */
     public String getContent() {
-        return editor.getDocumentProvider().getDocument(
-                editor.getEditorInput()).get();
+        return getDocument().get();
     }
     
     /**
@@ -102,9 +152,14 @@ public class SourceEditor {
      * @param content new content
      */
     public void setContent(String content) {
-        editor.getDocumentProvider().getDocument(
-                editor.getEditorInput()).set(content);
-        contentCache = content;
+        IDocument current = getDocument();
+        // unchanged content must not make the editor dirty
+        if (!content.equals(current.get())) {
+            // reindexed when next needed rather than reparsed line by line
+            index = null;
+            current.set(content);
+        }
+        cacheDirty = false;
     }
     
     /**
@@ -115,41 +170,96 @@ public class SourceEditor {
         return ((TextEditor) editor).isEditorInputReadOnly();
     }
     
+    /**
+     * Selects the start of the entry with the given key, if any.
+     * @param key entry key
+     */
     public void selectKey(String key) {
         if (key != null) {                
-            ITextEditor textEditor = getEditor();
-            String editorContent = getContent();
-            Pattern pattern = Pattern.compile("^" + Pattern.quote(key) 
-                    + ".*$", Pattern.MULTILINE);
-            Matcher matcher = pattern.matcher(editorContent);
-            if (matcher.find()) {
-                int start = matcher.start();
-                textEditor.selectAndReveal(start, 0);
+            int offset = getIndex().getOffset(key);
+            if (offset != -1) {
+                getEditor().selectAndReveal(offset, 0);
             }
         }
     }
     
+    /**
+     * Gets the key of the entry where the selection starts.
+     * @return key, or <code>null</code> if the selection is not in an entry
+     */
     public String getCurrentKey() {
         ITextEditor textEditor = getEditor();
         if (textEditor.getSelectionProvider().getSelection() 
                 instanceof TextSelection) {
             TextSelection selection = (TextSelection) 
                     textEditor.getSelectionProvider().getSelection();
-            int selectionStart = selection.getOffset();
-            String content = getContent();
-            int start = 0, end = 0;
-            
-            // Extract the bounds of the line containing the selection
-            for (start = selectionStart; start > 0 
-                    && content.charAt(start-1) != '\n'; start--);
-            for (end = start; end < content.length()-1 
-                    && content.charAt(end+1) != '=' 
-                    && content.charAt(end+1) != '\n'; end++);
-            String line = content.substring(start, end+1).trim();
-            return line;
+            return getIndex().getKeyAt(selection.getOffset());
         }
         return null;
     }
 
+    /**
+     * Gets the document of this source editor, listening to it for changes.
+     * The cache is dirty when the document is not the one listened to.
+     * @return document
+     */
+    private IDocument getDocument() {
+        IDocument current = editor.getDocumentProvider().getDocument(
+                editor.getEditorInput());
+        if (current != document) {
+            if (document != null) {
+                document.removeDocumentListener(documentListener);
+            }
+            current.addDocumentListener(documentListener);
+            document = current;
+            index = null;
+            cacheDirty = true;
+        }
+        return current;
+    }
+
+    /**
+     * Gets the index of entry offsets, creating it if needed.  Once created,
+     * it is updated as the document changes.
+     * @return index
+     */
+    private PropertiesIndex getIndex() {
+        if (index == null) {
+            index = PropertiesParser.parseIndex(
+                    getContent(), RBEPreferences.getParseOptions());
+        }
+        return index;
+    }
+
     //TODO add save and revertToSave here (spawning a thread)
+
+    /**
+     * Document text, read as needed without copying the whole document.
+     */
+    private static class DocumentText implements CharSequence {
+        private final IDocument document;
+        private DocumentText(IDocument document) {
+            this.document = document;
+        }
+        public int length() {
+            return document.getLength();
+        }
+        public char charAt(int index) {
+            try {
+                return document.getChar(index);
+            } catch (BadLocationException e) {
+                throw new IndexOutOfBoundsException(e.getMessage());
+            }
+        }
+        public CharSequence subSequence(int start, int end) {
+            try {
+                return document.get(start, end - start);
+            } catch (BadLocationException e) {
+                throw new IndexOutOfBoundsException(e.getMessage());
+            }
+        }
+        public String toString() {
+            return document.get();
+        }
+    }
 }
@@ -77,6 +77,8 @@ public class RBEPreferenceInitializer extends AbstractPreferenceInitializer {
         prefs.setDefault(RBEPreferences.REPORT_DUPL_VALUES, true);
         prefs.setDefault(RBEPreferences.REPORT_SIM_VALUES_WORD_COMPARE, true);
         prefs.setDefault(RBEPreferences.REPORT_SIM_VALUES_PRECISION, 0.75d);
+        prefs.setDefault(RBEPreferences.KEY_TREE_VIRTUAL, false);
+        prefs.setDefault(RBEPreferences.MODEL_KEEP_ALIVE, 60);
 
         prefs.setDefault(RBEPreferences.NO_TREE_IN_EDITOR, false);
 
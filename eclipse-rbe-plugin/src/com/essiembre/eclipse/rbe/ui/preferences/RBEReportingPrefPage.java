@@ -41,6 +41,8 @@ public class RBEReportingPrefPage extends AbstractRBEPrefPage {
     private Button reportSimVals;
     private Text reportSimPrecision;
     private Button[] reportSimValsMode = new Button[2];
+    private Button keyTreeVirtual;
+    private Text modelKeepAlive;
 
     /**
      * Constructor.
@@ -126,6 +128,26 @@ public class RBEReportingPrefPage extends AbstractRBEPrefPage {
                         "prefs.perform.simVals.precision.error"),
                 0, 1));
         
+        // Lazy key tree?
+        field = createFieldComposite(composite);
+        keyTreeVirtual = new Button(field, SWT.CHECK);
+        keyTreeVirtual.setSelection(
+                prefs.getBoolean(RBEPreferences.KEY_TREE_VIRTUAL));
+        new Label(field, SWT.NONE).setText(
+                RBEPlugin.getString("prefs.perform.virtualKeyTree"));
+
+        // Time a closed bundle stays loaded
+        field = createFieldComposite(composite);
+        new Label(field, SWT.NONE).setText(
+                RBEPlugin.getString("prefs.perform.keepAlive"));
+        modelKeepAlive = new Text(field, SWT.BORDER);
+        modelKeepAlive.setText(
+                prefs.getString(RBEPreferences.MODEL_KEEP_ALIVE));
+        modelKeepAlive.setTextLimit(4);
+        setWidthInChars(modelKeepAlive, 4);
+        modelKeepAlive.addKeyListener(new IntTextValidatorKeyListener(
+                RBEPlugin.getString("prefs.perform.keepAlive.error")));
+        
         refreshEnabledStatuses();
         
         return composite;
@@ -146,6 +168,10 @@ public class RBEReportingPrefPage extends AbstractRBEPrefPage {
                 reportSimValsMode[1].getSelection());
         prefs.setValue(RBEPreferences.REPORT_SIM_VALUES_PRECISION,
                 Double.parseDouble(reportSimPrecision.getText()));
+        prefs.setValue(RBEPreferences.KEY_TREE_VIRTUAL,
+                keyTreeVirtual.getSelection());
+        prefs.setValue(RBEPreferences.MODEL_KEEP_ALIVE,
+                modelKeepAlive.getText());
         refreshEnabledStatuses();
         return super.performOk();
     }
@@ -166,6 +192,10 @@ public class RBEReportingPrefPage extends AbstractRBEPrefPage {
                 RBEPreferences.REPORT_SIM_VALUES_LEVENSTHEIN));
         reportSimPrecision.setText(Double.toString(prefs.getDefaultDouble(
                 RBEPreferences.REPORT_SIM_VALUES_PRECISION)));
+        keyTreeVirtual.setSelection(prefs.getDefaultBoolean(
+                RBEPreferences.KEY_TREE_VIRTUAL));
+        modelKeepAlive.setText(prefs.getDefaultString(
+                RBEPreferences.MODEL_KEEP_ALIVE));
         refreshEnabledStatuses();
         super.performDefaults();
     }
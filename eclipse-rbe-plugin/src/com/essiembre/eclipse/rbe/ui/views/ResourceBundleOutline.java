@@ -21,6 +21,7 @@ import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
 import org.eclipse.jface.viewers.StructuredSelection;
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.MouseAdapter;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.widgets.Composite;
@@ -35,8 +36,10 @@ import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
+import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeComparator;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeContentProvider;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeLabelProvider;
+import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeLazyContentProvider;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.TreeViewerContributor;
 
 /**
@@ -51,6 +54,7 @@ public class ResourceBundleOutline extends ContentOutlinePage {
     private ToggleAction flataction;
     private ToggleAction hierarchicalaction;
     private boolean hierarchical;
+    private boolean virtual;
     private TreeViewerContributor contributor;
 
     /**
@@ -63,7 +67,12 @@ public class ResourceBundleOutline extends ContentOutlinePage {
     public ResourceBundleOutline(KeyTree keytree) {
         super();
         tree = keytree;
-        contentprovider = new KeyTreeContentProvider();
+        virtual = RBEPreferences.getKeyTreeVirtual();
+        if (virtual) {
+            contentprovider = new KeyTreeLazyContentProvider();
+        } else {
+            contentprovider = new KeyTreeContentProvider();
+        }
         hierarchical = RBEPreferences.getKeyTreeHierarchical();
     }
 
@@ -75,10 +84,13 @@ public class ResourceBundleOutline extends ContentOutlinePage {
         getTreeViewer().setContentProvider(contentprovider);
         getTreeViewer().setLabelProvider(new KeyTreeLabelProvider());
         getTreeViewer().setUseHashlookup(true);
+        if (!virtual) {
+            getTreeViewer().setComparator(new KeyTreeComparator());
+        }
         getTreeViewer().setInput(tree);
         if (RBEPreferences.getKeyTreeExpanded()) {
             ((Tree) getTreeViewer().getControl()).setRedraw(false);
-            getTreeViewer().expandAll();
+            TreeViewerContributor.expandAll(getTreeViewer(), tree);
             ((Tree) getTreeViewer().getControl()).setRedraw(true);
         }
         contributor = new TreeViewerContributor(tree, getTreeViewer());
@@ -88,6 +100,17 @@ public class ResourceBundleOutline extends ContentOutlinePage {
         getTreeViewer().getTree().addMouseListener(localbehaviour);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getTreeStyle() {
+        if (virtual) {
+            return super.getTreeStyle() | SWT.VIRTUAL;
+        }
+        return super.getTreeStyle();
+    }
+
     /**
      * {@inheritDoc}
      */
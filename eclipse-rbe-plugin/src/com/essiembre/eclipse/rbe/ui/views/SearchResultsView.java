@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.views;
+
+import java.util.List;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.dialogs.InputDialog;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.DoubleClickEvent;
+import org.eclipse.jface.viewers.IDoubleClickListener;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.part.ViewPart;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.search.BundleGroupSearcher;
+import com.essiembre.eclipse.rbe.model.search.SearchMatch;
+import com.essiembre.eclipse.rbe.model.search.SearchQuery;
+import com.essiembre.eclipse.rbe.ui.UIUtils;
+import com.essiembre.eclipse.rbe.ui.editor.ResourceBundleEditor;
+import com.essiembre.eclipse.rbe.ui.editor.resources.ResourceManager;
+
+/**
+ * View listing all matches of a search in a resource bundle.  Opening a
+ * match shows it in the editor it was found with, if still open.
+ */
+public class SearchResultsView extends ViewPart {
+
+    /** View id. */
+    public static final String ID =
+            "com.essiembre.eclipse.rbe.ui.views.SearchResultsView";
+
+    /** Characters shown around a match. */
+    private static final int CONTEXT_LENGTH = 30;
+
+    private TableViewer viewer;
+    private Action replaceAllAction;
+
+    private ResourceBundleEditor editor;
+    private SearchQuery query;
+
+    /**
+     * @see org.eclipse.ui.part.WorkbenchPart#createPartControl(Composite)
+     */
+    public void createPartControl(Composite parent) {
+        viewer = new TableViewer(parent, SWT.VIRTUAL | SWT.SINGLE
+                | SWT.FULL_SELECTION | SWT.H_SCROLL | SWT.V_SCROLL);
+        Table table = viewer.getTable();
+        table.setHeaderVisible(true);
+        table.setLinesVisible(true);
+        createColumn(table, "search.column.key", 200);
+        createColumn(table, "search.column.locale", 120);
+        createColumn(table, "search.column.field", 80);
+        createColumn(table, "search.column.match", 400);
+        viewer.setContentProvider(new ArrayContentProvider());
+        viewer.setLabelProvider(new MatchLabelProvider());
+        viewer.addDoubleClickListener(new IDoubleClickListener() {
+            public void doubleClick(DoubleClickEvent event) {
+                SearchMatch match = (SearchMatch) ((IStructuredSelection)
+                        event.getSelection()).getFirstElement();
+                if (match != null) {
+                    showMatch(match);
+                }
+            }
+        });
+
+        replaceAllAction = new Action(
+                RBEPlugin.getString("search.replaceAll")) {
+            public void run() {
+                replaceAll();
+            }
+        };
+        replaceAllAction.setEnabled(false);
+        getViewSite().getActionBars().getToolBarManager().add(
+                replaceAllAction);
+    }
+
+    /**
+     * @see org.eclipse.ui.part.WorkbenchPart#setFocus()
+     */
+    public void setFocus() {
+        viewer.getControl().setFocus();
+    }
+
+    /**
+     * Shows the matches of a search.
+     * @param editor editor searched
+     * @param query search query
+     * @param matches matches found
+     */
+    public void setResults(ResourceBundleEditor editor, SearchQuery query,
+            List<SearchMatch> matches) {
+        this.editor = editor;
+        this.query = query;
+        viewer.setInput(matches);
+        setContentDescription(RBEPlugin.getString("search.results",
+                matches.size(), query.getFindString(),
+                editor.getTitle()));
+        replaceAllAction.setEnabled(!matches.isEmpty() && query.isInScope(
+                SearchQuery.VALUES | SearchQuery.COMMENTS));
+    }
+
+    /**
+     * Gets the editor searched, if still open.
+     * @return editor, or <code>null</code>
+     */
+    private ResourceBundleEditor getEditor() {
+        IWorkbenchPage page = getSite().getPage();
+        if (editor == null
+                || page.findEditor(editor.getEditorInput()) != editor) {
+            return null;
+        }
+        return editor;
+    }
+
+    /**
+     * Shows a match in the editor searched.
+     * @param match search match
+     */
+    private void showMatch(SearchMatch match) {
+        ResourceBundleEditor searchedEditor = getEditor();
+        if (searchedEditor != null) {
+            getSite().getPage().activate(searchedEditor);
+            searchedEditor.showMatch(match);
+        }
+    }
+
+    /**
+     * Replaces all matches in values and comments, then searches again.
+     */
+    private void replaceAll() {
+        ResourceBundleEditor searchedEditor = getEditor();
+        if (searchedEditor == null) {
+            return;
+        }
+        InputDialog dialog = new InputDialog(getSite().getShell(),
+                RBEPlugin.getString("search.replaceAll"),
+                RBEPlugin.getString("search.replaceAll.with",
+                        query.getFindString()), "", null);
+        if (dialog.open() != Window.OK) {
+            return;
+        }
+        searchedEditor.replaceAll(query, dialog.getValue());
+        ResourceManager resourceManager = searchedEditor.getResourceManager();
+        setResults(searchedEditor, query, new BundleGroupSearcher(
+                resourceManager.getBundleGroup()).findAll(
+                        query, resourceManager.getLocales()));
+    }
+
+    /**
+     * Creates a table column.
+     * @param table table
+     * @param textKey key of the column title
+     * @param width column width
+     */
+    private static void createColumn(Table table, String textKey, int width) {
+        TableColumn column = new TableColumn(table, SWT.LEFT);
+        column.setText(RBEPlugin.getString(textKey));
+        column.setWidth(width);
+    }
+
+    /**
+     * Labels of a match, read from the model when shown.
+     */
+    private class MatchLabelProvider extends LabelProvider
+            implements ITableLabelProvider {
+        public Image getColumnImage(Object element, int columnIndex) {
+            return null;
+        }
+        public String getColumnText(Object element, int columnIndex) {
+            SearchMatch match = (SearchMatch) element;
+            switch (columnIndex) {
+            case 0:
+                return match.getKey();
+            case 1:
+                return match.getField() == SearchQuery.KEYS
+                        ? "" : UIUtils.getDisplayName(match.getLocale());
+            case 2:
+                if (match.getField() == SearchQuery.KEYS) {
+                    return RBEPlugin.getString("search.field.key");
+                }
+                return RBEPlugin.getString(
+                        match.getField() == SearchQuery.VALUES
+                                ? "search.field.value"
+                                : "search.field.comment");
+            default:
+                return getContext(match);
+            }
+        }
+        private String getContext(SearchMatch match) {
+            String text = match.getKey();
+            if (match.getField() != SearchQuery.KEYS) {
+                BundleGroup bundleGroup = editor.getResourceManager()
+                        .getBundleGroup();
+                BundleEntry entry = bundleGroup.getBundleEntry(
+                        match.getLocale(), match.getKey());
+                text = entry == null ? null
+                        : match.getField() == SearchQuery.VALUES
+                                ? entry.getValue() : entry.getComment();
+            }
+            int end = match.getOffset() + match.getLength();
+            if (text == null || end > text.length()) {
+                return "";
+            }
+            int start = Math.max(0, match.getOffset() - CONTEXT_LENGTH);
+            end = Math.min(text.length(), end + CONTEXT_LENGTH);
+            return (start > 0 ? "..." : "")
+                    + text.substring(start, end).replaceAll("\\s+", " ")
+                    + (end < text.length() ? "..." : "");
+        }
+    }
+}